@@ -0,0 +1,45 @@
+package com.example;
+
+// Settings for GradientBoostedTrees, laid out like TrainingParams.
+// Fields are public; the defaults are shallow trees with moderate shrinkage, stopped early on
+// a held-out tenth of the training rows.
+public class BoostingParams {
+    public static final int MAX_BINS = 256; // Bin codes are stored in one byte per value
+
+    public int maxRounds = 300; // Upper bound on the number of trees
+    public double learningRate = 0.1; // Shrinkage applied to every tree's output
+    public int maxDepth = 4;
+    public int minSamplesLeaf = 20;
+    public double l2 = 1.0; // Penalty on squared leaf values (lambda); keeps small leaves from overshooting
+    public int maxBins = 64; // Histogram bins per feature, at most MAX_BINS
+    public double validationFraction = 0.1; // Rows held out for early stopping; 0 trains all rounds on all rows
+    public int earlyStoppingRounds = 20; // Rounds without a better validation loss before training stops
+    public long seed = 17; // Seed of the validation split
+
+    public BoostingParams() {
+    }
+
+    public BoostingParams(int maxRounds, double learningRate) {
+        this.maxRounds = maxRounds;
+        this.learningRate = learningRate;
+    }
+
+    public BoostingParams copy() {
+        BoostingParams p = new BoostingParams(maxRounds, learningRate);
+        p.maxDepth = maxDepth;
+        p.minSamplesLeaf = minSamplesLeaf;
+        p.l2 = l2;
+        p.maxBins = maxBins;
+        p.validationFraction = validationFraction;
+        p.earlyStoppingRounds = earlyStoppingRounds;
+        p.seed = seed;
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return "rounds=" + maxRounds + ", learningRate=" + learningRate + ", maxDepth=" + maxDepth
+            + ", minSamplesLeaf=" + minSamplesLeaf + ", l2=" + l2 + ", maxBins=" + maxBins
+            + ", validationFraction=" + validationFraction + ", earlyStoppingRounds=" + earlyStoppingRounds;
+    }
+}
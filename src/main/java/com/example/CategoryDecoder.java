@@ -0,0 +1,92 @@
+package com.example;
+
+import java.util.*;
+
+// Maps category names to their codes with a collision-free (perfect) hash table.
+// The hash seed is searched once at construction, so a lookup is one hash of the token
+// plus one comparison against the single name stored in that slot.
+public final class CategoryDecoder {
+    private final String[] names; // Slot -> category name, null when empty
+    private final int[] codes; // Slot -> category code
+    private final int mask;
+    private final int seed;
+
+    public CategoryDecoder(String[] categories) {
+        if (new HashSet<>(Arrays.asList(categories)).size() != categories.length) {
+            throw new IllegalArgumentException("Duplicate category names: " + Arrays.toString(categories));
+        }
+        int size = Integer.highestOneBit(Math.max(1, categories.length * 2 - 1)) << 1;
+        int s = findSeed(categories, size);
+        while (s == 0) { // No seed separates the names at this size; try a sparser table
+            size <<= 1;
+            s = findSeed(categories, size);
+        }
+        mask = size - 1;
+        seed = s;
+        names = new String[size];
+        codes = new int[size];
+        for (int c = 0; c < categories.length; c++) {
+            int slot = hash(categories[c], seed) & mask;
+            names[slot] = categories[c];
+            codes[slot] = c;
+        }
+    }
+
+    // Code of the given category name, or -1 if it is not one of the categories
+    public int decode(CharSequence token) {
+        int slot = hash(token, seed) & mask;
+        String name = names[slot];
+        if (name == null || name.length() != token.length()) return -1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != token.charAt(i)) return -1;
+        }
+        return codes[slot];
+    }
+
+    // Code of the category spelled by buf[start, end), or -1; nothing is allocated
+    public int decode(char[] buf, int start, int end) {
+        int h = seed;
+        for (int i = start; i < end; i++) {
+            h = h * 31 + buf[i];
+        }
+        int slot = mix(h) & mask;
+        String name = names[slot];
+        if (name == null || name.length() != end - start) return -1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != buf[start + i]) return -1;
+        }
+        return codes[slot];
+    }
+
+    // First seed giving every name its own slot, or 0 if none is found
+    private static int findSeed(String[] categories, int size) {
+        for (int s = 1; s < 1 << 12; s++) {
+            if (fits(categories, size, s)) return s;
+        }
+        return 0;
+    }
+
+    private static boolean fits(String[] categories, int size, int seed) {
+        boolean[] used = new boolean[size];
+        for (String c : categories) {
+            int slot = hash(c, seed) & (size - 1);
+            if (used[slot]) return false;
+            used[slot] = true;
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence s, int seed) {
+        int h = seed;
+        for (int i = 0; i < s.length(); i++) {
+            h = h * 31 + s.charAt(i);
+        }
+        return mix(h);
+    }
+
+    // Spreads the low-entropy polynomial hash across all bits
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,323 @@
+package com.example;
+
+import java.io.*;
+import java.util.*;
+
+// Read-only, compressed copy of a trained forest for serving predictions.
+// All trees are flattened into three parallel arrays in pre-order, so a node's left child is the
+// next slot and only the distance to its right child is stored. Thresholds become 16-bit indexes
+// into one sorted dictionary per feature, which holds the exact doubles the trees split on, so
+// predictions are identical to the original forest. Subtrees whose leaves all predict the same
+// class are collapsed into a single leaf first.
+public class CompactForest {
+    private static final short LEAF = -1; // Feature marker for leaves; their value slot holds the label
+    private static final int MAX_INDEX = 0xFFFF; // Largest value a 16-bit slot can hold
+    private static final int FILE_MAGIC = 0x52464331; // "RFC1", first int of the binary form
+
+    // Estimated heap bytes of the original node objects (compressed references, 8-byte alignment)
+    private static final int DECISION_NODE_BYTES = 40; // Header, outer ref, int, double, two refs
+    private static final int LEAF_NODE_BYTES = 24; // Header, outer ref, int
+
+    private final int numFeatures;
+    private final double[][] dictionary; // [feature] -> sorted distinct thresholds
+    private final int[] roots; // First slot of each tree
+    private final short[] feature; // Per slot: split feature, or LEAF
+    private final char[] value; // Per slot: threshold index into the dictionary, or the leaf label
+    private final char[] rightOffset; // Per slot: distance to the right child (decision nodes only)
+    private final int numClasses; // One more than the largest leaf label, at least 2
+    private final SizeReport report;
+
+    public CompactForest(List<DecisionTree> trees, int numFeatures) {
+        if (numFeatures > Short.MAX_VALUE) throw new IllegalArgumentException("Too many features: " + numFeatures);
+        this.numFeatures = numFeatures;
+        this.dictionary = buildDictionary(trees, numFeatures);
+
+        int originalNodes = 0, slots = 0;
+        long originalBytes = 0;
+        List<Map<DecisionTree.TreeNode, Integer>> uniform = new ArrayList<>();
+        for (DecisionTree t : trees) {
+            Map<DecisionTree.TreeNode, Integer> u = uniformLabels(t.root);
+            uniform.add(u);
+            for (Map.Entry<DecisionTree.TreeNode, Integer> e : u.entrySet()) {
+                originalNodes++;
+                originalBytes += e.getKey() instanceof DecisionTree.DecisionTreeNode ? DECISION_NODE_BYTES : LEAF_NODE_BYTES;
+            }
+            slots += countSlots(t.root, u);
+        }
+
+        roots = new int[trees.size()];
+        feature = new short[slots];
+        value = new char[slots];
+        rightOffset = new char[slots];
+        int next = 0;
+        for (int i = 0; i < trees.size(); i++) {
+            roots[i] = next;
+            next = flatten(trees.get(i).root, uniform.get(i), next);
+        }
+        numClasses = countClasses(feature, value);
+
+        report = new SizeReport(originalNodes, slots, originalBytes, arrayBytes(slots, roots.length, dictionary));
+    }
+
+    private CompactForest(int numFeatures, double[][] dictionary, int[] roots, short[] feature,
+            char[] value, char[] rightOffset, SizeReport report) {
+        this.numFeatures = numFeatures;
+        this.dictionary = dictionary;
+        this.roots = roots;
+        this.feature = feature;
+        this.value = value;
+        this.rightOffset = rightOffset;
+        this.numClasses = countClasses(feature, value);
+        this.report = report;
+    }
+
+    private static int countClasses(short[] feature, char[] value) {
+        int max = 1;
+        for (int i = 0; i < feature.length; i++) {
+            if (feature[i] == LEAF) max = Math.max(max, value[i]);
+        }
+        return max + 1;
+    }
+
+    // Writes the binary form read back by read(); used to keep models on disk
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(numFeatures);
+        for (double[] d : dictionary) {
+            out.writeInt(d.length);
+            for (double v : d) out.writeDouble(v);
+        }
+        out.writeInt(roots.length);
+        for (int r : roots) out.writeInt(r);
+        out.writeInt(feature.length);
+        for (int i = 0; i < feature.length; i++) {
+            out.writeShort(feature[i]);
+            out.writeChar(value[i]);
+            out.writeChar(rightOffset[i]);
+        }
+        out.writeInt(report.originalNodes);
+        out.writeLong(report.originalBytes);
+    }
+
+    // Reads a forest written by writeTo(); throws IOException if the data is not one
+    public static CompactForest read(DataInput in) throws IOException {
+        if (in.readInt() != FILE_MAGIC) throw new IOException("Not a compact forest");
+        int numFeatures = readCount(in);
+        if (numFeatures > Short.MAX_VALUE) throw new IOException("Corrupt compact forest: " + numFeatures + " features");
+        double[][] dictionary = new double[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            dictionary[f] = new double[readCount(in)];
+            for (int i = 0; i < dictionary[f].length; i++) dictionary[f][i] = in.readDouble();
+        }
+        int[] roots = new int[readCount(in)];
+        for (int i = 0; i < roots.length; i++) roots[i] = in.readInt();
+        int slots = readCount(in);
+        for (int r : roots) {
+            if (r < 0 || r >= slots) throw new IOException("Corrupt compact forest: root " + r + " of " + slots + " slots");
+        }
+        short[] feature = new short[slots];
+        char[] value = new char[slots];
+        char[] rightOffset = new char[slots];
+        for (int i = 0; i < slots; i++) {
+            feature[i] = in.readShort();
+            value[i] = in.readChar();
+            rightOffset[i] = in.readChar();
+            int f = feature[i];
+            if (f == LEAF) continue;
+            if (f < 0 || f >= numFeatures) {
+                throw new IOException("Corrupt compact forest: feature " + f + " of " + numFeatures + " at slot " + i);
+            }
+            if (value[i] >= dictionary[f].length) {
+                throw new IOException("Corrupt compact forest: threshold " + (int) value[i] + " of "
+                    + dictionary[f].length + " for feature " + f + " at slot " + i);
+            }
+            // Children come after their parent, the left one first, so every path ends at a leaf
+            if (rightOffset[i] < 2 || i + rightOffset[i] >= slots) {
+                throw new IOException("Corrupt compact forest: right child offset " + (int) rightOffset[i] + " at slot " + i);
+            }
+        }
+        int originalNodes = in.readInt();
+        long originalBytes = in.readLong();
+        return new CompactForest(numFeatures, dictionary, roots, feature, value, rightOffset,
+            new SizeReport(originalNodes, slots, originalBytes, arrayBytes(slots, roots.length, dictionary)));
+    }
+
+    // Payload bytes of the compact arrays: three 16-bit values per slot, the roots and the dictionary
+    private static long arrayBytes(int slots, int trees, double[][] dictionary) {
+        long bytes = (long) slots * (2 + 2 + 2) + trees * 4L;
+        for (double[] d : dictionary) bytes += d.length * 8L;
+        return bytes;
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) throw new IOException("Corrupt compact forest: negative length " + n);
+        return n;
+    }
+
+    public int getNumTrees() {
+        return roots.length;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    // Majority vote over all trees, ties going to the higher class as in RandomForest
+    public int predict(double[] feats) {
+        int[] votes = new int[numClasses];
+        for (int root : roots) votes[predictTree(root, feats)]++;
+        int best = 0;
+        for (int c = 1; c < numClasses; c++) {
+            if (votes[c] >= votes[best]) best = c;
+        }
+        return best;
+    }
+
+    // Predicts the given rows of a dataset through one reused row buffer
+    public int[] predict(FeatureMatrix data, int[] rows) {
+        double[] buf = new double[data.getNumFeatures()];
+        int[] preds = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            data.copyRow(rows[i], buf);
+            preds[i] = predict(buf);
+        }
+        return preds;
+    }
+
+    public SizeReport getSizeReport() {
+        return report;
+    }
+
+    private int predictTree(int node, double[] feats) {
+        while (feature[node] != LEAF) {
+            int f = feature[node];
+            if (feats[f] <= dictionary[f][value[node]]) {
+                node++; // Left child follows its parent
+            } else {
+                node += rightOffset[node];
+            }
+        }
+        return value[node];
+    }
+
+    // Sorted distinct thresholds per feature over all trees
+    private static double[][] buildDictionary(List<DecisionTree> trees, int numFeatures) {
+        List<Set<Double>> perFeature = new ArrayList<>();
+        for (int f = 0; f < numFeatures; f++) perFeature.add(new TreeSet<>());
+        for (DecisionTree t : trees) {
+            t.forEachSplit((f, thr) -> perFeature.get(f).add(thr));
+        }
+        double[][] dict = new double[numFeatures][];
+        for (int f = 0; f < numFeatures; f++) {
+            if (perFeature.get(f).size() > MAX_INDEX + 1) {
+                throw new IllegalStateException("Feature " + f + " has more thresholds than a 16-bit index can address");
+            }
+            dict[f] = perFeature.get(f).stream().mapToDouble(Double::doubleValue).toArray();
+        }
+        return dict;
+    }
+
+    // For every node: the label all leaves below it share, or -1 if they disagree (computed post-order)
+    private static Map<DecisionTree.TreeNode, Integer> uniformLabels(DecisionTree.TreeNode root) {
+        Map<DecisionTree.TreeNode, Integer> out = new IdentityHashMap<>();
+        Deque<DecisionTree.TreeNode> pending = new ArrayDeque<>();
+        Deque<DecisionTree.TreeNode> postOrder = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            DecisionTree.TreeNode n = pending.pop();
+            postOrder.push(n); // Reversed pre-order (node, right, left) pops as a post-order
+            if (n instanceof DecisionTree.DecisionTreeNode) {
+                pending.push(((DecisionTree.DecisionTreeNode) n).left);
+                pending.push(((DecisionTree.DecisionTreeNode) n).right);
+            }
+        }
+        while (!postOrder.isEmpty()) {
+            DecisionTree.TreeNode n = postOrder.pop();
+            if (n instanceof DecisionTree.LeafTreeNode) {
+                out.put(n, ((DecisionTree.LeafTreeNode) n).label);
+            } else {
+                DecisionTree.DecisionTreeNode d = (DecisionTree.DecisionTreeNode) n;
+                int l = out.get(d.left), r = out.get(d.right);
+                out.put(n, l >= 0 && l == r ? l : -1);
+            }
+        }
+        return out;
+    }
+
+    // Slots needed for a tree once uniform subtrees are collapsed
+    private static int countSlots(DecisionTree.TreeNode root, Map<DecisionTree.TreeNode, Integer> uniform) {
+        int count = 0;
+        Deque<DecisionTree.TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            DecisionTree.TreeNode n = stack.pop();
+            count++;
+            if (uniform.get(n) < 0) {
+                stack.push(((DecisionTree.DecisionTreeNode) n).right);
+                stack.push(((DecisionTree.DecisionTreeNode) n).left);
+            }
+        }
+        return count;
+    }
+
+    // Writes a tree in pre-order starting at the given slot; returns the first free slot after it
+    private int flatten(DecisionTree.TreeNode root, Map<DecisionTree.TreeNode, Integer> uniform, int next) {
+        Deque<DecisionTree.TreeNode> stack = new ArrayDeque<>();
+        Deque<Integer> parents = new ArrayDeque<>(); // Slot whose right offset points here, or -1
+        stack.push(root);
+        parents.push(-1);
+        while (!stack.isEmpty()) {
+            DecisionTree.TreeNode n = stack.pop();
+            int parent = parents.pop();
+            int slot = next++;
+            if (parent >= 0) {
+                if (slot - parent > MAX_INDEX) throw new IllegalStateException("Tree too large for 16-bit child offsets");
+                rightOffset[parent] = (char) (slot - parent);
+            }
+            int label = uniform.get(n);
+            if (label >= 0) {
+                feature[slot] = LEAF;
+                value[slot] = (char) label;
+            } else {
+                DecisionTree.DecisionTreeNode d = (DecisionTree.DecisionTreeNode) n;
+                feature[slot] = (short) d.featureIndex;
+                value[slot] = (char) Arrays.binarySearch(dictionary[d.featureIndex], d.threshold);
+                stack.push(d.right);
+                parents.push(slot);
+                stack.push(d.left);
+                parents.push(-1);
+            }
+        }
+        return next;
+    }
+
+    // Node counts and estimated memory before and after compression
+    public static class SizeReport {
+        public final int originalNodes;
+        public final int compactNodes;
+        public final long originalBytes;
+        public final long compactBytes;
+
+        SizeReport(int originalNodes, int compactNodes, long originalBytes, long compactBytes) {
+            this.originalNodes = originalNodes;
+            this.compactNodes = compactNodes;
+            this.originalBytes = originalBytes;
+            this.compactBytes = compactBytes;
+        }
+
+        public double getSavedFraction() {
+            return originalBytes == 0 ? 0 : 1.0 - (double) compactBytes / originalBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes (%d KB) compressed to %d nodes (%d KB), %.0f%% saved",
+                originalNodes, originalBytes / 1024, compactNodes, compactBytes / 1024, getSavedFraction() * 100);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example;
+
+import java.util.*;
+
+// Searches for the smallest change to the controllable features that makes the forest predict Pass.
+// The features, their valid ranges and the largest change worth suggesting come from the schema.
+// Single-feature changes are read off the forest's threshold index. Two-feature changes cheaper
+// than the best single one are tried cheapest first in batches, so the first Pass is minimal.
+public class CounterfactualSearch {
+    private static final int BATCH_SIZE = 64; // Candidates evaluated per forest pass
+
+    private final RandomForest rf;
+    private final FeatureSchema schema;
+    private final int[] features; // Controllable features, in advice order
+    private final double[] scale; // Per-feature spread used to make changes comparable
+
+    public CounterfactualSearch(RandomForest rf, double[] scale) {
+        this(rf, FeatureSchema.STUDENT, scale);
+    }
+
+    public CounterfactualSearch(RandomForest rf, FeatureSchema schema, double[] scale) {
+        this.rf = rf;
+        this.schema = schema;
+        this.features = schema.getControllable();
+        this.scale = scale;
+    }
+
+    // Returns the cheapest change that flips the prediction to Pass,
+    // or null if the input already passes or no change within bounds does it
+    public Counterfactual search(double[] input) {
+        if (rf.predict(input) == 1) return null;
+
+        double[][] values = new double[features.length][];
+        double[][] costs = new double[features.length][];
+        buildValues(input, values, costs);
+
+        // Single-feature changes come straight from the threshold index sweeps
+        Candidate best = bestSingleChange(input, values, costs);
+
+        // Pairs only matter when they are strictly cheaper than the best single change
+        List<Candidate> candidates = buildPairs(values, costs, best == null ? Double.POSITIVE_INFINITY : best.cost);
+        Collections.sort(candidates);
+
+        double[][] batch = new double[BATCH_SIZE][];
+        for (int start = 0; start < candidates.size(); start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, candidates.size());
+            if (end - start != batch.length) batch = new double[end - start][];
+            for (int i = start; i < end; i++) {
+                batch[i - start] = candidates.get(i).apply(input);
+            }
+            int[] preds = rf.predictBatch(batch);
+            for (int i = 0; i < preds.length; i++) { // Batch is in cost order, so the first Pass wins
+                if (preds[i] == 1) {
+                    return candidates.get(start + i).toCounterfactual(input);
+                }
+            }
+        }
+        return best == null ? null : best.toCounterfactual(input);
+    }
+
+    // Cheapest single-feature change that passes, using one sensitivity sweep per feature
+    private Candidate bestSingleChange(double[] input, double[][] values, double[][] costs) {
+        ThresholdIndex index = rf.getThresholdIndex();
+        Candidate best = null;
+        for (int k = 0; k < features.length; k++) {
+            if (values[k].length == 0) continue;
+            double lo = Math.min(values[k][0], input[features[k]]);
+            double hi = Math.max(values[k][values[k].length - 1], input[features[k]]);
+            ThresholdIndex.SensitivityCurve curve = index.sensitivity(input, features[k], lo, hi);
+            for (int i = 0; i < values[k].length; i++) {
+                if ((best == null || costs[k][i] < best.cost) && curve.passesAt(values[k][i])) {
+                    best = new Candidate(features[k], values[k][i], -1, 0, costs[k][i]);
+                }
+            }
+        }
+        return best;
+    }
+
+    // Candidate values and their cost for each controllable feature, within bounds
+    private void buildValues(double[] input, double[][] values, double[][] costs) {
+        for (int k = 0; k < features.length; k++) {
+            int f = features[k];
+            FeatureSchema.Feature rule = schema.get(f);
+            double lo = Math.max(rule.min, Math.ceil(input[f] - rule.maxChange));
+            double hi = Math.min(rule.max, Math.floor(input[f] + rule.maxChange));
+            List<Double> vals = new ArrayList<>();
+            for (double v = lo; v <= hi; v++) {
+                if (v != input[f]) vals.add(v);
+            }
+            values[k] = new double[vals.size()];
+            costs[k] = new double[vals.size()];
+            for (int i = 0; i < vals.size(); i++) {
+                values[k][i] = vals.get(i);
+                costs[k][i] = Math.abs(vals.get(i) - input[f]) / scale(f);
+            }
+        }
+    }
+
+    // Enumerates every two-feature change cheaper than the given bound
+    private List<Candidate> buildPairs(double[][] values, double[][] costs, double maxCost) {
+        List<Candidate> cands = new ArrayList<>();
+        for (int a = 0; a < features.length; a++) {
+            for (int i = 0; i < values[a].length; i++) {
+                for (int b = a + 1; b < features.length; b++) {
+                    for (int j = 0; j < values[b].length; j++) {
+                        double cost = costs[a][i] + costs[b][j];
+                        if (cost < maxCost) {
+                            cands.add(new Candidate(features[a], values[a][i], features[b], values[b][j], cost));
+                        }
+                    }
+                }
+            }
+        }
+        return cands;
+    }
+
+    private double scale(int f) {
+        return scale != null && scale[f] > 0 ? scale[f] : 1.0;
+    }
+
+    // A proposed change to one or two features
+    private static class Candidate implements Comparable<Candidate> {
+        final int featA, featB; // featB is -1 for single-feature changes
+        final double valA, valB;
+        final double cost;
+
+        Candidate(int fa, double va, int fb, double vb, double c) {
+            featA = fa;
+            valA = va;
+            featB = fb;
+            valB = vb;
+            cost = c;
+        }
+
+        double[] apply(double[] input) {
+            double[] row = input.clone();
+            row[featA] = valA;
+            if (featB >= 0) row[featB] = valB;
+            return row;
+        }
+
+        Counterfactual toCounterfactual(double[] input) {
+            if (featB < 0) {
+                return new Counterfactual(new int[]{featA}, new double[]{input[featA]}, new double[]{valA}, cost);
+            }
+            return new Counterfactual(new int[]{featA, featB}, new double[]{input[featA], input[featB]},
+                new double[]{valA, valB}, cost);
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(cost, o.cost);
+        }
+    }
+
+    // The change found by the search: features touched, their old and new values, and its cost
+    public static class Counterfactual {
+        public final int[] features;
+        public final double[] from;
+        public final double[] to;
+        public final double cost;
+
+        Counterfactual(int[] features, double[] from, double[] to, double cost) {
+            this.features = features;
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// K-fold cross-validation for RandomForest.
+// Every fold trains on index arrays into one shared FeatureMatrix. Folds run concurrently, and
+// the trees of every fold are built in one pool of bounded size, so the whole run never uses
+// more tree-building threads than its parallelism.
+public class CrossValidator {
+    private final int folds;
+    private final boolean stratified; // Keep the pass/fail ratio the same in every fold
+    private final int parallelism; // Threads building trees, shared by all folds
+    private final Random rand;
+
+    public CrossValidator(int folds, boolean stratified, int parallelism, long seed) {
+        if (folds < 2) throw new IllegalArgumentException("Cross-validation needs at least 2 folds");
+        this.folds = folds;
+        this.stratified = stratified;
+        this.parallelism = Math.max(1, parallelism);
+        this.rand = new Random(seed);
+    }
+
+    // Trains one forest per fold (created by the factory) and scores it on the held-out fold.
+    // The forests train and score on the run's shared pool, whatever executor the factory set.
+    public Result run(FeatureMatrix data, Supplier<RandomForest> factory) throws InterruptedException {
+        if (data.size() < folds) {
+            throw new IllegalArgumentException("Need at least " + folds + " rows for " + folds + "-fold cross-validation");
+        }
+        int[] foldOf = assignFolds(data);
+
+        ExecutorService treePool = Executors.newFixedThreadPool(parallelism);
+        ExecutorService coordinators = Executors.newFixedThreadPool(Math.min(parallelism, folds));
+        TrainingExecutor shared = TrainingExecutor.using(treePool);
+        try {
+            List<Future<FoldResult>> futures = new ArrayList<>();
+            for (int k = 0; k < folds; k++) {
+                final int fold = k;
+                futures.add(coordinators.submit(() -> runFold(data, foldOf, fold, factory, shared)));
+            }
+
+            double[] accuracy = new double[folds];
+            long[] nanos = new long[folds];
+            for (int k = 0; k < folds; k++) {
+                FoldResult res = futures.get(k).get();
+                accuracy[k] = res.accuracy;
+                nanos[k] = res.nanos;
+            }
+            return new Result(accuracy, nanos);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cross-validation fold failed", e.getCause());
+        } finally {
+            coordinators.shutdownNow();
+            treePool.shutdownNow();
+        }
+    }
+
+    // Trains and scores one fold, timing both
+    private FoldResult runFold(FeatureMatrix data, int[] foldOf, int fold, Supplier<RandomForest> factory,
+            TrainingExecutor executor) {
+        long start = System.nanoTime();
+        int testSize = 0;
+        for (int f : foldOf) if (f == fold) testSize++;
+        int[] train = new int[foldOf.length - testSize];
+        int[] test = new int[testSize];
+        int ti = 0, si = 0;
+        for (int r = 0; r < foldOf.length; r++) {
+            if (foldOf[r] == fold) test[si++] = r;
+            else train[ti++] = r;
+        }
+
+        RandomForest rf = factory.get();
+        rf.setExecutor(executor);
+        rf.train(data, train);
+        double acc = rf.evaluate(data, test);
+        return new FoldResult(acc, System.nanoTime() - start);
+    }
+
+    private static class FoldResult {
+        final double accuracy;
+        final long nanos;
+
+        FoldResult(double accuracy, long nanos) {
+            this.accuracy = accuracy;
+            this.nanos = nanos;
+        }
+    }
+
+    // Fold number for every row. Stratified assignment deals each class out round-robin.
+    int[] assignFolds(FeatureMatrix data) {
+        int n = data.size();
+        int[] foldOf = new int[n];
+        if (!stratified) {
+            int[] order = shuffledRows(data, -1);
+            for (int i = 0; i < n; i++) foldOf[order[i]] = i % folds;
+            return foldOf;
+        }
+
+        int next = 0; // Continue dealing where the previous class stopped to balance fold sizes
+        for (int label = 0; label < data.getNumClasses(); label++) {
+            int[] order = shuffledRows(data, label);
+            for (int r : order) {
+                foldOf[r] = next;
+                next = (next + 1) % folds;
+            }
+        }
+        return foldOf;
+    }
+
+    // Rows with the given label (or all rows for -1) in random order
+    private int[] shuffledRows(FeatureMatrix data, int label) {
+        int count = 0;
+        for (int r = 0; r < data.size(); r++) {
+            if (label < 0 || data.getLabel(r) == label) count++;
+        }
+        int[] rows = new int[count];
+        int i = 0;
+        for (int r = 0; r < data.size(); r++) {
+            if (label < 0 || data.getLabel(r) == label) rows[i++] = r;
+        }
+        for (int j = rows.length - 1; j > 0; j--) {
+            int idx = rand.nextInt(j + 1);
+            int tmp = rows[idx];
+            rows[idx] = rows[j];
+            rows[j] = tmp;
+        }
+        return rows;
+    }
+
+    // Per-fold accuracy and timing, with summary statistics
+    public static class Result {
+        public final double[] foldAccuracy;
+        public final long[] foldNanos;
+        public final double meanAccuracy;
+        public final double stdDevAccuracy;
+
+        Result(double[] foldAccuracy, long[] foldNanos) {
+            this.foldAccuracy = foldAccuracy;
+            this.foldNanos = foldNanos;
+            double sum = 0;
+            for (double a : foldAccuracy) sum += a;
+            meanAccuracy = sum / foldAccuracy.length;
+            double sq = 0;
+            for (double a : foldAccuracy) sq += (a - meanAccuracy) * (a - meanAccuracy);
+            stdDevAccuracy = Math.sqrt(sq / foldAccuracy.length);
+        }
+    }
+}
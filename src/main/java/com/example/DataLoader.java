@@ -2,97 +2,128 @@ package com.example;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 public class DataLoader {
+    public static final double PASS_SCORE = 70; // Exam scores at or above this are labelled Pass (1)
+
+    private static final int PROFILE_CHUNK = 4096; // Lines per profiling task
+
     private static String[] featureNames;
 
     public static class LoadResult {
         public List<Node> data;
         public int linesSkipped;
         public int imputedCount;
+        public FeatureSchema schema; // Description of the loaded columns, null if the file was empty
+        public ScoreBands bands; // How exam scores were turned into labels
+        public double[] fillValues; // Value given to each feature column's empty cells (NaN if it had no valid values)
+        public DataProfile profile; // Statistics of every column of the file, null if it was empty
         
         public LoadResult(List<Node> data, int linesSkipped, int imputedCount) {
+            this(data, linesSkipped, imputedCount, null);
+        }
+
+        public LoadResult(List<Node> data, int linesSkipped, int imputedCount, FeatureSchema schema) {
+            this(data, linesSkipped, imputedCount, schema, ScoreBands.PASS_FAIL);
+        }
+
+        public LoadResult(List<Node> data, int linesSkipped, int imputedCount, FeatureSchema schema,
+                ScoreBands bands) {
             this.data = data;
             this.linesSkipped = linesSkipped;
             this.imputedCount = imputedCount;
+            this.schema = schema;
+            this.bands = bands;
         }
     }
 
-    private static boolean isValidNumericValue(String val, int featureIndex) {
-        try {
-            double num = Double.parseDouble(val);
-            // Validate based on feature type
-            switch(featureIndex) {
-                case 0: // Hours Studied
-                    return num >= 0 && num <= 168; // Max hours in a week
-                case 1: // Attendance
-                    return num >= 0 && num <= 100; // Percentage
-                case 6: // Previous Scores
-                    return num >= 0 && num <= 100; // Score range
-                case 5: // Sleep Hours
-                    return num >= 0 && num <= 24; // Hours per day
-                case 9: // Tutoring Sessions
-                    return num >= 0 && num <= 100; // Monthly sessions
-                case 14: // Physical Activity
-                    return num >= 0 && num <= 168; // Hours per week
-                default:
-                    return num >= 0; // All other numeric fields shouldn't be negative
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Value of one cell for the given column, or NaN if it is not a valid value for that column.
+    // Categorical columns take a category name or its numeric code; numeric columns take a number in range.
+    private static double encodeCell(FeatureSchema.Feature f, char[] buf, int start, int end) {
+        if (f.isCategorical()) {
+            int code = f.encode(buf, start, end);
+            if (code >= 0) return code;
+        }
+        double num = parseNumber(buf, start, end);
+        return f.inRange(num) ? num : Double.NaN;
+    }
+
+    // Parses buf[start, end) as a number, or returns NaN if it is not one.
+    // Plain decimals of up to 18 digits are read as mantissa / 10^scale: both are exact doubles,
+    // so the one division rounds exactly like Double.parseDouble. Anything else goes to parseDouble.
+    static double parseNumber(char[] buf, int start, int end) {
+        int i = start;
+        boolean neg = i < end && buf[i] == '-';
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) i++;
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false;
+        for (; i < end && digits < 18; i++) {
+            char c = buf[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) scale++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
             }
+        }
+        if (i == end && digits > 0 && scale < POW10.length && mantissa < 1L << 53) {
+            double v = mantissa / POW10[scale];
+            return neg ? -v : v;
+        }
+        try {
+            return Double.parseDouble(new String(buf, start, end - start)); // Exponents, long numbers, etc.
         } catch (NumberFormatException e) {
-            return false;
+            return Double.NaN;
         }
     }
 
+    // Loads records labelled Pass (1) or Fail (0)
     public static LoadResult loadData(String filePath) throws IOException {
-        List<Node> data = new ArrayList<>();
-    int linesSkipped = 0;
-    int imputedCount = 0;
-    Map<String, Integer> mapping = buildMapping();
-
-    List<String[]> records = parseCSV(filePath);
-    
-    if (records.isEmpty()) {
-        return new LoadResult(data, linesSkipped, imputedCount);
+        return loadData(filePath, ScoreBands.PASS_FAIL);
     }
 
-        String[] headers = records.get(0);
-        featureNames = Arrays.copyOf(headers, headers.length - 1);
-        int nf = headers.length - 1;
+    // Loads records labelled with the band of their exam score
+    public static LoadResult loadData(String filePath, ScoreBands bands) throws IOException {
+        List<Node> data = new ArrayList<>();
+        int linesSkipped = 0;
+        int imputedCount = 0;
 
-        Map<Integer, Double> means = new HashMap<>();
-        Map<Integer, String> modes = new HashMap<>();
-        
-        for (int j = 0; j < nf; j++) {
-            List<Double> numericVals = new ArrayList<>();
-            Map<String, Integer> categoryFreq = new HashMap<>();
-            
-            for (int i = 1; i < records.size(); i++) {
-                String val = records.get(i)[j].trim();
-                if (!val.isEmpty()) {
-                    if (mapping.containsKey(val)) {
-                        categoryFreq.merge(val, 1, Integer::sum);
-                    } else {
-                        try {
-                            if (isValidNumericValue(val, j)) {
-                                numericVals.add(Double.parseDouble(val));
-                            }
-                        } catch (NumberFormatException e) {
-                            // Skip invalid numbers
-                        }
-                    }
-                }
-            }
-            
-            if (!numericVals.isEmpty()) {
-                means.put(j, numericVals.stream().mapToDouble(d -> d).average().orElse(0.0));
-            } else if (!categoryFreq.isEmpty()) {
-                modes.put(j, Collections.max(categoryFreq.entrySet(), Map.Entry.comparingByValue()).getKey());
-            }
+        CsvTable csv = parseCSV(filePath);
+
+        if (csv.lines == 0) {
+            return new LoadResult(data, linesSkipped, imputedCount, null, bands);
         }
 
-        for (int i = 1; i < records.size(); i++) {
-            String[] tokens = records.get(i);
-            if (tokens.length != headers.length) {
+        int width = csv.width(0);
+        int nf = width - 1;
+        featureNames = new String[nf];
+        for (int j = 0; j < nf; j++) featureNames[j] = csv.text(0, j);
+        FeatureSchema schema = FeatureSchema.fromHeader(featureNames);
+        char[] buf = csv.buf;
+
+        FeatureSchema.Feature[] rules = new FeatureSchema.Feature[width];
+        for (int j = 0; j < nf; j++) rules[j] = schema.get(j);
+        String scoreName = csv.text(0, nf);
+        rules[nf] = FeatureSchema.numeric(scoreName, 0, 100, "", scoreName, FeatureSchema.NOT_CONTROLLABLE);
+        DataProfile profile = profile(csv, rules);
+
+        // Replacement for missing cells: mean of the valid values for numeric columns,
+        // most frequent code for categorical ones (NaN when a column has no valid values)
+        double[] fill = new double[nf];
+        for (int j = 0; j < nf; j++) fill[j] = profile.get(j).getFillValue();
+
+        for (int i = 1; i < csv.lines; i++) {
+            if (csv.width(i) != width) {
                 linesSkipped++;
                 continue;
             }
@@ -102,27 +133,16 @@ public class DataLoader {
             boolean recordImputed = false;
 
             for (int j = 0; j < nf; j++) {
-                String val = tokens[j].trim();
-                if (val.isEmpty()) {
-                    if (means.containsKey(j)) {
-                        feats[j] = means.get(j);
-                        recordImputed = true;
-                    } else if (modes.containsKey(j)) {
-                        feats[j] = mapping.get(modes.get(j));
-                        recordImputed = true;
-                    } else {
-                        recordValid = false;
-                        break;
-                    }
-                } else if (mapping.containsKey(val)) {
-                    feats[j] = mapping.get(val);
+                int cell = csv.cell(i, j);
+                if (csv.start[cell] == csv.end[cell]) {
+                    feats[j] = fill[j];
+                    recordImputed = true;
                 } else {
-                    if (isValidNumericValue(val, j)) {
-                        feats[j] = Double.parseDouble(val);
-                    } else {
-                        recordValid = false;
-                        break;
-                    }
+                    feats[j] = encodeCell(schema.get(j), buf, csv.start[cell], csv.end[cell]);
+                }
+                if (Double.isNaN(feats[j])) {
+                    recordValid = false;
+                    break;
                 }
             }
 
@@ -131,73 +151,215 @@ public class DataLoader {
                 continue;
             }
 
-            try {
-                double examScore = Double.parseDouble(tokens[nf].trim());
-                if (examScore >= 0 && examScore <= 100) {
-                    int label = examScore >= 70 ? 1 : 0;
-                    data.add(new Node(feats, label));
-                    if (recordImputed) imputedCount++;
-                } else {
-                    linesSkipped++;
+            int cell = csv.cell(i, nf);
+            double examScore = parseNumber(buf, csv.start[cell], csv.end[cell]);
+            if (examScore >= 0 && examScore <= 100) {
+                data.add(new Node(feats, bands.classOf(examScore), examScore));
+                if (recordImputed) imputedCount++;
+            } else {
+                linesSkipped++; // Out of range or not a number
+            }
+        }
+
+        LoadResult result = new LoadResult(data, linesSkipped, imputedCount, schema, bands);
+        result.fillValues = fill;
+        result.profile = profile;
+        return result;
+    }
+
+    // Profiles every data line with the given column rules in one pass; chunks of lines are
+    // profiled concurrently and merged in file order
+    private static DataProfile profile(CsvTable csv, FeatureSchema.Feature[] rules) {
+        int chunks = Math.max(1, (csv.lines - 1 + PROFILE_CHUNK - 1) / PROFILE_CHUNK);
+        DataProfile[] parts = new DataProfile[chunks];
+        if (chunks == 1) {
+            parts[0] = profileRange(csv, rules, 1, csv.lines);
+        } else {
+            try (TaskScope scope = TrainingExecutor.SHARED.open(chunks)) {
+                for (int c = 0; c < chunks; c++) {
+                    int chunk = c;
+                    int from = 1 + c * PROFILE_CHUNK;
+                    int to = Math.min(csv.lines, from + PROFILE_CHUNK);
+                    scope.fork(() -> parts[chunk] = profileRange(csv, rules, from, to));
                 }
-            } catch (NumberFormatException e) {
-                linesSkipped++;
+                scope.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while profiling", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Profiling failed", e.getCause());
             }
         }
+        for (int c = 1; c < chunks; c++) parts[0].merge(parts[c]);
+        return parts[0];
+    }
 
-        return new LoadResult(data, linesSkipped, imputedCount);
+    private static DataProfile profileRange(CsvTable csv, FeatureSchema.Feature[] rules, int from, int to) {
+        DataProfile p = new DataProfile(rules);
+        for (int i = from; i < to; i++) {
+            if (csv.width(i) != rules.length) {
+                p.malformedLine();
+                continue;
+            }
+            p.line();
+            for (int j = 0; j < rules.length; j++) {
+                int cell = csv.cell(i, j);
+                DataProfile.Column col = p.column(j);
+                if (csv.start[cell] == csv.end[cell]) {
+                    col.missing();
+                    continue;
+                }
+                double v = encodeCell(rules[j], csv.buf, csv.start[cell], csv.end[cell]);
+                if (Double.isNaN(v)) col.invalid();
+                else col.accept(v);
+            }
+        }
+        return p;
     }
 
     public static String[] getFeatureNames() {
         return featureNames;
     }
 
-    private static Map<String, Integer> buildMapping() {
-        Map<String, Integer> m = new HashMap<>();
-        m.put("Low", 0);
-        m.put("Medium", 1);
-        m.put("High", 2);
-        m.put("No", 0);
-        m.put("Yes", 1);
-        m.put("Public", 0);
-        m.put("Private", 1);
-        m.put("Negative", 0);
-        m.put("Neutral", 1);
-        m.put("Positive", 2);
-        m.put("High School", 0);
-        m.put("College", 1);
-        m.put("Postgraduate", 2);
-        m.put("Near", 0);
-        m.put("Moderate", 1);
-        m.put("Far", 2);
-        m.put("Male", 0);
-        m.put("Female", 1);
-        return m;
+    // Reads the whole file and splits it into lines and fields without creating a String per field
+    private static CsvTable parseCSV(String filePath) throws IOException {
+        char[] buf = new char[(int) Math.min(Integer.MAX_VALUE - 8, new File(filePath).length() + 1)];
+        int len = 0;
+        try (Reader r = new FileReader(filePath)) {
+            while (true) {
+                if (len == buf.length) buf = Arrays.copyOf(buf, Math.max(16, buf.length * 2));
+                int n = r.read(buf, len, buf.length - len);
+                if (n < 0) break;
+                len += n;
+            }
+        }
+        return new CsvTable(buf, len);
     }
 
-    private static List<String[]> parseCSV(String filePath) throws IOException {
-        List<String[]> recs = new ArrayList<>();
-        BufferedReader br = new BufferedReader(new FileReader(filePath));
-        String line;
-        while ((line = br.readLine()) != null) {
-            List<String> tokens = new ArrayList<>();
-            boolean inQuotes = false;
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < line.length(); i++) {
-                char c = line.charAt(i);
-                if (c == '"') {
-                    inQuotes = !inQuotes;
-                } else if (c == ',' && !inQuotes) {
-                    tokens.add(sb.toString().trim());
-                    sb.setLength(0);
-                } else {
-                    sb.append(c);
+    // Parses a feed of rows one line at a time with the rules of loadData, for scoring rows as they
+    // arrive. Columns are found by header name, so their order may differ from the training file and
+    // other columns (an ID, the exam score) are ignored; empty cells take the column's fill value
+    // (LoadResult.fillValues of the training data); rows of the wrong width or with an invalid value
+    // are rejected.
+    public static final class RowParser {
+        private final FeatureSchema schema;
+        private final double[] fill;
+        private final int[] column; // Field holding each feature
+        private final int width;
+        private final CsvTable table = new CsvTable(new char[0], 0);
+        private char[] buf = new char[256];
+
+        public RowParser(FeatureSchema schema, double[] fill, String header) {
+            if (fill.length != schema.size()) {
+                throw new IllegalArgumentException("Expected " + schema.size() + " fill values, got " + fill.length);
+            }
+            this.schema = schema;
+            this.fill = fill.clone();
+            this.column = new int[schema.size()];
+            Arrays.fill(column, -1);
+            load(header);
+            this.width = table.lines == 0 ? 0 : table.width(0);
+            for (int j = 0; j < width; j++) {
+                int f = schema.indexOf(table.text(0, j));
+                if (f >= 0 && column[f] < 0) column[f] = j;
+            }
+            for (int f = 0; f < column.length; f++) {
+                if (column[f] < 0) throw new IllegalArgumentException("Missing column: " + schema.get(f).name);
+            }
+        }
+
+        // Features of one data line in schema order, or null if the line is rejected
+        public double[] parse(String line) {
+            load(line);
+            if (table.lines != 1 || table.width(0) != width) return null;
+            double[] feats = new double[column.length];
+            for (int f = 0; f < column.length; f++) {
+                int cell = table.cell(0, column[f]);
+                feats[f] = table.start[cell] == table.end[cell] ? fill[f]
+                    : encodeCell(schema.get(f), buf, table.start[cell], table.end[cell]);
+                if (Double.isNaN(feats[f])) return null;
+            }
+            return feats;
+        }
+
+        private void load(String line) {
+            int n = line.length();
+            if (n > buf.length) buf = new char[Math.max(n, buf.length * 2)];
+            line.getChars(0, n, buf, 0);
+            table.parse(buf, n);
+        }
+    }
+
+    // Lines and fields of a CSV file, each field a trimmed [start, end) range of one shared buffer.
+    // Lines end at \n, \r or \r\n; commas inside double quotes don't split fields, and the quotes
+    // are removed by shifting the field's characters left in place.
+    // A table can be refilled with parse(), reusing its index arrays.
+    private static final class CsvTable {
+        char[] buf;
+        int[] start = new int[1024]; // Per field
+        int[] end = new int[1024];
+        int[] firstCell = new int[64]; // Per line, plus one past the last line
+        int lines;
+        private int cells;
+
+        CsvTable(char[] buf, int len) {
+            parse(buf, len);
+        }
+
+        void parse(char[] buf, int len) {
+            this.buf = buf;
+            lines = 0;
+            cells = 0;
+            int i = 0;
+            while (i < len) {
+                if (lines + 1 >= firstCell.length) firstCell = Arrays.copyOf(firstCell, firstCell.length * 2);
+                firstCell[lines] = cells;
+                boolean inQuotes = false;
+                int fieldStart = i, w = i;
+                while (i < len) {
+                    char c = buf[i];
+                    if (c == '\n' || c == '\r') break;
+                    i++;
+                    if (c == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (c == ',' && !inQuotes) {
+                        addCell(fieldStart, w);
+                        fieldStart = i;
+                        w = i;
+                    } else {
+                        buf[w++] = c;
+                    }
                 }
+                addCell(fieldStart, w);
+                lines++;
+                if (i < len && buf[i++] == '\r' && i < len && buf[i] == '\n') i++; // Line break
             }
-            tokens.add(sb.toString().trim());
-            recs.add(tokens.toArray(new String[0]));
+            firstCell[lines] = cells;
+        }
+
+        private void addCell(int s, int e) {
+            while (s < e && buf[s] <= ' ') s++;
+            while (e > s && buf[e - 1] <= ' ') e--;
+            if (cells == start.length) {
+                start = Arrays.copyOf(start, cells * 2);
+                end = Arrays.copyOf(end, cells * 2);
+            }
+            start[cells] = s;
+            end[cells] = e;
+            cells++;
+        }
+
+        int width(int line) {
+            return firstCell[line + 1] - firstCell[line];
+        }
+
+        int cell(int line, int col) {
+            return firstCell[line] + col;
+        }
+
+        String text(int line, int col) {
+            int c = cell(line, col);
+            return new String(buf, start[c], end[c] - start[c]);
         }
-        br.close();
-        return recs;
     }
-}
\ No newline at end of file
+}
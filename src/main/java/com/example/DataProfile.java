@@ -0,0 +1,242 @@
+package com.example;
+
+import java.util.*;
+
+// Data-quality report of a loaded CSV file, to spot a bad extract before training on it.
+// For every column (the features, then the exam score): cells that are valid, empty, or invalid
+// by the rules loadData applies (unknown category, not a number, out of the feature's range);
+// min, max, mean and variance of the valid numbers with approximate quantiles; and how often each
+// category occurs. DataLoader profiles chunks of lines in parallel and merges the partial profiles,
+// so the whole report costs one pass over the file.
+public class DataProfile {
+    public static final int SKETCH_SIZE = 256; // Quantiles are exact for fewer than this many values per column
+
+    private final Column[] columns;
+    private long lines; // Data lines with the header's number of fields
+    private long malformed; // Data lines with any other number of fields
+
+    DataProfile(FeatureSchema.Feature[] rules) {
+        columns = new Column[rules.length];
+        for (int j = 0; j < rules.length; j++) columns[j] = new Column(rules[j]);
+    }
+
+    Column column(int j) {
+        return columns[j];
+    }
+
+    void line() {
+        lines++;
+    }
+
+    void malformedLine() {
+        malformed++;
+    }
+
+    // Adds a profile of later lines of the same file
+    void merge(DataProfile other) {
+        lines += other.lines;
+        malformed += other.malformed;
+        for (int j = 0; j < columns.length; j++) columns[j].merge(other.columns[j]);
+    }
+
+    public int size() {
+        return columns.length;
+    }
+
+    public Column get(int j) {
+        return columns[j];
+    }
+
+    // Column with this header, or null
+    public Column get(String name) {
+        String key = FeatureSchema.normalize(name);
+        for (Column c : columns) {
+            if (FeatureSchema.normalize(c.name).equals(key)) return c;
+        }
+        return null;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getMalformedLines() {
+        return malformed;
+    }
+
+    // One line per column with more than the given fraction of its cells empty or invalid
+    public List<String> getProblems(double maxBadFraction) {
+        List<String> out = new ArrayList<>();
+        for (Column c : columns) {
+            if (c.getInvalidFraction() > maxBadFraction) {
+                out.add(String.format("%s: %.0f%% of values invalid", c.name, c.getInvalidFraction() * 100));
+            }
+            if (c.getMissingFraction() > maxBadFraction) {
+                out.add(String.format("%s: %.0f%% of values missing", c.name, c.getMissingFraction() * 100));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(lines).append(" lines, ").append(malformed).append(" malformed\n");
+        for (Column c : columns) sb.append(c).append('\n');
+        return sb.toString();
+    }
+
+    // Statistics of one column
+    public static class Column {
+        public final String name;
+        private final String[] categories; // null for numeric columns
+        private long valid;
+        private long missing;
+        private long invalid;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double mean;
+        private double m2; // Sum of squared differences from the mean
+        private final long[] categoryCounts;
+        private final QuantileSketch sketch;
+
+        Column(FeatureSchema.Feature rule) {
+            name = rule.name;
+            categories = rule.isCategorical() ? rule.getCategories() : null;
+            categoryCounts = new long[rule.getCategoryCount()];
+            sketch = rule.isCategorical() ? null : new QuantileSketch(SKETCH_SIZE);
+        }
+
+        void missing() {
+            missing++;
+        }
+
+        void invalid() {
+            invalid++;
+        }
+
+        // A valid value: a category code, or a number in range (Welford's update of the moments)
+        void accept(double v) {
+            valid++;
+            if (categories != null) {
+                categoryCounts[(int) v]++;
+                return;
+            }
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            double d = v - mean;
+            mean += d / valid;
+            m2 += d * (v - mean);
+            sketch.add(v);
+        }
+
+        // Adds the statistics of the same column over other lines (Chan et al.'s pairwise update)
+        void merge(Column o) {
+            long n = valid + o.valid;
+            if (categories == null && o.valid > 0) {
+                double d = o.mean - mean;
+                mean += d * o.valid / n;
+                m2 += o.m2 + d * d * ((double) valid * o.valid / n);
+                min = Math.min(min, o.min);
+                max = Math.max(max, o.max);
+                sketch.merge(o.sketch);
+            }
+            for (int c = 0; c < categoryCounts.length; c++) categoryCounts[c] += o.categoryCounts[c];
+            valid = n;
+            missing += o.missing;
+            invalid += o.invalid;
+        }
+
+        public boolean isCategorical() {
+            return categories != null;
+        }
+
+        // Cells on lines of the right width: valid + missing + invalid
+        public long getCount() {
+            return valid + missing + invalid;
+        }
+
+        public long getValid() {
+            return valid;
+        }
+
+        public long getMissing() {
+            return missing;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public double getMissingFraction() {
+            return getCount() == 0 ? 0 : (double) missing / getCount();
+        }
+
+        public double getInvalidFraction() {
+            return getCount() == 0 ? 0 : (double) invalid / getCount();
+        }
+
+        // Smallest valid number (NaN for categories or without valid values)
+        public double getMin() {
+            return hasNumbers() ? min : Double.NaN;
+        }
+
+        public double getMax() {
+            return hasNumbers() ? max : Double.NaN;
+        }
+
+        public double getMean() {
+            return hasNumbers() ? mean : Double.NaN;
+        }
+
+        // Population variance of the valid numbers
+        public double getVariance() {
+            return hasNumbers() ? m2 / valid : Double.NaN;
+        }
+
+        public double getStdDev() {
+            return Math.sqrt(getVariance());
+        }
+
+        // Approximate value below which the given fraction of the valid numbers fall
+        public double getQuantile(double q) {
+            return hasNumbers() ? sketch.quantile(q) : Double.NaN;
+        }
+
+        // Occurrences of each category in code order (empty for numeric columns)
+        public long[] getCategoryCounts() {
+            return categoryCounts.clone();
+        }
+
+        // What loadData puts in the column's empty cells: the mean of a numeric column, the most
+        // frequent code of a categorical one (the lowest on ties), NaN without valid values
+        public double getFillValue() {
+            if (categories == null) return getMean();
+            int mode = -1;
+            for (int c = 0; c < categoryCounts.length; c++) {
+                if (categoryCounts[c] > 0 && (mode < 0 || categoryCounts[c] > categoryCounts[mode])) mode = c;
+            }
+            return mode < 0 ? Double.NaN : mode;
+        }
+
+        private boolean hasNumbers() {
+            return categories == null && valid > 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(name).append(": ").append(valid).append(" valid, ").append(missing).append(" missing, ")
+              .append(invalid).append(" invalid");
+            if (categories != null) {
+                for (int c = 0; c < categories.length; c++) {
+                    sb.append(", ").append(categories[c]).append('=').append(categoryCounts[c]);
+                }
+            } else if (valid > 0) {
+                sb.append(String.format(", min=%.4g, median=%.4g, max=%.4g, mean=%.4g, sd=%.4g",
+                    min, getQuantile(0.5), max, mean, getStdDev()));
+            }
+            return sb.toString();
+        }
+    }
+}
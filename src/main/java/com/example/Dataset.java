@@ -0,0 +1,108 @@
+package com.example;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Read-only columnar copy of a list of records, kept on the heap.
+// Training and evaluation code refers to rows by index, so several consumers
+// (for example cross-validation folds) can share one copy of the data.
+public class Dataset implements FeatureMatrix {
+    private final List<Node> nodes; // Original records, in row order
+    private final double[][] columns; // [feature][row]
+    private final int[] labels;
+    private final double[] targets; // Null unless every record has a score
+    private final double[] weights; // Sample weights, or null when every row weighs 1
+    private final int[] categoryCounts; // Per feature, 0 when the column is not categorical
+    private final int numClasses;
+
+    public Dataset(List<Node> data) {
+        this(data, null);
+    }
+
+    // Same as above with a sample weight per record (non-negative, in the records' order)
+    public Dataset(List<Node> data, double[] weights) {
+        if (weights != null) {
+            if (weights.length != data.size()) {
+                throw new IllegalArgumentException("Expected " + data.size() + " weights, got " + weights.length);
+            }
+            for (double w : weights) {
+                if (!(w >= 0 && w < Double.POSITIVE_INFINITY)) throw new IllegalArgumentException("Invalid sample weight: " + w);
+            }
+        }
+        this.weights = weights == null ? null : weights.clone();
+        nodes = Collections.unmodifiableList(new ArrayList<>(data));
+        int nf = nodes.isEmpty() ? 0 : nodes.get(0).getNumFeatures();
+        columns = new double[nf][nodes.size()];
+        labels = new int[nodes.size()];
+        double[] scores = new double[nodes.size()];
+        IntStream.range(0, nodes.size()).parallel().forEach(r -> {
+            Node n = nodes.get(r);
+            for (int f = 0; f < nf; f++) {
+                columns[f][r] = n.getFeature(f);
+            }
+            labels[r] = n.getLabel();
+            scores[r] = n.getScore();
+        });
+        targets = nodes.stream().allMatch(Node::hasScore) ? scores : null;
+        numClasses = FeatureMatrix.countClasses(this);
+        categoryCounts = new int[nf];
+        IntStream.range(0, nf).parallel().forEach(f -> categoryCounts[f] = FeatureMatrix.countCategories(this, f));
+    }
+
+    @Override
+    public int size() {
+        return labels.length;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return columns.length;
+    }
+
+    @Override
+    public double getFeature(int row, int feature) {
+        return columns[feature][row];
+    }
+
+    @Override
+    public int getLabel(int row) {
+        return labels[row];
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public double getTarget(int row) {
+        if (targets == null) return FeatureMatrix.super.getTarget(row);
+        return targets[row];
+    }
+
+    @Override
+    public boolean hasTargets() {
+        return targets != null;
+    }
+
+    @Override
+    public double getWeight(int row) {
+        return weights == null ? 1.0 : weights[row];
+    }
+
+    @Override
+    public int getCategoryCount(int feature) {
+        return categoryCounts[feature];
+    }
+
+    public Node getNode(int row) {
+        return nodes.get(row);
+    }
+
+    @Override
+    public void copyRow(int row, double[] out) {
+        for (int f = 0; f < columns.length; f++) {
+            out[f] = columns[f][row];
+        }
+    }
+}
@@ -1,24 +1,155 @@
 package com.example;
 
+import java.io.*;
 import java.util.*;
 
-// This class builds a single decision tree for classification.
+// This class builds a single decision tree for classification into any number of classes
+// (labels 0..K-1, K = FeatureMatrix.getNumClasses(); Pass/Fail is K = 2).
+// Every row counts in the Gini impurity with the weight of its class (TrainingParams.balanceClasses
+// and classWeights) times its own sample weight (FeatureMatrix.getWeight), and leaves predict the
+// class with the most weight, so rare classes are not simply outvoted.
 public class DecisionTree {
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final double GAIN_TOLERANCE = 1e-12; // Gains closer than this count as equal
+
     TreeNode root; // Root node of the decision tree
     private int maxFeatures; // Maximum number of features to consider when splitting
+    private int maxDepth; // Depth at which nodes become leaves regardless of purity
+    private int minSamplesLeaf; // Smallest number of rows allowed on either side of a split
+    private int minSamplesSplit; // Smallest number of rows a node needs to be split
+    private double minImpurityDecrease; // Smallest gain, weighted by the node's share of the weight, worth a split
+    private int maxLeafNodes; // Leaf budget; switches growth to best-first when limited
+    private boolean balanceClasses; // Weight classes by the inverse of their share of the sample
+    private double[] extraClassWeights; // Per-class multipliers from the parameters, or null
+    private double totalWeight; // Weight of the rows the tree is trained on, used to weight gains
+    private boolean truncated; // Growth was stopped by the deadline or an interrupt
+
+    // Training state, only set while train() runs
+    private FeatureMatrix data; // Shared, read-only training data
+    private int[] rows; // Row indices of this tree's sample; each node owns a [start, end) range
+    private int[] order; // Scratch: one node's rows sorted by the feature being scanned
+    private double[] keys; // Scratch: feature values matching order
+    private int numClasses; // K
+    private double[] classWeights; // Weight of a row of each class, before its sample weight
+    private double nodeWeight; // Scratch: weight of the node being split
+    private double[] totals; // Scratch: class weights of the node being split
+    private double[] leftWeights; // Scratch: class weights left of the threshold being scored
+    private double[] catWeights; // Scratch: class weights per category for categorical features, [code * K + class]
+    private int[] catRows; // Scratch: rows per category
+    private long deadline; // System.nanoTime() at which growth stops, or NO_DEADLINE
     private Random rand; // Random number generator for feature selection
     private double[] importances; // Array to store feature importance scores
 
     // Constructor to initialize the decision tree
     public DecisionTree(int maxFeatures, int totalFeatures) {
-        this.maxFeatures = maxFeatures;
+        this(new TrainingParams(1, maxFeatures), totalFeatures);
+    }
+
+    // Constructor taking depth and leaf-size limits from the training parameters
+    public DecisionTree(TrainingParams params, int totalFeatures) {
+        this.maxFeatures = params.featuresPerSplit(totalFeatures);
+        this.maxDepth = params.maxDepth;
+        this.minSamplesLeaf = Math.max(1, params.minSamplesLeaf);
+        this.minSamplesSplit = Math.max(2, params.minSamplesSplit);
+        this.minImpurityDecrease = params.minImpurityDecrease;
+        this.maxLeafNodes = Math.max(1, params.maxLeafNodes);
+        this.balanceClasses = params.balanceClasses;
+        this.extraClassWeights = params.classWeights == null ? null : params.classWeights.clone();
         this.rand = new Random();
         this.importances = new double[totalFeatures];
     }
 
+    // Fixes the feature sampling, so the same rows always grow the same tree
+    void setSeed(long seed) {
+        rand.setSeed(seed);
+    }
+
     // Method to train the decision tree using the given dataset
     public void train(List<Node> data) {
-        root = buildTree(data); // Build the tree recursively
+        Dataset ds = new Dataset(data);
+        train(ds, ds.allRows());
+    }
+
+    // Trains on the given rows of a shared dataset (duplicates allowed, as in a bootstrap sample).
+    // The row array is partitioned in place while the tree grows, so it is the only per-tree copy.
+    public void train(FeatureMatrix data, int[] sample) {
+        train(data, sample, NO_DEADLINE);
+    }
+
+    // Same as above, but growth stops once System.nanoTime() passes the deadline or the thread is
+    // interrupted: nodes not yet split become leaves, so the tree is still usable, only shallower.
+    // Returns false if the tree was cut short this way.
+    public boolean train(FeatureMatrix data, int[] sample, long deadline) {
+        this.deadline = deadline;
+        this.truncated = false;
+        this.data = data;
+        this.rows = sample;
+        this.order = new int[sample.length];
+        this.keys = new double[sample.length];
+        this.numClasses = data.getNumClasses();
+        this.classWeights = classWeights(data, sample);
+        this.totals = new double[numClasses];
+        this.leftWeights = new double[numClasses];
+        this.catWeights = new double[FeatureMatrix.MAX_CATEGORIES * numClasses];
+        this.catRows = new int[FeatureMatrix.MAX_CATEGORIES];
+        try {
+            root = buildTree(); // Build the tree without recursion
+        } finally {
+            this.data = null;
+            this.rows = null;
+            this.order = null;
+            this.keys = null;
+            this.totals = null;
+            this.leftWeights = null;
+            this.catWeights = null;
+            this.catRows = null;
+        }
+        return !truncated;
+    }
+
+    // Weight of a row of each class: with balancing, the sample's total weight divided by the
+    // number of classes present and by the class's own weight, so every class present weighs the
+    // same in total; times the extra weight of the class, if any
+    private double[] classWeights(FeatureMatrix data, int[] sample) {
+        double[] w = new double[numClasses];
+        Arrays.fill(w, 1.0);
+        if (balanceClasses) {
+            double[] sums = new double[numClasses];
+            double total = 0;
+            for (int row : sample) {
+                double rw = data.getWeight(row);
+                sums[data.getLabel(row)] += rw;
+                total += rw;
+            }
+            int present = 0;
+            for (double s : sums) if (s > 0) present++;
+            for (int k = 0; k < numClasses; k++) {
+                if (sums[k] > 0) w[k] = total / (present * sums[k]);
+            }
+        }
+        if (extraClassWeights != null) {
+            for (int k = 0; k < Math.min(numClasses, extraClassWeights.length); k++) w[k] *= extraClassWeights[k];
+        }
+        return w;
+    }
+
+    private double weightOf(int row, int label) {
+        return classWeights[label] * data.getWeight(row);
+    }
+
+    // True if the last training run was stopped before the tree was fully grown
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    // Checked between nodes and between features of a split search
+    private boolean outOfTime() {
+        if (!truncated && ((deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0)
+                || Thread.currentThread().isInterrupted())) {
+            truncated = true;
+        }
+        return truncated;
     }
 
     // Method to predict the class label for a given set of features
@@ -41,46 +172,243 @@ public class DecisionTree {
         return importances;
     }
 
-    // Recursive method to build the decision tree
-    private TreeNode buildTree(List<Node> data) {
-        // If data is empty or pure, create a leaf node
-        if (data.isEmpty() || isPure(data)) {
-            int lbl = majorityLabel(data); // Determine the majority class label
-            return new LeafTreeNode(lbl);
+    // Calls the visitor with the feature and threshold of every decision node in the tree
+    void forEachSplit(SplitVisitor visitor) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (node instanceof DecisionTreeNode) {
+                DecisionTreeNode dtn = (DecisionTreeNode) node;
+                visitor.visit(dtn.featureIndex, dtn.threshold);
+                stack.push(dtn.right);
+                stack.push(dtn.left);
+            }
         }
+    }
 
-        int nf = data.get(0).getNumFeatures(); // Number of features in the dataset
-        int[] selectedFeatures = selectFeatures(nf, maxFeatures); // Select a subset of features
-        Split best = findBestSplit(data, selectedFeatures); // Find the best split based on Gini impurity
+    // Callback used by forEachSplit
+    interface SplitVisitor {
+        void visit(int featureIndex, double threshold);
+    }
 
-        if (best == null || best.gain <= 0) { // If no good split is found, create a leaf node
-            int lbl = majorityLabel(data);
-            return new LeafTreeNode(lbl);
+    // Writes the trained tree in pre-order, a decision node as its feature and threshold and a leaf
+    // as -1 and its label, each followed by its cover, then the feature importances; read() restores it
+    void writeTo(DataOutput out) throws IOException {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (node instanceof DecisionTreeNode) {
+                DecisionTreeNode dtn = (DecisionTreeNode) node;
+                out.writeInt(dtn.featureIndex);
+                out.writeDouble(dtn.threshold);
+                stack.push(dtn.right);
+                stack.push(dtn.left);
+            } else {
+                out.writeInt(-1);
+                out.writeInt(((LeafTreeNode) node).label);
+            }
+            out.writeInt(node.cover);
         }
+        out.writeInt(importances.length);
+        for (double v : importances) out.writeDouble(v);
+    }
 
-        importances[best.featureIndex] += best.gain; // Update feature importance
+    // Reads a tree written by writeTo() for a dataset with the given number of features
+    static DecisionTree read(DataInput in, int totalFeatures) throws IOException {
+        DecisionTree tree = new DecisionTree(new TrainingParams(1, 0), totalFeatures);
+        DecisionTreeNode holder = tree.new DecisionTreeNode(-1, 0, null, null); // Stand-in parent of the root
+        Deque<DecisionTreeNode> parents = new ArrayDeque<>();
+        Deque<Boolean> sides = new ArrayDeque<>(); // true for the left child
+        parents.push(holder);
+        sides.push(true);
+        while (!parents.isEmpty()) {
+            DecisionTreeNode parent = parents.pop();
+            boolean isLeft = sides.pop();
+            int f = in.readInt();
+            TreeNode node;
+            if (f < 0) {
+                int label = in.readInt();
+                if (label < 0) throw new IOException("Corrupt tree: negative label " + label);
+                node = tree.new LeafTreeNode(label);
+            } else {
+                if (f >= totalFeatures) throw new IOException("Corrupt tree: feature " + f + " of " + totalFeatures);
+                DecisionTreeNode dtn = tree.new DecisionTreeNode(f, in.readDouble(), null, null);
+                parents.push(dtn);
+                sides.push(false);
+                parents.push(dtn);
+                sides.push(true);
+                node = dtn;
+            }
+            node.cover = in.readInt();
+            if (node.cover < 0) throw new IOException("Corrupt tree: negative cover " + node.cover);
+            if (isLeft) parent.left = node;
+            else parent.right = node;
+        }
+        tree.root = holder.left;
+        if (in.readInt() != totalFeatures) throw new IOException("Corrupt tree: importances do not match the features");
+        for (int f = 0; f < totalFeatures; f++) tree.importances[f] = in.readDouble();
+        return tree;
+    }
 
-        // Recursively build the left and right subtrees
-        TreeNode left = buildTree(best.leftData);
-        TreeNode right = buildTree(best.rightData);
-        return new DecisionTreeNode(best.featureIndex, best.threshold, left, right);
+    // Number of leaves in the trained tree
+    public int getLeafCount() {
+        int leaves = 0;
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        if (root != null) stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (node instanceof DecisionTreeNode) {
+                stack.push(((DecisionTreeNode) node).left);
+                stack.push(((DecisionTreeNode) node).right);
+            } else {
+                leaves++;
+            }
+        }
+        return leaves;
     }
 
-    // Helper method to check if all labels in the data are the same
-    private boolean isPure(List<Node> data) {
-        if (data.isEmpty()) return true;
-        int first = data.get(0).getLabel();
-        for (Node n : data) {
-            if (n.getLabel() != first) return false;
+    // Length of the longest root-to-leaf path (0 for a single leaf)
+    public int getDepth() {
+        int max = 0;
+        Deque<TreeNode> nodes = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        if (root != null) {
+            nodes.push(root);
+            depths.push(0);
+        }
+        while (!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            int d = depths.pop();
+            max = Math.max(max, d);
+            if (node instanceof DecisionTreeNode) {
+                DecisionTreeNode dtn = (DecisionTreeNode) node;
+                nodes.push(dtn.left);
+                depths.push(d + 1);
+                nodes.push(dtn.right);
+                depths.push(d + 1);
+            }
+        }
+        return max;
+    }
+
+    // Builds the tree iteratively so deep trees cannot overflow the call stack.
+    // Without a leaf limit, nodes are expanded depth-first from an explicit stack; with one,
+    // the pending node whose split has the largest weighted gain is expanded next (best-first).
+    private TreeNode buildTree() {
+        totalWeight = 0;
+        for (int row : rows) totalWeight += weightOf(row, data.getLabel(row));
+        boolean bestFirst = maxLeafNodes < TrainingParams.UNLIMITED;
+        DecisionTreeNode holder = new DecisionTreeNode(-1, 0, null, null); // Stand-in parent of the root
+        Deque<Pending> stack = new ArrayDeque<>();
+        PriorityQueue<Pending> queue = new PriorityQueue<>((a, b) -> Double.compare(b.priority(), a.priority()));
+
+        Pending first = new Pending(0, rows.length, 0, holder, true);
+        if (bestFirst) {
+            first.split = chooseSplit(first);
+            queue.add(first);
+        } else {
+            stack.push(first);
+        }
+
+        int leaves = 1;
+        while (!stack.isEmpty() || !queue.isEmpty()) {
+            Pending p = bestFirst ? queue.poll() : stack.pop();
+            Split best = bestFirst ? p.split : chooseSplit(p);
+
+            if (best == null || leaves >= maxLeafNodes || outOfTime()) {
+                LeafTreeNode leaf = new LeafTreeNode(majorityLabel(p.start, p.end));
+                leaf.cover = p.end - p.start;
+                p.attach(leaf);
+                continue;
+            }
+
+            importances[best.featureIndex] += best.gain; // Update feature importance
+            DecisionTreeNode dtn = new DecisionTreeNode(best.featureIndex, best.threshold, null, null);
+            dtn.cover = p.end - p.start;
+            p.attach(dtn);
+            leaves++; // One leaf became two
+
+            int mid = partition(data, rows, p.start, p.end, best.featureIndex, best.threshold);
+            Pending left = new Pending(p.start, mid, p.depth + 1, dtn, true);
+            Pending right = new Pending(mid, p.end, p.depth + 1, dtn, false);
+            if (bestFirst) {
+                left.split = chooseSplit(left);
+                right.split = chooseSplit(right);
+                queue.add(left);
+                queue.add(right);
+            } else {
+                stack.push(right); // Left subtree is built first, as the recursive version did
+                stack.push(left);
+            }
+        }
+        return holder.left;
+    }
+
+    // Best split for a pending node, or null if the node has to become a leaf
+    private Split chooseSplit(Pending p) {
+        int size = p.end - p.start;
+        // If data is empty, pure or too small to split, create a leaf node
+        if (size == 0 || isPure(p.start, p.end) || p.depth >= maxDepth
+                || size < minSamplesSplit || size < 2 * minSamplesLeaf) {
+            return null;
+        }
+
+        int nf = data.getNumFeatures(); // Number of features in the dataset
+        int[] selectedFeatures = selectFeatures(nf, maxFeatures); // Select a subset of features
+        Split best = findBestSplit(p.start, p.end, selectedFeatures); // Find the best split based on Gini impurity
+
+        if (truncated) return null; // Search was cut short; its result may not be the best split
+        if (best == null || best.gain <= 0) return null; // No good split found
+        best.share = totalWeight > 0 ? nodeWeight / totalWeight : 0;
+        if (weightedGain(best) < minImpurityDecrease) return null;
+        return best;
+    }
+
+    // Gain scaled by the node's share of the training weight
+    private static double weightedGain(Split s) {
+        return s.gain * s.share;
+    }
+
+    // Moves rows with feature <= threshold to the front of [start, end); returns where the right side begins
+    static int partition(FeatureMatrix data, int[] rows, int start, int end, int feature, double threshold) {
+        int i = start, j = end - 1;
+        while (i <= j) {
+            if (data.getFeature(rows[i], feature) <= threshold) {
+                i++;
+            } else {
+                int tmp = rows[i];
+                rows[i] = rows[j];
+                rows[j] = tmp;
+                j--;
+            }
+        }
+        return i;
+    }
+
+    // Helper method to check if all labels in the range are the same
+    private boolean isPure(int start, int end) {
+        if (start >= end) return true;
+        int first = data.getLabel(rows[start]);
+        for (int i = start + 1; i < end; i++) {
+            if (data.getLabel(rows[i]) != first) return false;
         }
         return true;
     }
 
-    // Helper method to determine the majority class label in the data
-    private int majorityLabel(List<Node> data) {
-        int[] counts = new int[2]; // Assuming binary classification (0 and 1)
-        for (Node n : data) counts[n.getLabel()]++;
-        return counts[0] > counts[1] ? 0 : 1;
+    // Helper method to determine the class with the most weight in the range; ties go to the higher class
+    private int majorityLabel(int start, int end) {
+        double[] counts = new double[numClasses];
+        for (int i = start; i < end; i++) {
+            int c = data.getLabel(rows[i]);
+            counts[c] += weightOf(rows[i], c);
+        }
+        int best = 0;
+        for (int k = 1; k < numClasses; k++) {
+            if (counts[k] >= counts[best]) best = k;
+        }
+        return best;
     }
 
     // Helper method to randomly select a subset of features
@@ -101,54 +429,184 @@ public class DecisionTree {
         }
     }
 
-    // Helper method to find the best split for the data based on Gini impurity
-    private Split findBestSplit(List<Node> data, int[] feats) {
-        double baseImp = gini(data); // Calculate the base Gini impurity
+    // Helper method to find the best split for the range based on weighted Gini impurity.
+    // Low-cardinality categorical features are scored from a per-category class-weight table;
+    // other features are sorted once and swept left to right with running class weights.
+    // Either way every distinct threshold is scored without building left/right lists.
+    // Gini only needs the sum of squared class weights on each side, which the sweeps update in O(1)
+    // per row, so a split costs the same for K classes as for two.
+    private Split findBestSplit(int start, int end, int[] feats) {
+        int n = end - start;
+        Arrays.fill(totals, 0);
+        for (int i = start; i < end; i++) {
+            int c = data.getLabel(rows[i]);
+            totals[c] += weightOf(rows[i], c);
+        }
+        double w = 0, totalSq = 0;
+        for (double t : totals) {
+            w += t;
+            totalSq += t * t;
+        }
+        nodeWeight = w;
+        if (!(w > 0)) return null; // Nothing in the node carries weight
+        double baseImp = gini(totalSq, w); // Calculate the base Gini impurity
+
         Split best = null;
         for (int f : feats) { // Iterate over selected features
-            double[] thresholds = data.stream().mapToDouble(d -> d.getFeature(f)).distinct().sorted().toArray();
-            for (double t : thresholds) { // Iterate over unique thresholds for the feature
-                List<Node> left = new ArrayList<>();
-                List<Node> right = new ArrayList<>();
-                for (Node d : data) {
-                    if (d.getFeature(f) <= t) left.add(d);
-                    else right.add(d);
-                }
-                if (left.isEmpty() || right.isEmpty()) continue; // Skip if split is invalid
+            if (outOfTime()) return null;
+            int categories = data.getCategoryCount(f);
+            if (categories > 0 && categories <= n) { // Counting is O(n + categories), cheaper than sorting
+                best = scanCategories(start, end, f, categories, totalSq, baseImp, best);
+            } else {
+                best = scanSorted(start, end, f, totalSq, baseImp, best);
+            }
+        }
+        return best;
+    }
 
-                double newImp = weightedImpurity(left, right); // Calculate weighted impurity
-                double gain = baseImp - newImp; // Calculate the information gain
-                if (gain > 0 && (best == null || gain > best.gain)) {
-                    best = new Split(f, t, left, right, gain); // Update the best split
-                }
+    // Sort-and-sweep scan of one feature; returns the better of best and this feature's best split
+    private Split scanSorted(int start, int end, int f, double totalSq, double baseImp, Split best) {
+        int n = end - start;
+        for (int i = 0; i < n; i++) {
+            order[i] = rows[start + i];
+            keys[i] = data.getFeature(order[i], f);
+        }
+        sortByKey(keys, order, 0, n - 1);
+
+        double[] left = leftWeights, total = totals;
+        Arrays.fill(left, 0);
+        double wl = 0;
+        double leftSq = 0, rightSq = totalSq; // Sums of squared class weights on each side
+        for (int i = 0; i < n - 1; i++) { // The largest value would leave the right side empty
+            int row = order[i];
+            int c = data.getLabel(row);
+            double w = weightOf(row, c);
+            double lc = left[c];
+            leftSq += w * (2 * lc + w); // (l + w)^2 - l^2
+            rightSq -= w * (2 * (total[c] - lc) - w); // r^2 - (r - w)^2
+            left[c] = lc + w;
+            wl += w;
+            if (keys[i] == keys[i + 1]) continue; // Thresholds are the distinct values
+            best = consider(best, f, keys[i], i + 1, n, wl, leftSq, rightSq, baseImp);
+        }
+        return best;
+    }
+
+    // Scan of a feature holding category codes 0..categories-1: one counting pass builds the
+    // class weights per category, then the ordered partitions "code <= c" are scored from the table
+    private Split scanCategories(int start, int end, int f, int categories, double totalSq, double baseImp, Split best) {
+        int n = end - start;
+        int k = numClasses;
+        Arrays.fill(catWeights, 0, categories * k, 0);
+        Arrays.fill(catRows, 0, categories, 0);
+        for (int i = start; i < end; i++) {
+            int row = rows[i];
+            int code = (int) data.getFeature(row, f);
+            int c = data.getLabel(row);
+            catWeights[code * k + c] += weightOf(row, c);
+            catRows[code]++;
+        }
+
+        Arrays.fill(leftWeights, 0);
+        double wl = 0;
+        double leftSq = 0, rightSq = totalSq;
+        int l = 0;
+        for (int code = 0; code < categories; code++) {
+            if (catRows[code] == 0) continue; // Thresholds are the codes present
+            for (int c = 0; c < k; c++) {
+                double m = catWeights[code * k + c];
+                if (m == 0) continue;
+                double lc = leftWeights[c];
+                leftSq += m * (2 * lc + m); // (l + m)^2 - l^2
+                rightSq -= m * (2 * (totals[c] - lc) - m); // r^2 - (r - m)^2
+                leftWeights[c] = lc + m;
+                wl += m;
             }
+            l += catRows[code];
+            if (l == n) break; // Splitting at the highest code present would leave the right side empty
+            best = consider(best, f, code, l, n, wl, leftSq, rightSq, baseImp);
+        }
+        return best;
+    }
+
+    // Scores the split that puts l of the n rows, weighing wl, on the left, given the sums of
+    // squared class weights on each side, and keeps it if it beats best
+    private Split consider(Split best, int f, double threshold, int l, int n, double wl, double leftSq,
+            double rightSq, double baseImp) {
+        if (l < minSamplesLeaf || n - l < minSamplesLeaf) return best; // Skip if split is invalid
+        double w = nodeWeight, wr = w - wl;
+        if (!(wl > 0 && wr > 0)) return best; // A side without weight tells nothing
+
+        // Weighted average of left and right impurities: (wl * gini(left) + wr * gini(right)) / w
+        double newImp = (w - leftSq / wl - rightSq / wr) / w;
+        double gain = baseImp - newImp; // Calculate the information gain
+        // The running sums are rounded, so a split that changes nothing can score a hair above 0, and
+        // two splits that are equally good can differ by a hair; the first one found is kept, as the
+        // list-based grower did
+        if (gain > GAIN_TOLERANCE && (best == null || gain > best.gain + GAIN_TOLERANCE)) {
+            return new Split(f, threshold, gain); // Update the best split
         }
         return best;
     }
 
-    // Helper method to calculate the Gini impurity of a dataset
-    private double gini(List<Node> data) {
-        int[] counts = new int[2];
-        for (Node n : data) counts[n.getLabel()]++;
-        double imp = 1.0;
-        int tot = data.size();
-        for (int c : counts) {
-            double p = (double) c / tot;
-            imp -= p * p; // Subtract the squared probability of each class
+    // Helper method to calculate the Gini impurity, 1 - sum of squared class shares,
+    // from the sum of squared class weights and the total weight
+    private static double gini(double sumSq, double tot) {
+        return 1.0 - sumSq / (tot * tot);
+    }
+
+    // Sorts keys[lo..hi] ascending, applying the same moves to vals (quicksort, insertion sort for short runs)
+    static void sortByKey(double[] keys, int[] vals, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = median(keys[lo], keys[(lo + hi) >>> 1], keys[hi]);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(keys, vals, i++, j--);
+                }
+            }
+            // Recurse into the smaller half and loop on the larger one to bound stack depth
+            if (j - lo < hi - i) {
+                sortByKey(keys, vals, lo, j);
+                lo = i;
+            } else {
+                sortByKey(keys, vals, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            double k = keys[i];
+            int v = vals[i];
+            int j = i - 1;
+            while (j >= lo && keys[j] > k) {
+                keys[j + 1] = keys[j];
+                vals[j + 1] = vals[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            vals[j + 1] = v;
         }
-        return imp;
     }
 
-    // Helper method to calculate the weighted impurity of a split
-    private double weightedImpurity(List<Node> l, List<Node> r) {
-        int tot = l.size() + r.size();
-        double li = gini(l);
-        double ri = gini(r);
-        return (l.size() * li + r.size() * ri) / tot; // Weighted average of left and right impurities
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(double[] keys, int[] vals, int i, int j) {
+        double k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        int v = vals[i];
+        vals[i] = vals[j];
+        vals[j] = v;
     }
 
     // Abstract base class for tree nodes
-    private abstract class TreeNode {}
+    abstract class TreeNode {
+        int cover; // Bootstrap rows that reached the node in training
+    }
 
     // Class for decision nodes in the tree
     class DecisionTreeNode extends TreeNode {
@@ -173,18 +631,42 @@ public class DecisionTree {
         }
     }
 
+    // A node waiting to be expanded, with the place in the tree it will be attached to
+    private class Pending {
+        final int start, end; // Range of rows[] owned by this node
+        final int depth;
+        final DecisionTreeNode parent;
+        final boolean isLeft;
+        Split split; // Precomputed in best-first mode
+
+        Pending(int start, int end, int depth, DecisionTreeNode parent, boolean isLeft) {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+            this.parent = parent;
+            this.isLeft = isLeft;
+        }
+
+        void attach(TreeNode node) {
+            if (isLeft) parent.left = node;
+            else parent.right = node;
+        }
+
+        double priority() {
+            return split == null ? Double.NEGATIVE_INFINITY : weightedGain(split);
+        }
+    }
+
     // Class to represent a potential split of the data
     private class Split {
         int featureIndex; // Feature used for the split
         double threshold; // Threshold value for the split
-        List<Node> leftData, rightData; // Data for the left and right splits
         double gain; // Information gain of the split
+        double share; // The node's share of the training weight
 
-        Split(int fi, double thr, List<Node> ld, List<Node> rd, double g) {
+        Split(int fi, double thr, double g) {
             featureIndex = fi;
             threshold = thr;
-            leftData = ld;
-            rightData = rd;
             gain = g;
         }
     }
@@ -0,0 +1,196 @@
+package com.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Tells whether the inputs being scored still look like the data the model was trained on.
+// At training time every feature's values are counted into histogram bins placed the way
+// FeatureBins places boosting bins (quantiles, or one bin per value for categories). Each scored
+// input then bumps one LongAdder per feature, which threads update without locking or contending,
+// and drift scores compare the two histograms on demand, so no data is rescanned:
+// the population stability index (PSI) and the largest gap between the two cumulative
+// distributions (Kolmogorov-Smirnov distance, at bin resolution).
+public class DriftMonitor {
+    public static final int DEFAULT_BINS = 10;
+    public static final double PSI_WATCH = 0.1; // Usual reading: below this the inputs are stable
+    public static final double PSI_ALERT = 0.25; // and above this the model should be retrained
+
+    private static final double MIN_SHARE = 1e-4; // Floor on a bin's share, so an empty bin keeps PSI finite
+
+    private final String[] names;
+    private final double[][] edges; // [feature] -> upper edges of every bin but the last
+    private final long[][] trainingCounts; // [feature][bin]
+    private final long trainingRows;
+    private final LongAdder[][] live; // [feature][bin] -> inputs recorded since the last reset
+    private final LongAdder recorded = new LongAdder();
+
+    public DriftMonitor(FeatureSchema schema, FeatureMatrix data, int[] rows) {
+        this(schema, data, rows, DEFAULT_BINS);
+    }
+
+    public DriftMonitor(FeatureSchema schema, FeatureMatrix data, int[] rows, int bins) {
+        if (bins < 2) throw new IllegalArgumentException("At least two bins are needed");
+        int nf = data.getNumFeatures();
+        if (schema.size() != nf) throw new IllegalArgumentException("Schema has " + schema.size() + " features, data " + nf);
+        names = schema.getNames();
+        edges = new double[nf][];
+        trainingCounts = new long[nf][];
+        for (int f = 0; f < nf; f++) {
+            edges[f] = FeatureBins.findEdges(data, rows, f, bins);
+            trainingCounts[f] = new long[edges[f].length + 1];
+            for (int r : rows) trainingCounts[f][FeatureBins.binOf(edges[f], data.getFeature(r, f))]++;
+        }
+        trainingRows = rows.length;
+        live = newCounters(edges);
+    }
+
+    private DriftMonitor(String[] names, double[][] edges, long[][] trainingCounts, long trainingRows) {
+        this.names = names;
+        this.edges = edges;
+        this.trainingCounts = trainingCounts;
+        this.trainingRows = trainingRows;
+        this.live = newCounters(edges);
+    }
+
+    private static LongAdder[][] newCounters(double[][] edges) {
+        LongAdder[][] out = new LongAdder[edges.length][];
+        for (int f = 0; f < edges.length; f++) {
+            out[f] = new LongAdder[edges[f].length + 1];
+            for (int b = 0; b < out[f].length; b++) out[f][b] = new LongAdder();
+        }
+        return out;
+    }
+
+    // Counts one scored input; safe to call from any number of threads
+    public void record(double[] feats) {
+        for (int f = 0; f < edges.length; f++) live[f][FeatureBins.binOf(edges[f], feats[f])].increment();
+        recorded.increment();
+    }
+
+    // Inputs recorded since construction or the last reset
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    public long getTrainingRows() {
+        return trainingRows;
+    }
+
+    public int getNumFeatures() {
+        return names.length;
+    }
+
+    // Starts a new window of inputs. Inputs recorded while this runs may land in either window.
+    public void reset() {
+        for (LongAdder[] bins : live) {
+            for (LongAdder a : bins) a.reset();
+        }
+        recorded.reset();
+    }
+
+    // Population stability index of a feature: sum over bins of (live - training) * ln(live / training)
+    // shares. NaN until an input is recorded.
+    public double psi(int feature) {
+        long[] now = liveCounts(feature);
+        long n = sum(now);
+        if (n == 0) return Double.NaN;
+        double psi = 0;
+        for (int b = 0; b < now.length; b++) {
+            double expected = Math.max((double) trainingCounts[feature][b] / trainingRows, MIN_SHARE);
+            double actual = Math.max((double) now[b] / n, MIN_SHARE);
+            psi += (actual - expected) * Math.log(actual / expected);
+        }
+        return psi;
+    }
+
+    // Largest difference between the training and live cumulative shares over the bin edges.
+    // NaN until an input is recorded.
+    public double ks(int feature) {
+        long[] now = liveCounts(feature);
+        long n = sum(now);
+        if (n == 0) return Double.NaN;
+        double max = 0;
+        long cumTrain = 0, cumLive = 0;
+        for (int b = 0; b < now.length; b++) {
+            cumTrain += trainingCounts[feature][b];
+            cumLive += now[b];
+            max = Math.max(max, Math.abs((double) cumTrain / trainingRows - (double) cumLive / n));
+        }
+        return max;
+    }
+
+    // Drift of every feature, largest PSI first (empty until an input is recorded)
+    public List<FeatureDrift> report() {
+        List<FeatureDrift> out = new ArrayList<>();
+        if (getRecorded() == 0) return out;
+        for (int f = 0; f < edges.length; f++) out.add(new FeatureDrift(f, names[f], psi(f), ks(f)));
+        out.sort((a, b) -> Double.compare(b.psi, a.psi));
+        return out;
+    }
+
+    // Live counts of one feature's bins. Counters are read one by one, so while inputs are being
+    // recorded the snapshot may be a few inputs out of step across bins.
+    private long[] liveCounts(int feature) {
+        long[] out = new long[live[feature].length];
+        for (int b = 0; b < out.length; b++) out[b] = live[feature][b].sum();
+        return out;
+    }
+
+    private static long sum(long[] v) {
+        long s = 0;
+        for (long x : v) s += x;
+        return s;
+    }
+
+    // Writes the training histograms; recorded inputs are not saved
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(edges.length);
+        out.writeLong(trainingRows);
+        for (int f = 0; f < edges.length; f++) {
+            out.writeUTF(names[f]);
+            out.writeInt(edges[f].length);
+            for (double e : edges[f]) out.writeDouble(e);
+            for (long c : trainingCounts[f]) out.writeLong(c);
+        }
+    }
+
+    public static DriftMonitor read(DataInput in) throws IOException {
+        int nf = in.readInt();
+        long rows = in.readLong();
+        if (nf < 0 || rows <= 0) throw new IOException("Corrupt drift monitor header");
+        String[] names = new String[nf];
+        double[][] edges = new double[nf][];
+        long[][] counts = new long[nf][];
+        for (int f = 0; f < nf; f++) {
+            names[f] = in.readUTF();
+            int n = in.readInt();
+            if (n < 0) throw new IOException("Corrupt drift monitor: negative bin count");
+            edges[f] = new double[n];
+            for (int b = 0; b < n; b++) edges[f][b] = in.readDouble();
+            counts[f] = new long[n + 1];
+            for (int b = 0; b <= n; b++) counts[f][b] = in.readLong();
+        }
+        return new DriftMonitor(names, edges, counts, rows);
+    }
+
+    // Drift scores of one feature
+    public static class FeatureDrift {
+        public final int feature;
+        public final String name;
+        public final double psi;
+        public final double ks;
+
+        FeatureDrift(int feature, String name, double psi, double ks) {
+            this.feature = feature;
+            this.name = name;
+            this.psi = psi;
+            this.ks = ks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: PSI %.3f, KS %.3f", name, psi, ks);
+        }
+    }
+}
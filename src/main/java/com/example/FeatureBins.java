@@ -0,0 +1,79 @@
+package com.example;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Histogram bins of every feature for a fixed set of training rows, computed once before boosting.
+// Bin edges are quantiles of the feature's values (every distinct value when there are few, so
+// category codes each get their own bin), and each row's value is replaced by its bin code.
+// Split search then only sums gradients per bin instead of sorting rows at every node.
+class FeatureBins {
+    private static final int MAX_SAMPLE = 100_000; // Values looked at per feature to place the edges
+
+    final double[][] edges; // [feature] -> ascending upper edges of every bin but the last
+    final byte[][] codes; // [feature][i] -> unsigned bin of the i-th training row
+
+    FeatureBins(FeatureMatrix data, int[] rows, int maxBins) {
+        if (maxBins < 2 || maxBins > BoostingParams.MAX_BINS) {
+            throw new IllegalArgumentException("maxBins must be between 2 and " + BoostingParams.MAX_BINS);
+        }
+        int nf = data.getNumFeatures();
+        edges = new double[nf][];
+        codes = new byte[nf][rows.length];
+        IntStream.range(0, nf).parallel().forEach(f -> {
+            edges[f] = findEdges(data, rows, f, maxBins);
+            for (int i = 0; i < rows.length; i++) {
+                codes[f][i] = (byte) binOf(edges[f], data.getFeature(rows[i], f));
+            }
+        });
+    }
+
+    int getNumFeatures() {
+        return edges.length;
+    }
+
+    int getBinCount(int feature) {
+        return edges[feature].length + 1;
+    }
+
+    int code(int feature, int i) {
+        return codes[feature][i] & 0xFF;
+    }
+
+    // Bin of a value: the first bin whose upper edge is >= the value, NaN going to the last bin
+    static int binOf(double[] edges, double v) {
+        int lo = 0, hi = edges.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (edges[mid] < v || Double.isNaN(v)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Upper edges for one feature from an evenly strided sample of its values (also DriftMonitor's histograms)
+    static double[] findEdges(FeatureMatrix data, int[] rows, int f, int maxBins) {
+        int step = Math.max(1, rows.length / MAX_SAMPLE);
+        double[] vals = new double[(rows.length + step - 1) / step];
+        int n = 0;
+        for (int i = 0; i < rows.length; i += step) {
+            double v = data.getFeature(rows[i], f);
+            if (!Double.isNaN(v)) vals[n++] = v;
+        }
+        Arrays.sort(vals, 0, n);
+
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || vals[i] != vals[i - 1]) vals[distinct++] = vals[i];
+        }
+        if (distinct <= maxBins) {
+            return Arrays.copyOf(vals, Math.max(0, distinct - 1)); // One bin per value
+        }
+        // Quantiles of the distinct values, so a few very common values cannot swallow all the bins
+        double[] out = new double[maxBins - 1];
+        for (int k = 1; k < maxBins; k++) {
+            out[k - 1] = vals[(int) ((long) k * distinct / maxBins) - 1];
+        }
+        return out;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example;
+
+// Read access to a table of training rows (features plus a class label and a numeric target),
+// addressed by row index.
+// Tree training, evaluation and batch prediction only go through this interface,
+// so the rows can live on the heap (Dataset) or outside it (OffHeapDataset).
+public interface FeatureMatrix {
+    int MAX_CATEGORIES = 32; // Largest number of codes a column may use and still count as categorical
+
+    int size();
+
+    int getNumFeatures();
+
+    double getFeature(int row, int feature);
+
+    // Class of a row: 0/1 for Fail/Pass, or a band index 0..K-1 (see ScoreBands)
+    int getLabel(int row);
+
+    // Sample weight of a row in tree training; 1 unless the matrix stores weights
+    default double getWeight(int row) {
+        return 1.0;
+    }
+
+    // Number of classes K: one more than the largest label, and at least 2
+    default int getNumClasses() {
+        return countClasses(this);
+    }
+
+    // Regression target of a row (the exam score). Matrices that store no scores cannot train
+    // a regression model, rather than silently fitting the class labels.
+    default double getTarget(int row) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " stores no regression targets");
+    }
+
+    // Whether getTarget() answers for every row
+    default boolean hasTargets() {
+        return false;
+    }
+
+    // Number of category codes if every value of the feature is an integer code in
+    // [0, MAX_CATEGORIES), otherwise 0 (treated as a generic numeric feature)
+    default int getCategoryCount(int feature) {
+        return 0;
+    }
+
+    // Category count of a column, computed by scanning its values
+    static int countCategories(FeatureMatrix m, int feature) {
+        int max = -1;
+        for (int r = 0; r < m.size(); r++) {
+            double v = m.getFeature(r, feature);
+            if (!(v >= 0 && v < MAX_CATEGORIES) || v != (int) v) return 0;
+            max = Math.max(max, (int) v);
+        }
+        return max + 1;
+    }
+
+    // Class count of a matrix, computed by scanning its labels
+    static int countClasses(FeatureMatrix m) {
+        int max = 1;
+        for (int r = 0; r < m.size(); r++) max = Math.max(max, m.getLabel(r));
+        return max + 1;
+    }
+
+    // Copies one row's features into the given buffer (avoids allocating per prediction)
+    default void copyRow(int row, double[] out) {
+        for (int f = 0; f < out.length; f++) {
+            out[f] = getFeature(row, f);
+        }
+    }
+
+    // Row indices 0..size-1
+    default int[] allRows() {
+        int[] rows = new int[size()];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        return rows;
+    }
+}
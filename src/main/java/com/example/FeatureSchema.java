@@ -0,0 +1,226 @@
+package com.example;
+
+import java.util.*;
+
+// Describes every input column once: its name, kind, valid range, category names in code order,
+// whether students can change it, its unit and its label in the input form.
+// DataLoader, FeedbackAnalyzer, MainView and Main all read column semantics from here.
+public class FeatureSchema {
+    public enum Kind { NUMERIC, CATEGORICAL }
+
+    public static final int NOT_CONTROLLABLE = -1;
+
+    private static final String[] LOW_HIGH = {"Low", "Medium", "High"};
+    private static final String[] NO_YES = {"No", "Yes"};
+
+    // The columns of student_data.csv, in file order
+    public static final FeatureSchema STUDENT = new FeatureSchema(Arrays.asList(
+        numeric("Hours Studied", 0, 168, " hours", "Hours Studied per week:", 0).withMaxChange(20),
+        numeric("Attendance", 0, 100, "%", "Percentage of class attended:", 1).withMaxChange(30),
+        categorical("Parental Involvement", LOW_HIGH, "Parental Involvement:", NOT_CONTROLLABLE),
+        categorical("Access to Resources", LOW_HIGH, "Access to Resources:", NOT_CONTROLLABLE),
+        categorical("Extracurricular Activities", NO_YES, "Extracurricular Activities:", 4),
+        numeric("Sleep Hours", 0, 24, "", "Sleep Hours per night:", 2).withMaxChange(3),
+        numeric("Previous Scores", 0, 100, "", "Previous Exam Score:", NOT_CONTROLLABLE),
+        categorical("Motivation Level", LOW_HIGH, "Motivation Level:", 3),
+        categorical("Internet Access", NO_YES, "Internet Access:", NOT_CONTROLLABLE),
+        numeric("Tutoring Sessions", 0, 100, "", "Tutoring Sessions per month:", 5).withMaxChange(4),
+        categorical("Family Income", LOW_HIGH, "Family Income:", NOT_CONTROLLABLE),
+        categorical("Teacher Quality", LOW_HIGH, "Teacher Quality:", NOT_CONTROLLABLE),
+        categorical("School Type", new String[]{"Public", "Private"}, "School Type:", NOT_CONTROLLABLE),
+        categorical("Peer Influence", new String[]{"Negative", "Neutral", "Positive"}, "Peer Influence:",
+            NOT_CONTROLLABLE),
+        numeric("Physical Activity", 0, 168, " hours", "Hours of Physical Activity Per Week:", 6).withMaxChange(3),
+        categorical("Learning Disabilities", NO_YES, "Learning Disabilities:", NOT_CONTROLLABLE),
+        categorical("Parental Education Level", new String[]{"High School", "College", "Postgraduate"},
+            "Parental Education:", NOT_CONTROLLABLE, "Parental Education"),
+        categorical("Distance from Home", new String[]{"Near", "Moderate", "Far"}, "Distance from Home:",
+            NOT_CONTROLLABLE),
+        categorical("Gender", new String[]{"Male", "Female"}, "Gender:", NOT_CONTROLLABLE)
+    ));
+
+    private final Feature[] features;
+    private final int[] controllable; // Controllable feature indices in advice order
+
+    public FeatureSchema(List<Feature> features) {
+        this.features = features.toArray(new Feature[0]);
+        List<Integer> ctrl = new ArrayList<>();
+        for (int i = 0; i < this.features.length; i++) {
+            if (this.features[i].isControllable()) ctrl.add(i);
+        }
+        ctrl.sort(Comparator.comparingInt(i -> this.features[i].adviceRank));
+        controllable = ctrl.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Schema for the given feature columns of a CSV header: known columns take their description
+    // from STUDENT (matched ignoring case, spaces and underscores); others are plain non-negative numbers
+    public static FeatureSchema fromHeader(String[] headers) {
+        List<Feature> out = new ArrayList<>();
+        for (String h : headers) {
+            int known = STUDENT.indexOf(h);
+            out.add(known >= 0 ? STUDENT.get(known)
+                : numeric(h.trim(), 0, Double.POSITIVE_INFINITY, "", h.trim() + ":", NOT_CONTROLLABLE));
+        }
+        return new FeatureSchema(out);
+    }
+
+    public static Feature numeric(String name, double min, double max, String unit, String uiLabel,
+            int adviceRank, String... aliases) {
+        return new Feature(name, Kind.NUMERIC, min, max, null, unit, uiLabel, adviceRank, aliases);
+    }
+
+    public static Feature categorical(String name, String[] categories, String uiLabel, int adviceRank,
+            String... aliases) {
+        return new Feature(name, Kind.CATEGORICAL, 0, categories.length - 1, categories, "", uiLabel,
+            adviceRank, aliases);
+    }
+
+    public int size() {
+        return features.length;
+    }
+
+    public Feature get(int index) {
+        return features[index];
+    }
+
+    // Index of the column with this header, or -1
+    public int indexOf(String header) {
+        String key = normalize(header);
+        for (int i = 0; i < features.length; i++) {
+            if (features[i].matches(key)) return i;
+        }
+        return -1;
+    }
+
+    public String[] getNames() {
+        String[] names = new String[features.length];
+        for (int i = 0; i < names.length; i++) names[i] = features[i].name;
+        return names;
+    }
+
+    // True if the other schema has the same columns in the same order (names compared as headers are)
+    public boolean sameColumns(FeatureSchema other) {
+        if (other == null || other.features.length != features.length) return false;
+        for (int i = 0; i < features.length; i++) {
+            if (!normalize(features[i].name).equals(normalize(other.features[i].name))) return false;
+        }
+        return true;
+    }
+
+    // Indices of the features students can change, in the order advice is given
+    public int[] getControllable() {
+        return controllable.clone();
+    }
+
+    // True if the input has one value per feature and every numeric value is in range
+    public boolean isValid(double[] input) {
+        if (input == null || input.length != features.length) return false;
+        for (int i = 0; i < features.length; i++) {
+            if (!features[i].isCategorical() && !features[i].inRange(input[i])) return false;
+        }
+        return true;
+    }
+
+    static String normalize(String header) {
+        StringBuilder sb = new StringBuilder(header.length());
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c != ' ' && c != '_') sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    // One column of the schema
+    public static class Feature {
+        public final String name; // Display name, as used in feedback text
+        public final Kind kind;
+        public final double min; // Valid range; for categories this is the range of codes
+        public final double max;
+        public final String unit; // Appended to numbers in feedback text
+        public final String uiLabel; // Label next to the input in the prediction form
+        public final double maxChange; // Largest change advice may suggest at once; the whole range unless set
+        final int adviceRank; // Position in the suggestion list, NOT_CONTROLLABLE if students can't change it
+        private final String[] categories; // Category names in code order, null for numeric features
+        private final CategoryDecoder decoder;
+        private final String[] keys; // Normalized header spellings this feature answers to
+
+        Feature(String name, Kind kind, double min, double max, String[] categories, String unit,
+                String uiLabel, int adviceRank, String[] aliases) {
+            this.name = name;
+            this.kind = kind;
+            this.min = min;
+            this.max = max;
+            this.categories = categories == null ? null : categories.clone();
+            this.decoder = categories == null ? null : new CategoryDecoder(categories);
+            this.unit = unit;
+            this.uiLabel = uiLabel;
+            this.adviceRank = adviceRank;
+            this.maxChange = max - min;
+            this.keys = new String[aliases.length + 1];
+            keys[0] = normalize(name);
+            for (int i = 0; i < aliases.length; i++) keys[i + 1] = normalize(aliases[i]);
+        }
+
+        private Feature(Feature f, double maxChange) {
+            this.name = f.name;
+            this.kind = f.kind;
+            this.min = f.min;
+            this.max = f.max;
+            this.categories = f.categories;
+            this.decoder = f.decoder;
+            this.unit = f.unit;
+            this.uiLabel = f.uiLabel;
+            this.adviceRank = f.adviceRank;
+            this.maxChange = maxChange;
+            this.keys = f.keys;
+        }
+
+        // The same feature, with advice limited to changes of at most maxChange
+        public Feature withMaxChange(double maxChange) {
+            if (!(maxChange > 0)) throw new IllegalArgumentException("Largest change must be positive: " + maxChange);
+            return new Feature(this, maxChange);
+        }
+
+        public boolean isCategorical() {
+            return kind == Kind.CATEGORICAL;
+        }
+
+        public boolean isControllable() {
+            return adviceRank != NOT_CONTROLLABLE;
+        }
+
+        public boolean inRange(double v) {
+            return v >= min && v <= max;
+        }
+
+        public int getCategoryCount() {
+            return categories == null ? 0 : categories.length;
+        }
+
+        public String[] getCategories() {
+            return categories == null ? new String[0] : categories.clone();
+        }
+
+        // Name of the category closest to the given code
+        public String getCategory(double code) {
+            return categories[(int) Math.min(Math.max(code, 0), categories.length - 1)];
+        }
+
+        // Code of a category name, or -1 if the name is unknown or the feature is numeric
+        public int encode(CharSequence token) {
+            return decoder == null ? -1 : decoder.decode(token);
+        }
+
+        // Same as encode(CharSequence) for the characters buf[start, end)
+        public int encode(char[] buf, int start, int end) {
+            return decoder == null ? -1 : decoder.decode(buf, start, end);
+        }
+
+        private boolean matches(String key) {
+            for (String k : keys) {
+                if (k.equals(key)) return true;
+            }
+            return false;
+        }
+    }
+}
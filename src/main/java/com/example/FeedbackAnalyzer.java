@@ -1,107 +1,113 @@
 package com.example;
 
+import java.io.*;
 import java.util.*;
 
 public class FeedbackAnalyzer {
-    private Map<String, Double> passAvg;
-    private Map<String, Double> failAvg;
-    private final List<Integer> controllable = Arrays.asList(0, 1, 5, 7, 4, 9, 14);
-    final String[] featureNames = {
-        "Hours Studied", "Attendance", "Parental Involvement", "Access to Resources",
-        "Extracurricular Activities", "Sleep Hours", "Previous Scores", "Motivation Level",
-        "Internet Access", "Tutoring Sessions", "Family Income", "Teacher Quality",
-        "School Type", "Peer Influence", "Physical Activity", "Learning Disabilities",
-        "Parental Education Level", "Distance from Home", "Gender"
+    private double[] passAvg;
+    private double[] failAvg;
+    private double[] stdDev; // Spread of each feature over all rows, used to size counterfactual changes
+    private final FeatureSchema schema;
+    private final int[] controllable; // Features students can change, in the order advice is given
+    final String[] featureNames;
+
+    private static final String[] INVALID_INPUT_MESSAGES = {
+        "Error: Invalid input values detected",
+        "Please ensure all values are within valid ranges:",
+        "- Hours studied: 0-168 hours per week",
+        "- Attendance: 0-100%",
+        "- Sleep hours: 0-24 hours per day",
+        "- Previous scores: 0-100",
+        "- Tutoring sessions: 0-100 per month",
+        "- Physical activity: 0-168 hours per week"
     };
-    private final Map<Integer, String[]> catMap;
+
+    // Suggestion text prepared once from the training averages, indexed by feature
+    private String[][] catSuggestions; // [feature][user category] -> text, null when no advice
+    private int[] passTarget; // Rounded pass-group average per numeric feature
+    private String[] raiseSuggestions; // "closer to" advice per numeric feature
+    private String[] goodSuggestions; // "is good" advice per numeric feature
 
     public FeedbackAnalyzer(List<Node> data) {
-        catMap = buildCatMap();
+        this(data, FeatureSchema.STUDENT);
+    }
+
+    public FeedbackAnalyzer(List<Node> data, FeatureSchema schema) {
+        this.schema = schema;
+        controllable = schema.getControllable();
+        featureNames = schema.getNames();
         calcAvgs(data);
+        buildTemplates();
     }
 
-    private Map<Integer, String[]> buildCatMap() {
-        Map<Integer, String[]> m = new HashMap<>();
-        // Must match exactly with DataLoader's mapping (Low=0, Medium=1, High=2)
-        m.put(2, new String[]{"Low", "Medium", "High"});
-        m.put(3, new String[]{"Low", "Medium", "High"});
-        m.put(4, new String[]{"No", "Yes"});
-        m.put(7, new String[]{"Low", "Medium", "High"});
-        m.put(8, new String[]{"No", "Yes"});
-        m.put(10, new String[]{"Low", "Medium", "High"});
-        m.put(11, new String[]{"Low", "Medium", "High"});
-        m.put(12, new String[]{"Public", "Private"});
-        m.put(13, new String[]{"Negative", "Neutral", "Positive"});
-        m.put(15, new String[]{"No", "Yes"});
-        m.put(16, new String[]{"High School", "College", "Postgraduate"});
-        m.put(17, new String[]{"Near", "Moderate", "Far"});
-        m.put(18, new String[]{"Male", "Female"});
-        return m;
+    // Analyzer with the averages of an earlier one (see writeTo)
+    private FeedbackAnalyzer(FeatureSchema schema, double[] passAvg, double[] failAvg, double[] stdDev) {
+        this.schema = schema;
+        controllable = schema.getControllable();
+        featureNames = schema.getNames();
+        this.passAvg = passAvg;
+        this.failAvg = failAvg;
+        this.stdDev = stdDev;
+        buildTemplates();
     }
 
-    private boolean isValidInput(double[] input) {
-        if (input == null || input.length != featureNames.length) {
-            return false;
+    // Writes the per-feature statistics the suggestions are built from
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(featureNames.length);
+        for (double[] stats : new double[][]{passAvg, failAvg, stdDev}) {
+            for (double v : stats) out.writeDouble(v);
         }
-        
-        return input[0] >= 0 && input[0] <= 168 && // Hours studied (per week)
-               input[1] >= 0 && input[1] <= 100 && // Attendance
-               input[5] >= 0 && input[5] <= 24 &&  // Sleep hours
-               input[6] >= 0 && input[6] <= 100 && // Previous scores
-               input[9] >= 0 && input[9] <= 100 && // Tutoring sessions
-               input[14] >= 0 && input[14] <= 168; // Physical activity
+    }
+
+    // Reads the statistics written by writeTo() for a dataset with the given schema
+    public static FeedbackAnalyzer read(DataInput in, FeatureSchema schema) throws IOException {
+        int n = in.readInt();
+        if (n != schema.size()) throw new IOException("Saved statistics have " + n + " features, schema " + schema.size());
+        double[][] stats = new double[3][n];
+        for (double[] s : stats) {
+            for (int i = 0; i < n; i++) s[i] = in.readDouble();
+        }
+        return new FeedbackAnalyzer(schema, stats[0], stats[1], stats[2]);
+    }
+
+    private boolean isValidInput(double[] input) {
+        return schema.isValid(input);
     }
 
     public List<String> getSuggestions(double[] userInput, String result) {
         List<String> sugs = new ArrayList<>();
-        
+
         if (!isValidInput(userInput)) {
-            sugs.add("Error: Invalid input values detected");
-            sugs.add("Please ensure all values are within valid ranges:");
-            sugs.add("- Hours studied: 0-168 hours per week");
-            sugs.add("- Attendance: 0-100%");
-            sugs.add("- Sleep hours: 0-24 hours per day");
-            sugs.add("- Previous scores: 0-100");
-            sugs.add("- Tutoring sessions: 0-100 per month");
-            sugs.add("- Physical activity: 0-168 hours per week");
+            Collections.addAll(sugs, INVALID_INPUT_MESSAGES);
             return sugs;
         }
 
-        sugs.add("Your Result: " + result);
+        sugs.add(resultLine(result));
         sugs.add("");
         sugs.add("Suggestions:");
         boolean hasSuggestions = false;
+        boolean failed = result.equals("Fail");
 
         for (int i : controllable) {
             double uv = userInput[i];
-            double pav = passAvg.get("feature" + i);
-
-            if (catMap.containsKey(i)) {
-                int uvIndex = (int) Math.min(Math.max(uv, 0), catMap.get(i).length - 1);
-                int pavIndex = (int) Math.min(Math.max(Math.round(pav), 0), catMap.get(i).length - 1);
-                
-                String ucat = catMap.get(i)[uvIndex];
-                String pcat = catMap.get(i)[pavIndex];
 
-                // Only suggest improvement if current value is lower than target
-                if (!ucat.equals(pcat) && uvIndex < pavIndex) {
-                    sugs.add("- Consider improving " + featureNames[i] + " from '" + ucat + "' to '" + pcat + "'.");
+            if (catSuggestions[i] != null) {
+                int uvIndex = (int) Math.min(Math.max(uv, 0), catSuggestions[i].length - 1);
+                String s = catSuggestions[i][uvIndex];
+                if (s != null) {
+                    sugs.add(s);
                     hasSuggestions = true;
                 }
             } else {
                 int ruv = (int) Math.round(uv);
-                int rpav = (int) Math.round(pav);
+                int rpav = passTarget[i];
 
                 if (Math.abs(ruv - rpav) > 2) {
                     if (ruv < rpav) {
-                        String unit = "";
-                        if (i == 0 || i == 14) unit = " hours";
-                        else if (i == 1) unit = "%";
-                        
-                        sugs.add("- Consider improving " + featureNames[i] + " closer to " + rpav + unit + ".");
+                        sugs.add(raiseSuggestions[i]);
                         hasSuggestions = true;
-                    } else if (result.equals("Fail")) {
-                        sugs.add("- Your " + featureNames[i] + " is good! Consider focusing on other areas for improvement.");
+                    } else if (failed) {
+                        sugs.add(goodSuggestions[i]);
                         hasSuggestions = true;
                     }
                 }
@@ -119,36 +125,154 @@ public class FeedbackAnalyzer {
         return sugs;
     }
 
+    // Same suggestions as above, followed by the features that moved this prediction most
+    // (their SHAP values in the forest) and, for a Fail, the smallest change to the controllable
+    // features that the forest predicts would turn it into a Pass
+    public List<String> getSuggestions(double[] userInput, String result, RandomForest rf) {
+        List<String> sugs = getSuggestions(userInput, result);
+        boolean failed = result.equals("Fail");
+        if (!isValidInput(userInput) || !(failed || result.equals("Pass")) || rf.getNumTrees() == 0) return sugs;
+
+        TreeExplainer.Explanation why = rf.getExplainer(1).explain(userInput);
+        int[] drivers = why.top(3, !failed);
+        List<String> lines = new ArrayList<>();
+        for (int f : drivers) {
+            double points = Math.abs(why.getValue(f)) * 100;
+            if (points < 1) break; // Below one point of the Pass vote is noise
+            lines.add(String.format("- %s of %s %s the Pass vote by %.0f points", featureNames[f],
+                formatValue(f, userInput[f]), failed ? "lowered" : "raised", points));
+        }
+        if (!lines.isEmpty()) {
+            sugs.add("");
+            sugs.add("What drove this prediction:");
+            sugs.addAll(lines);
+        }
+        if (!failed) return sugs;
+
+        CounterfactualSearch.Counterfactual cf = new CounterfactualSearch(rf, schema, stdDev).search(userInput);
+        sugs.add("");
+        sugs.add("What would change the prediction:");
+        if (cf == null) {
+            sugs.add("- No single or paired change within a realistic range is predicted to reach Pass.");
+        } else {
+            StringBuilder sb = new StringBuilder("- Changing ");
+            for (int k = 0; k < cf.features.length; k++) {
+                if (k > 0) sb.append(" and ");
+                int f = cf.features[k];
+                sb.append(featureNames[f]).append(" from ").append(formatValue(f, cf.from[k]))
+                  .append(" to ").append(formatValue(f, cf.to[k]));
+            }
+            sb.append(" is predicted to change your result to Pass.");
+            sugs.add(sb.toString());
+        }
+        return sugs;
+    }
+
+    // Formats a feature value the way the user entered it (category name or number with unit)
+    private String formatValue(int f, double v) {
+        FeatureSchema.Feature feat = schema.get(f);
+        if (feat.isCategorical()) {
+            return "'" + feat.getCategory(v) + "'";
+        }
+        String num = v == Math.rint(v) ? String.valueOf((long) v) : String.format("%.1f", v);
+        return num + feat.unit;
+    }
+
+    private static String resultLine(String result) {
+        if (result.equals("Pass")) return "Your Result: Pass";
+        if (result.equals("Fail")) return "Your Result: Fail";
+        return "Your Result: " + result;
+    }
+
+    // Builds every suggestion string that can be produced for the current averages
+    private void buildTemplates() {
+        int totalF = featureNames.length;
+        catSuggestions = new String[totalF][];
+        passTarget = new int[totalF];
+        raiseSuggestions = new String[totalF];
+        goodSuggestions = new String[totalF];
+
+        for (int i : controllable) {
+            double pav = passAvg[i];
+            FeatureSchema.Feature feat = schema.get(i);
+            if (feat.isCategorical()) {
+                String[] cats = feat.getCategories();
+                int pavIndex = (int) Math.min(Math.max(Math.round(pav), 0), cats.length - 1);
+                String pcat = cats[pavIndex];
+                catSuggestions[i] = new String[cats.length];
+                // Only suggest improvement if current value is lower than target
+                for (int uvIndex = 0; uvIndex < pavIndex; uvIndex++) {
+                    catSuggestions[i][uvIndex] = "- Consider improving " + featureNames[i]
+                        + " from '" + cats[uvIndex] + "' to '" + pcat + "'.";
+                }
+            } else {
+                int rpav = (int) Math.round(pav);
+                String unit = feat.unit;
+
+                passTarget[i] = rpav;
+                raiseSuggestions[i] = "- Consider improving " + featureNames[i] + " closer to " + rpav + unit + ".";
+                goodSuggestions[i] = "- Your " + featureNames[i] + " is good! Consider focusing on other areas for improvement.";
+            }
+        }
+    }
+
+    // Sums every feature per class in a single parallel pass over the data
     private void calcAvgs(List<Node> data) {
-        Map<String, Double> pSum = new HashMap<>();
-        Map<String, Double> fSum = new HashMap<>();
-        int pCount = 0, fCount = 0;
         int totalF = featureNames.length;
+        ClassSums sums = data.parallelStream().collect(
+            () -> new ClassSums(totalF), ClassSums::add, ClassSums::merge);
 
+        passAvg = new double[totalF];
+        failAvg = new double[totalF];
+        stdDev = new double[totalF];
+        int n = sums.pCount + sums.fCount;
         for (int i = 0; i < totalF; i++) {
-            pSum.put("feature" + i, 0.0);
-            fSum.put("feature" + i, 0.0);
+            passAvg[i] = sums.pCount > 0 ? sums.pSum[i] / sums.pCount : 0;
+            failAvg[i] = sums.fCount > 0 ? sums.fSum[i] / sums.fCount : 0;
+            if (n > 0) {
+                double mean = (sums.pSum[i] + sums.fSum[i]) / n;
+                stdDev[i] = Math.sqrt(Math.max(0, sums.sqSum[i] / n - mean * mean));
+            }
         }
+    }
+
+    // Running per-class feature sums for one chunk of the data
+    private static class ClassSums {
+        final double[] pSum;
+        final double[] fSum;
+        final double[] sqSum; // Sum of squares over both classes
+        int pCount, fCount;
 
-        for (Node d : data) {
+        ClassSums(int totalF) {
+            pSum = new double[totalF];
+            fSum = new double[totalF];
+            sqSum = new double[totalF];
+        }
+
+        void add(Node d) {
+            double[] sum;
             if (d.getLabel() == 1) {
                 pCount++;
-                for (int i = 0; i < totalF; i++) {
-                    pSum.put("feature" + i, pSum.get("feature" + i) + d.getFeature(i));
-                }
+                sum = pSum;
             } else {
                 fCount++;
-                for (int i = 0; i < totalF; i++) {
-                    fSum.put("feature" + i, fSum.get("feature" + i) + d.getFeature(i));
-                }
+                sum = fSum;
+            }
+            for (int i = 0; i < sum.length; i++) {
+                double v = d.getFeature(i);
+                sum[i] += v;
+                sqSum[i] += v * v;
             }
         }
 
-        passAvg = new HashMap<>();
-        failAvg = new HashMap<>();
-        for (int i = 0; i < totalF; i++) {
-            passAvg.put("feature" + i, pCount > 0 ? pSum.get("feature" + i) / pCount : 0);
-            failAvg.put("feature" + i, fCount > 0 ? fSum.get("feature" + i) / fCount : 0);
+        void merge(ClassSums other) {
+            pCount += other.pCount;
+            fCount += other.fCount;
+            for (int i = 0; i < pSum.length; i++) {
+                pSum[i] += other.pSum[i];
+                fSum[i] += other.fSum[i];
+                sqSum[i] += other.sqSum[i];
+            }
         }
     }
-}
\ No newline at end of file
+}
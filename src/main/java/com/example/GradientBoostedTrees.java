@@ -0,0 +1,178 @@
+package com.example;
+
+import java.util.*;
+
+// Gradient-boosted Pass/Fail classifier: an alternative to RandomForest with the same train/predict/evaluate
+// surface. Trees are fitted one after another to the gradients of the log-loss of the current
+// scores, each tree's output shrunk by the learning rate; split search runs on per-feature
+// histograms (FeatureBins) so a round costs a few passes over the rows rather than a sort per node.
+// Training stops once the loss on a held-out validation split has not improved for
+// earlyStoppingRounds rounds, and the model keeps the trees up to the best round.
+public class GradientBoostedTrees {
+    private static final double MIN_PROBABILITY = 1e-6; // Keeps the initial score finite for one-class data
+
+    private final BoostingParams params;
+    private final List<RegressionTree> trees = new ArrayList<>();
+    private double baseScore; // Log-odds of a pass before any tree
+    private double[] validationLoss = new double[0]; // Log-loss on the validation split after each round
+
+    public GradientBoostedTrees(int maxRounds, double learningRate) {
+        this(new BoostingParams(maxRounds, learningRate));
+    }
+
+    public GradientBoostedTrees(BoostingParams params) {
+        this.params = params.copy();
+    }
+
+    public void train(List<Node> data) {
+        Dataset ds = new Dataset(data);
+        train(ds, ds.allRows());
+    }
+
+    // Trains on the given rows of a shared dataset, replacing any earlier model
+    public void train(FeatureMatrix data, int[] rows) {
+        if (rows.length == 0) throw new IllegalArgumentException("No rows to train on");
+        if (data.getNumClasses() > 2) throw new IllegalArgumentException("Boosting supports Pass/Fail labels only");
+        int[][] split = validationSplit(data, rows);
+        int[] fit = split[0], valid = split[1];
+        FeatureBins bins = new FeatureBins(data, fit, Math.min(params.maxBins, BoostingParams.MAX_BINS));
+
+        int positives = 0;
+        for (int r : fit) positives += data.getLabel(r);
+        double p = Math.min(1 - MIN_PROBABILITY, Math.max(MIN_PROBABILITY, (double) positives / fit.length));
+        trees.clear();
+        baseScore = Math.log(p / (1 - p));
+
+        double[] fitScore = new double[fit.length];
+        double[] validScore = new double[valid.length];
+        Arrays.fill(fitScore, baseScore);
+        Arrays.fill(validScore, baseScore);
+        double[][] validRows = new double[valid.length][data.getNumFeatures()];
+        for (int i = 0; i < valid.length; i++) data.copyRow(valid[i], validRows[i]);
+
+        double[] grad = new double[fit.length];
+        double[] hess = new double[fit.length];
+        List<Double> losses = new ArrayList<>();
+        double bestLoss = Double.POSITIVE_INFINITY;
+        int bestRounds = 0;
+        for (int round = 0; round < params.maxRounds; round++) {
+            for (int i = 0; i < fit.length; i++) {
+                double prob = sigmoid(fitScore[i]);
+                grad[i] = prob - data.getLabel(fit[i]);
+                hess[i] = prob * (1 - prob);
+            }
+            RegressionTree tree = RegressionTree.fit(bins, grad, hess, params);
+            trees.add(tree);
+            for (int i = 0; i < fit.length; i++) fitScore[i] += tree.predictBinned(bins, i);
+
+            if (valid.length == 0) continue;
+            double loss = 0;
+            for (int i = 0; i < valid.length; i++) {
+                validScore[i] += tree.predict(validRows[i]);
+                loss += logLoss(validScore[i], data.getLabel(valid[i]));
+            }
+            loss /= valid.length;
+            losses.add(loss);
+            if (loss < bestLoss) {
+                bestLoss = loss;
+                bestRounds = trees.size();
+            } else if (trees.size() - bestRounds >= params.earlyStoppingRounds) {
+                break;
+            }
+        }
+        if (valid.length > 0) trees.subList(bestRounds, trees.size()).clear();
+        validationLoss = losses.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    public BoostingParams getParams() {
+        return params.copy();
+    }
+
+    public int getNumTrees() {
+        return trees.size();
+    }
+
+    // Validation log-loss after each round that was trained, including rounds dropped by early stopping
+    public double[] getValidationLoss() {
+        return validationLoss.clone();
+    }
+
+    // Estimated probability of a pass
+    public double predictProbability(double[] feats) {
+        return sigmoid(score(feats));
+    }
+
+    // 1 (Pass) when a pass is at least as likely as a fail, matching RandomForest's tie rule
+    public int predict(double[] feats) {
+        return score(feats) >= 0 ? 1 : 0;
+    }
+
+    public int[] predictBatch(double[][] batch) {
+        int[] preds = new int[batch.length];
+        for (int i = 0; i < batch.length; i++) preds[i] = predict(batch[i]);
+        return preds;
+    }
+
+    // Predicts the given rows of a dataset through one reused row buffer
+    public int[] predict(FeatureMatrix data, int[] rows) {
+        double[] buf = new double[data.getNumFeatures()];
+        int[] preds = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            data.copyRow(rows[i], buf);
+            preds[i] = predict(buf);
+        }
+        return preds;
+    }
+
+    public double evaluate(List<Node> test) {
+        Dataset ds = new Dataset(test);
+        return evaluate(ds, ds.allRows());
+    }
+
+    // Accuracy on the given rows of a shared dataset
+    public double evaluate(FeatureMatrix data, int[] rows) {
+        int[] preds = predict(data, rows);
+        int correct = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (preds[i] == data.getLabel(rows[i])) correct++;
+        }
+        return (double) correct / rows.length;
+    }
+
+    // Log-odds of a pass
+    private double score(double[] feats) {
+        double s = baseScore;
+        for (RegressionTree t : trees) s += t.predict(feats);
+        return s;
+    }
+
+    // Stratified split into {fit rows, validation rows}; no validation rows if either part would be empty
+    private int[][] validationSplit(FeatureMatrix data, int[] rows) {
+        if (params.validationFraction <= 0) return new int[][]{rows.clone(), new int[0]};
+        Random rand = new Random(params.seed);
+        List<Integer> fit = new ArrayList<>(), valid = new ArrayList<>();
+        for (int label = 0; label <= 1; label++) {
+            List<Integer> cls = new ArrayList<>();
+            for (int r : rows) if (data.getLabel(r) == label) cls.add(r);
+            Collections.shuffle(cls, rand);
+            int held = (int) Math.round(cls.size() * params.validationFraction);
+            valid.addAll(cls.subList(0, held));
+            fit.addAll(cls.subList(held, cls.size()));
+        }
+        if (fit.isEmpty() || valid.isEmpty()) return new int[][]{rows.clone(), new int[0]};
+        return new int[][]{
+            fit.stream().mapToInt(Integer::intValue).toArray(),
+            valid.stream().mapToInt(Integer::intValue).toArray()
+        };
+    }
+
+    private static double sigmoid(double s) {
+        return 1 / (1 + Math.exp(-s));
+    }
+
+    // Log-loss of a log-odds score, computed without overflow for large scores
+    private static double logLoss(double score, int label) {
+        double z = label == 1 ? -score : score;
+        return z > 0 ? z + Math.log1p(Math.exp(-z)) : Math.log1p(Math.exp(z));
+    }
+}
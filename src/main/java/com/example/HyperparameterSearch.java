@@ -0,0 +1,233 @@
+package com.example;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Searches RandomForest settings by accuracy on a validation split.
+// All candidates share one FeatureMatrix and one pool of tree-building threads, so the whole search
+// never uses more than the thread budget. Forests are grown in chunks and scored in between,
+// which lets clearly worse candidates be dropped before all of their trees are built.
+public class HyperparameterSearch {
+    private final FeatureMatrix data;
+    private final int[] trainRows;
+    private final int[] validationRows;
+    private final int threadBudget;
+    private double pruneMargin = 0.05; // Stop a candidate trailing the best finished one by more than this
+    private int pruneCheckTrees = 10; // Trees grown before the first pruning check
+
+    public HyperparameterSearch(FeatureMatrix data, int[] trainRows, int[] validationRows, int threadBudget) {
+        this.data = data;
+        this.trainRows = trainRows;
+        this.validationRows = validationRows;
+        this.threadBudget = Math.max(1, threadBudget);
+    }
+
+    public void setPruning(int checkAfterTrees, double margin) {
+        this.pruneCheckTrees = Math.max(1, checkAfterTrees);
+        this.pruneMargin = margin;
+    }
+
+    // Tries every combination in the search space
+    public List<Trial> gridSearch(SearchSpace space) throws InterruptedException {
+        return evaluateAll(space.grid());
+    }
+
+    // Tries the given number of combinations drawn at random from the search space
+    public List<Trial> randomSearch(SearchSpace space, int samples, long seed) throws InterruptedException {
+        Random r = new Random(seed);
+        List<TrainingParams> cands = new ArrayList<>();
+        for (int i = 0; i < samples; i++) cands.add(space.sample(r));
+        return evaluateAll(cands);
+    }
+
+    // Successive halving: every candidate starts with minTrees trees; after each round only the
+    // best 1/eta survive and have their forests grown eta times larger, up to their own numTrees
+    public List<Trial> successiveHalving(List<TrainingParams> candidates, int minTrees, int eta)
+            throws InterruptedException {
+        if (eta < 2) throw new IllegalArgumentException("eta must be at least 2");
+        ExecutorService treePool = Executors.newFixedThreadPool(threadBudget);
+        ExecutorService coordinators = Executors.newFixedThreadPool(threadBudget);
+        List<Trial> all = new ArrayList<>();
+        try {
+            for (TrainingParams p : candidates) all.add(newTrial(p, treePool));
+
+            List<Trial> alive = new ArrayList<>(all);
+            int target = Math.max(1, minTrees);
+            while (true) {
+                final int goal = target;
+                runConcurrently(alive, coordinators, t -> grow(t, Math.min(goal, t.params.numTrees), treePool));
+                alive.sort(Trial.BY_ACCURACY);
+
+                boolean allFinished = true;
+                for (Trial t : alive) allFinished &= t.forest.getNumTrees() >= t.params.numTrees;
+                if (alive.size() == 1 || allFinished) break;
+
+                int keep = Math.max(1, alive.size() / eta);
+                for (Trial t : alive.subList(keep, alive.size())) t.pruned = true;
+                alive = new ArrayList<>(alive.subList(0, keep));
+                target *= eta;
+            }
+            all.sort(Trial.BY_ACCURACY);
+            return all;
+        } finally {
+            coordinators.shutdownNow();
+            treePool.shutdownNow();
+            release(all);
+        }
+    }
+
+    // Grows every candidate to its full size, pruning those that fall behind the best finished one
+    private List<Trial> evaluateAll(List<TrainingParams> candidates) throws InterruptedException {
+        ExecutorService treePool = Executors.newFixedThreadPool(threadBudget);
+        ExecutorService coordinators = Executors.newFixedThreadPool(threadBudget);
+        AtomicDouble bestFinished = new AtomicDouble();
+        List<Trial> trials = new ArrayList<>();
+        try {
+            for (TrainingParams p : candidates) trials.add(newTrial(p, treePool));
+
+            runConcurrently(trials, coordinators, t -> {
+                int checkpoint = Math.min(pruneCheckTrees, t.params.numTrees);
+                grow(t, checkpoint, treePool);
+                while (t.forest.getNumTrees() < t.params.numTrees) {
+                    if (t.accuracy < bestFinished.get() - pruneMargin) {
+                        t.pruned = true;
+                        return;
+                    }
+                    checkpoint = Math.min(checkpoint * 2, t.params.numTrees);
+                    grow(t, checkpoint, treePool);
+                }
+                bestFinished.max(t.accuracy);
+            });
+            trials.sort(Trial.BY_ACCURACY);
+            return trials;
+        } finally {
+            coordinators.shutdownNow();
+            treePool.shutdownNow();
+            release(trials);
+        }
+    }
+
+    // Validation scoring runs on the tree pool too, so it stays within the thread budget
+    private Trial newTrial(TrainingParams p, ExecutorService treePool) {
+        RandomForest forest = new RandomForest(p, data.getNumFeatures());
+        forest.setExecutor(TrainingExecutor.using(treePool));
+        return new Trial(p, forest);
+    }
+
+    // The pool is shut down once the search ends; the returned forests go back to the shared one
+    private static void release(List<Trial> trials) {
+        for (Trial t : trials) t.forest.setExecutor(TrainingExecutor.SHARED);
+    }
+
+    // Adds trees until the forest has the given size, then re-scores it
+    private void grow(Trial t, int size, ExecutorService treePool) throws InterruptedException {
+        int missing = size - t.forest.getNumTrees();
+        if (missing > 0) {
+            long start = System.nanoTime();
+            t.forest.addTrees(data, trainRows, missing, treePool);
+            t.nanos += System.nanoTime() - start;
+        }
+        t.accuracy = t.forest.evaluate(data, validationRows);
+    }
+
+    // Runs one coordinating task per trial and waits for all of them
+    private void runConcurrently(List<Trial> trials, ExecutorService coordinators, TrialTask task)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Trial t : trials) {
+            futures.add(coordinators.submit(() -> {
+                task.run(t);
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Hyperparameter trial failed", e.getCause());
+            }
+        }
+    }
+
+    private interface TrialTask {
+        void run(Trial t) throws InterruptedException;
+    }
+
+    // Thread-safe running maximum
+    private static class AtomicDouble {
+        private double value;
+
+        synchronized double get() {
+            return value;
+        }
+
+        synchronized void max(double v) {
+            value = Math.max(value, v);
+        }
+    }
+
+    // One evaluated setting: its accuracy on the validation rows and how far it got
+    public static class Trial {
+        static final Comparator<Trial> BY_ACCURACY = (a, b) -> Double.compare(b.accuracy, a.accuracy);
+
+        public final TrainingParams params;
+        final RandomForest forest;
+        public volatile double accuracy;
+        public volatile boolean pruned;
+        public volatile long nanos; // Time spent growing trees for this trial
+
+        Trial(TrainingParams params, RandomForest forest) {
+            this.params = params;
+            this.forest = forest;
+        }
+
+        public int getTreesTrained() {
+            return forest.getNumTrees();
+        }
+
+        public RandomForest getForest() {
+            return forest;
+        }
+    }
+
+    // Candidate values for each setting; the grid is their cartesian product
+    public static class SearchSpace {
+        public int[] numTrees = {100};
+        public int[] maxFeatures = {0};
+        public int[] maxDepth = {TrainingParams.UNLIMITED};
+        public int[] minSamplesLeaf = {1};
+        public double[] sampleFraction = {1.0};
+
+        List<TrainingParams> grid() {
+            List<TrainingParams> out = new ArrayList<>();
+            for (int nt : numTrees) {
+                for (int mf : maxFeatures) {
+                    for (int md : maxDepth) {
+                        for (int ml : minSamplesLeaf) {
+                            for (double sf : sampleFraction) {
+                                out.add(params(nt, mf, md, ml, sf));
+                            }
+                        }
+                    }
+                }
+            }
+            return out;
+        }
+
+        TrainingParams sample(Random r) {
+            return params(numTrees[r.nextInt(numTrees.length)],
+                maxFeatures[r.nextInt(maxFeatures.length)],
+                maxDepth[r.nextInt(maxDepth.length)],
+                minSamplesLeaf[r.nextInt(minSamplesLeaf.length)],
+                sampleFraction[r.nextInt(sampleFraction.length)]);
+        }
+
+        private static TrainingParams params(int nt, int mf, int md, int ml, double sf) {
+            TrainingParams p = new TrainingParams(nt, mf);
+            p.maxDepth = md;
+            p.minSamplesLeaf = ml;
+            p.sampleFraction = sf;
+            return p;
+        }
+    }
+}
@@ -6,28 +6,184 @@ import java.awt.Color;
 import java.awt.FileDialog;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import javax.swing.JComboBox;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.text.DateFormat;
+import java.util.Date;
 
 // Main controller class that connects the GUI with the machine learning model
 public class Main {
-    // Static instances of our ML models
-    private static RandomForest rf;
-    private static FeedbackAnalyzer fa;
-    
-    // List of features our model expects
-    private static final String[] EXPECTED_FEATURES = {
-        "Hours Studied", "Attendance", "Parental Involvement", "Access to Resources",
-        "Extracurricular Activities", "Sleep Hours", "Previous Scores", "Motivation Level",
-        "Internet Access", "Tutoring Sessions", "Family Income", "Teacher Quality",
-        "School Type", "Peer Influence", "Physical Activity", "Learning Disabilities",
-        "Parental Education", "Distance from Home", "Gender"
-    };
+    // Static instances of our ML models; set on the event thread, read by the listeners
+    private static volatile RandomForest rf;
+    private static volatile CompactForest servingModel; // Compressed copy of rf used for predictions
+    private static volatile RegressionForest scoreModel; // Predicts the exam score shown next to Pass/Fail
+    private static volatile FeedbackAnalyzer fa;
+    private static volatile DriftMonitor drift; // Training histograms the prediction inputs are compared with
+    private static volatile String driftWarning; // Shown with the feedback while recent inputs look drifted, else null
+    private static MainView view; // Created on the event thread
+
+    // Columns our model expects
+    private static final FeatureSchema SCHEMA = FeatureSchema.STUDENT;
+
+    // Caches for repeated predictions; entries are dropped whenever the model changes
+    private static final PredictionCache<Integer> predictionCache = new PredictionCache<>(4096, SCHEMA);
+    private static final PredictionCache<List<String>> suggestionCache = new PredictionCache<>(4096, SCHEMA);
+
+    private static final double MAX_BAD_FRACTION = 0.05; // Empty or invalid cells in a column before an upload warns
+    private static final int DRIFT_MIN_INPUTS = 100; // Predictions recorded before drift is judged; PSI over fewer is mostly noise
+    private static final int DRIFT_CHECK_INTERVAL = 10; // Predictions between checks for drift
     
     public static void main(String[] args) {
+        // Scoring a feed from the command line with a saved model, without retraining:
+        // --score <model file, or - for the latest saved model> <snapshot dir, or - for stdin> [output file]
+        if (args.length >= 3 && args[0].equals("--score")) {
+            try {
+                runPipeline(args);
+            } catch (Exception e) {
+                System.err.println("Scoring failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        // Build steps of the cds profile: the bundled model, then a run recording the classes startup loads
+        if (args.length >= 3 && args[0].equals("--build-model")) {
+            try {
+                buildModel(args[1], new File(args[2]));
+            } catch (Exception e) {
+                System.err.println("Building the model failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        // Data-quality report of a file, without training on it: --profile <csv>
+        if (args.length >= 2 && args[0].equals("--profile")) {
+            try {
+                DataLoader.LoadResult loadRes = DataLoader.loadData(args[1]);
+                System.out.print(loadRes.profile == null ? "Empty file\n" : loadRes.profile.toString());
+            } catch (Exception e) {
+                System.err.println("Profiling failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--warmup")) {
+            warmup();
+            return;
+        }
+
+        // Show the window first; the saved model is read meanwhile so Predict works without an upload
+        SwingUtilities.invokeLater(Main::showWindow);
+        Thread loader = new Thread(Main::loadSavedModel, "model-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // Reads the latest saved model off the event thread and installs it unless an upload got there first
+    private static void loadSavedModel() {
+        SavedModel saved = SavedModel.loadLatest(SCHEMA);
+        if (saved == null) return;
+        SwingUtilities.invokeLater(() -> {
+            if (rf != null) return;
+            install(saved);
+            view.setFileStatus("Ready with the model saved " + DateFormat.getDateTimeInstance().format(new Date(saved.savedAt))
+                + "\n" + saved.records + " records\nUpload a CSV file to retrain", true);
+        });
+    }
+
+    private static void install(SavedModel model) {
+        servingModel = model.serving;
+        scoreModel = model.scoreModel;
+        fa = model.analyzer;
+        drift = model.drift;
+        driftWarning = null;
+        rf = model.forest;
+    }
+
+    // Counts a prediction input and, once enough have been seen, every DRIFT_CHECK_INTERVAL inputs
+    // checks whether they still look like the training data. Returns the warning to show with the
+    // feedback while one feature has moved too far, or null.
+    private static String recordInput(double[] input) {
+        DriftMonitor monitor = drift;
+        if (monitor == null) return null;
+        monitor.record(input);
+        long n = monitor.getRecorded();
+        if (n >= DRIFT_MIN_INPUTS && n % DRIFT_CHECK_INTERVAL == 0) {
+            DriftMonitor.FeatureDrift worst = monitor.report().get(0);
+            driftWarning = worst.psi < DriftMonitor.PSI_ALERT ? null
+                : "Note: Recent inputs differ from the training data (" + worst + "), so predictions may be "
+                    + "less reliable. Upload current data to retrain.";
+        }
+        return driftWarning;
+    }
+
+    // Features whose scored rows have moved away from the training data, to stderr
+    private static void reportDrift(DriftMonitor monitor) {
+        for (DriftMonitor.FeatureDrift d : monitor.report()) {
+            if (d.psi >= DriftMonitor.PSI_WATCH) System.err.println("Drift in " + d);
+        }
+    }
+
+    // Saves the freshly trained models in the background for the next launch
+    private static void saveInBackground(SavedModel model) {
+        Thread t = new Thread(() -> {
+            try {
+                model.save(SavedModel.defaultFile());
+            } catch (IOException e) {
+                System.err.println("Could not save the model: " + e.getMessage());
+            }
+        }, "model-saver");
+        t.start();
+    }
+
+    // Trains the models the app starts with on the given CSV and writes them to out
+    private static void buildModel(String csv, File out) throws IOException {
+        DataLoader.LoadResult loadRes = DataLoader.loadData(csv);
+        int nf = SCHEMA.size();
+        if (loadRes.data.isEmpty() || !SCHEMA.sameColumns(loadRes.schema)) {
+            throw new IllegalArgumentException(csv + " must contain the " + nf + " student features in the order "
+                + String.join(", ", SCHEMA.getNames()));
+        }
+        RandomForest forest = new RandomForest(100, (int) Math.sqrt(nf), nf);
+        forest.train(loadRes.data);
+        RegressionForest scores = new RegressionForest(50, 0, nf);
+        scores.train(loadRes.data);
+        Dataset ds = new Dataset(loadRes.data);
+        new SavedModel(forest, forest.compact(), scores, new FeedbackAnalyzer(loadRes.data, SCHEMA),
+            new DriftMonitor(SCHEMA, ds, ds.allRows()), loadRes.fillValues, loadRes.data.size()).save(out);
+    }
+
+    // What a launch followed by one prediction does, minus the window itself (the build runs headless)
+    private static void warmup() {
+        SavedModel saved = SavedModel.loadBundled(SCHEMA);
+        if (saved == null) {
+            System.err.println("No bundled model to warm up with");
+            return;
+        }
+        install(saved);
+        double[] input = new double[SCHEMA.size()];
+        String res = servingModel.predict(input) == 1 ? "Pass" : "Fail";
+        String text = String.format("%s (predicted score: %.0f)", res, scoreModel.predictScore(input));
+        text += String.join("\n", fa.getSuggestions(input, res, rf));
+        new JPanel().add(new JTextField());
+        new JComboBox<>(new String[]{"Low", "Medium", "High"});
+        new JTextArea(text);
+    }
+
+    // Builds the window and wires its buttons to the models
+    private static void showWindow() {
         // Try to set system look and feel
         try {
             System.setProperty("apple.awt.fileDialogForDirectories", "false");
@@ -37,7 +193,7 @@ public class Main {
         }
 
         // Create the main window
-        MainView view = new MainView();
+        view = new MainView();
 
         // Setup file upload button action
         view.addUploadButtonListener(e -> {
@@ -63,13 +219,14 @@ public class Main {
                         return;
                     }
 
-                    // Check if file has correct number of features
-                    if (data.get(0).getNumFeatures() != EXPECTED_FEATURES.length) {
+                    // Check that the file has the model's features, by name and in order
+                    if (!SCHEMA.sameColumns(loadRes.schema)) {
                         JOptionPane.showMessageDialog(view.frame,
-                            "Error: The CSV file must contain exactly " + EXPECTED_FEATURES.length + " features.",
+                            "Error: The CSV file must contain exactly these " + SCHEMA.size()
+                                + " features, in this order:\n" + String.join(", ", SCHEMA.getNames()),
                             "Invalid Data Format",
                             JOptionPane.ERROR_MESSAGE);
-                        view.setFileStatus("Error: Incorrect number of features", false);
+                        view.setFileStatus("Error: Features do not match the model", false);
                         return;
                     }
 
@@ -83,6 +240,18 @@ public class Main {
                         return;
                     }
 
+                    // Let the user stop before training on an extract with many bad cells
+                    List<String> problems = loadRes.profile.getProblems(MAX_BAD_FRACTION);
+                    if (!problems.isEmpty() && JOptionPane.showConfirmDialog(view.frame,
+                            "Data quality problems found:\n" + String.join("\n", problems)
+                                + "\n\nTrain on this file anyway?",
+                            "Data Quality",
+                            JOptionPane.YES_NO_OPTION,
+                            JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+                        view.setFileStatus("Upload cancelled: data quality problems", false);
+                        return;
+                    }
+
                     // Split data into training and testing sets
                     Collections.shuffle(data);
                     int split = (int)(data.size() * 0.8);
@@ -92,17 +261,37 @@ public class Main {
                     // Train the random forest model
                     int nf = trainData.get(0).getNumFeatures();
                     int mf = (int)Math.sqrt(nf);
-                    rf = new RandomForest(100, mf, nf);
-                    rf.train(trainData);
+                    RandomForest trained = new RandomForest(100, mf, nf);
+                    TrainingReport report = trained.train(trainData);
+                    if (report.getTreesKept() == 0) {
+                        // An empty forest would answer Pass for everyone; keep the current model instead
+                        JOptionPane.showMessageDialog(view.frame,
+                            "Error: The training time limit was reached before any tree was grown.",
+                            "Training Failed",
+                            JOptionPane.ERROR_MESSAGE);
+                        view.setFileStatus("Error: No trees trained within the time limit", false);
+                        return;
+                    }
+                    servingModel = trained.compact();
+                    rf = trained;
+                    RegressionForest scores = new RegressionForest(50, 0, nf);
+                    scores.train(trainData);
+                    scoreModel = scores;
 
                     // Setup feedback analyzer
-                    fa = new FeedbackAnalyzer(data);
+                    fa = new FeedbackAnalyzer(data, SCHEMA);
+                    Dataset trainSet = new Dataset(trainData);
+                    drift = new DriftMonitor(SCHEMA, trainSet, trainSet.allRows());
+                    driftWarning = null;
+                    saveInBackground(new SavedModel(rf, servingModel, scoreModel, fa, drift, loadRes.fillValues, data.size()));
 
                     // Calculate and display accuracy
                     int accuracy = (int)Math.round(rf.evaluate(testData) * 100);
+                    Dataset testSet = new Dataset(testData);
+                    double scoreError = scoreModel.meanAbsoluteError(testSet, testSet.allRows());
                     StringBuilder statusMsg = new StringBuilder(String.format(
-                        "Model trained (Accuracy: %d%%)\n%d records processed", 
-                        accuracy, data.size()
+                        "Model trained (Accuracy: %d%%, scores within %.1f points on average)\n%d records processed", 
+                        accuracy, scoreError, data.size()
                     ));
                     
                     // Add info about skipped/imputed rows
@@ -117,6 +306,13 @@ public class Main {
                         }
                     }
                     
+                    // Warn if the time limit left the forest smaller than requested
+                    if (!report.isComplete()) {
+                        statusMsg.append("\nTraining time limit reached: ")
+                            .append(report.getTreesKept()).append(" of ").append(report.getTreesRequested())
+                            .append(" trees used");
+                    }
+                    
                     view.setFileStatus(statusMsg.toString(), true);
                     
                 } catch (Exception ex) {
@@ -146,12 +342,19 @@ public class Main {
         view.addPredictButtonListener(e -> {
             try {
                 double[] input = view.getPredictionInput();
-                int pred = rf.predict(input);
+                RandomForest model = rf;
+                CompactForest serving = servingModel;
+                FeedbackAnalyzer analyzer = fa;
+                int pred = predictionCache.get(serving, input, serving::predict);
+                String warning = recordInput(input);
                 String res = pred == 1 ? "Pass" : "Fail";
-                view.setPredictionResult(res);
-                List<String> sugs = fa.getSuggestions(input, res);
+                view.setPredictionResult(String.format("%s (predicted score: %.0f)", res, scoreModel.predictScore(input)));
+                // Cached lists are shared by every caller, so keep an unmodifiable copy
+                List<String> sugs = suggestionCache.get(analyzer, input,
+                    in -> List.copyOf(analyzer.getSuggestions(in, res, model)));
                 StringBuilder sb = new StringBuilder();
                 for (String s : sugs) sb.append(s).append("\n");
+                if (warning != null) sb.append("\n").append(warning).append("\n");
                 view.setFeedbackText(sb.toString());
                 view.showCard("Feedback");
             } catch(NumberFormatException ex) {
@@ -196,4 +399,39 @@ public class Main {
             }
         });
     }
-}
\ No newline at end of file
+
+    // Loads the given saved model (the latest one for -), then scores the rows of stdin until it
+    // ends, or of every CSV file dropped into the snapshot directory until the process is stopped.
+    // Results are appended to the output file (stdout if none); stage throughput goes to stderr at the end.
+    private static void runPipeline(String[] args) throws IOException, InterruptedException {
+        SavedModel saved = args[1].equals("-") ? SavedModel.loadLatest(SCHEMA) : SavedModel.load(new File(args[1]), SCHEMA);
+        if (saved == null) {
+            throw new IllegalStateException("No saved model; upload data in the app or run --build-model first");
+        }
+        Writer out = new BufferedWriter(args.length > 3 ? new FileWriter(args[3], true)
+            : new OutputStreamWriter(System.out));
+        ScoringPipeline pipeline = new ScoringPipeline(saved.serving, ScoreBands.PASS_FAIL, SCHEMA, saved.fillValues, out);
+        DriftMonitor monitor = saved.drift;
+        pipeline.setDriftMonitor(monitor);
+        if (args[2].equals("-")) {
+            pipeline.score(new InputStreamReader(System.in), "stdin");
+            pipeline.close();
+            out.close();
+            System.err.println(pipeline);
+            reportDrift(monitor);
+            return;
+        }
+        // Watching only ends with the process: drain what was parsed and report on the way out
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                pipeline.close();
+                out.close();
+            } catch (Exception e) {
+                System.err.println("Scoring pipeline stopped: " + e.getMessage());
+            }
+            System.err.println(pipeline);
+            reportDrift(monitor);
+        }));
+        pipeline.watch(Paths.get(args[2]));
+    }
+}
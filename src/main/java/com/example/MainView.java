@@ -22,10 +22,9 @@ public class MainView {
     JLabel fileStatusLabel;
     private JButton proceedButton;
 
-    // Prediction screen components
-    private JTextField hoursStudied, attendance, sleepHours, previousScores, tutoringSessions, physicalActivity;
-    private JComboBox<String> parentalInvolvement, accessToResources, extracurricularActivities, motivationLevel, internetAccess;
-    private JComboBox<String> familyIncome, teacherQuality, schoolType, peerInfluence, learningDisabilities, parentalEducation, distanceFromHome, gender;
+    // Prediction screen components, one input per schema feature
+    private final FeatureSchema schema = FeatureSchema.STUDENT;
+    private JComponent[] inputs; // JTextField for numeric features, JComboBox for categorical ones
     private JButton predictButton;
     private JLabel predictionResultLabel;
 
@@ -152,81 +151,32 @@ public class MainView {
 
 // Creates the prediction input screen
 private void createPredictionPanel() {
-    predictionPanel = new JPanel(new GridLayout(22, 2, 10, 10));
+    predictionPanel = new JPanel(new GridLayout(schema.size() + 3, 2, 10, 10));
     predictionPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-    // Create text fields for numeric inputs
-    hoursStudied = new JTextField();
-    hoursStudied.setPreferredSize(new Dimension(300, 40));
-    attendance = new JTextField();
-    attendance.setPreferredSize(new Dimension(300, 40));
-    sleepHours = new JTextField();
-    sleepHours.setPreferredSize(new Dimension(300, 40));
-    previousScores = new JTextField();
-    previousScores.setPreferredSize(new Dimension(300, 40));
-    tutoringSessions = new JTextField();
-    tutoringSessions.setPreferredSize(new Dimension(300, 40));
-    physicalActivity = new JTextField();
-    physicalActivity.setPreferredSize(new Dimension(300, 40));
-
-    // Create dropdown menus for categorical inputs
-    parentalInvolvement = new JComboBox<>(new String[]{"High", "Medium", "Low"});
-    accessToResources = new JComboBox<>(new String[]{"High", "Medium", "Low"});
-    extracurricularActivities = new JComboBox<>(new String[]{"Yes", "No"});
-    motivationLevel = new JComboBox<>(new String[]{"High", "Medium", "Low"});
-    internetAccess = new JComboBox<>(new String[]{"Yes", "No"});
-    familyIncome = new JComboBox<>(new String[]{"High", "Medium", "Low"});
-    teacherQuality = new JComboBox<>(new String[]{"High", "Medium", "Low"});
-    schoolType = new JComboBox<>(new String[]{"Public", "Private"});
-    peerInfluence = new JComboBox<>(new String[]{"Positive", "Neutral", "Negative"});
-    learningDisabilities = new JComboBox<>(new String[]{"Yes", "No"});
-    parentalEducation = new JComboBox<>(new String[]{"High School", "College", "Postgraduate"});
-    distanceFromHome = new JComboBox<>(new String[]{"Near", "Moderate", "Far"});
-    gender = new JComboBox<>(new String[]{"Male", "Female"});
+    // Create a text field for each numeric input and a dropdown menu for each categorical one.
+    // Dropdowns list categories in code order, so the selection maps to the same code as in the CSV.
+    inputs = new JComponent[schema.size()];
+    for (int i = 0; i < inputs.length; i++) {
+        FeatureSchema.Feature f = schema.get(i);
+        if (f.isCategorical()) {
+            inputs[i] = new JComboBox<>(f.getCategories());
+        } else {
+            JTextField field = new JTextField();
+            field.setPreferredSize(new Dimension(300, 40));
+            inputs[i] = field;
+        }
+    }
 
     predictButton = new JButton("Predict");
     predictionResultLabel = new JLabel("Result: ");
     predictionResultLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
 
     // Add all components to the panel
-    predictionPanel.add(new JLabel("Hours Studied per week:"));
-    predictionPanel.add(hoursStudied);
-    predictionPanel.add(new JLabel("Percentage of class attended:"));
-    predictionPanel.add(attendance);
-    predictionPanel.add(new JLabel("Parental Involvement:"));
-    predictionPanel.add(parentalInvolvement);
-    predictionPanel.add(new JLabel("Access to Resources:"));
-    predictionPanel.add(accessToResources);
-    predictionPanel.add(new JLabel("Extracurricular Activities:"));
-    predictionPanel.add(extracurricularActivities);
-    predictionPanel.add(new JLabel("Sleep Hours per night:"));
-    predictionPanel.add(sleepHours);
-    predictionPanel.add(new JLabel("Previous Exam Score:"));
-    predictionPanel.add(previousScores);
-    predictionPanel.add(new JLabel("Motivation Level:"));
-    predictionPanel.add(motivationLevel);
-    predictionPanel.add(new JLabel("Internet Access:"));
-    predictionPanel.add(internetAccess);
-    predictionPanel.add(new JLabel("Tutoring Sessions per month:"));
-    predictionPanel.add(tutoringSessions);
-    predictionPanel.add(new JLabel("Family Income:"));
-    predictionPanel.add(familyIncome);
-    predictionPanel.add(new JLabel("Teacher Quality:"));
-    predictionPanel.add(teacherQuality);
-    predictionPanel.add(new JLabel("School Type:"));
-    predictionPanel.add(schoolType);
-    predictionPanel.add(new JLabel("Peer Influence:"));
-    predictionPanel.add(peerInfluence);
-    predictionPanel.add(new JLabel("Hours of Physical Activity Per Week:"));
-    predictionPanel.add(physicalActivity);
-    predictionPanel.add(new JLabel("Learning Disabilities:"));
-    predictionPanel.add(learningDisabilities);
-    predictionPanel.add(new JLabel("Parental Education:"));
-    predictionPanel.add(parentalEducation);
-    predictionPanel.add(new JLabel("Distance from Home:"));
-    predictionPanel.add(distanceFromHome);
-    predictionPanel.add(new JLabel("Gender:"));
-    predictionPanel.add(gender);
+    for (int i = 0; i < inputs.length; i++) {
+        predictionPanel.add(new JLabel(schema.get(i).uiLabel));
+        predictionPanel.add(inputs[i]);
+    }
 
     predictionPanel.add(predictButton);
     predictionPanel.add(predictionResultLabel);
@@ -301,26 +251,14 @@ public void addExportButtonListener(ActionListener listener) {
 
 // Collects all prediction inputs and converts to array
 public double[] getPredictionInput() throws NumberFormatException {
-    double[] input = new double[19];
-    input[0] = Double.parseDouble(hoursStudied.getText());
-    input[1] = Double.parseDouble(attendance.getText());
-    input[2] = parentalInvolvement.getSelectedIndex();
-    input[3] = accessToResources.getSelectedIndex();
-    input[4] = extracurricularActivities.getSelectedIndex();
-    input[5] = Double.parseDouble(sleepHours.getText());
-    input[6] = Double.parseDouble(previousScores.getText());
-    input[7] = motivationLevel.getSelectedIndex();
-    input[8] = internetAccess.getSelectedIndex();
-    input[9] = Double.parseDouble(tutoringSessions.getText());
-    input[10] = familyIncome.getSelectedIndex();
-    input[11] = teacherQuality.getSelectedIndex();
-    input[12] = schoolType.getSelectedIndex();
-    input[13] = peerInfluence.getSelectedIndex();
-    input[14] = Double.parseDouble(physicalActivity.getText());
-    input[15] = learningDisabilities.getSelectedIndex();
-    input[16] = parentalEducation.getSelectedIndex();
-    input[17] = distanceFromHome.getSelectedIndex();
-    input[18] = gender.getSelectedIndex();
+    double[] input = new double[inputs.length];
+    for (int i = 0; i < inputs.length; i++) {
+        if (inputs[i] instanceof JComboBox) {
+            input[i] = schema.get(i).encode((String) ((JComboBox<?>) inputs[i]).getSelectedItem());
+        } else {
+            input[i] = Double.parseDouble(((JTextField) inputs[i]).getText());
+        }
+    }
     return input;
 }
 
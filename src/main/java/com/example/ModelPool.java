@@ -0,0 +1,250 @@
+package com.example;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One forest per segment of the data (a school, a school type, a cohort...), keyed by the value
+// of a segment column. Every trained model is written to a directory as a CompactForest; only the
+// most recently used ones stay in memory, within a byte budget, and the others are read back on
+// their next prediction. Models left in the directory by an earlier run are found on construction
+// and loaded the same lazy way.
+public class ModelPool {
+    public static final int MIN_SEGMENT_ROWS = 20; // Smaller segments are not given a model
+
+    private static final String SUFFIX = ".forest";
+
+    private final FeatureSchema schema;
+    private final int segmentFeature;
+    private final File dir;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Entry> resident = new HashSet<>(); // Entries holding their model; guarded by this
+    private long residentBytes; // guarded by this
+    private volatile long memoryBudget = 64L << 20; // Bytes of models kept in memory
+    private volatile int maxConcurrentTraining = 2; // Segments trained at the same time
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ModelPool(FeatureSchema schema, String segmentColumn, File dir) throws IOException {
+        this.schema = schema;
+        this.segmentFeature = schema.indexOf(segmentColumn);
+        if (segmentFeature < 0) throw new IllegalArgumentException("Unknown segment column: " + segmentColumn);
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create model directory " + dir);
+        File[] saved = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        for (File f : saved) {
+            String name = f.getName();
+            entries.put(URLDecoder.decode(name.substring(0, name.length() - SUFFIX.length()),
+                StandardCharsets.UTF_8), new Entry(f));
+        }
+    }
+
+    // Bytes of compact models kept in memory; least recently used models beyond it are dropped
+    public void setMemoryBudget(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Memory budget must not be negative");
+        memoryBudget = bytes;
+        synchronized (this) {
+            evictOverBudget(null);
+        }
+    }
+
+    // How many segments train at once; their trees all share the forests' executor
+    public void setMaxConcurrentTraining(int segments) {
+        if (segments < 1) throw new IllegalArgumentException("At least one segment must train at a time");
+        maxConcurrentTraining = segments;
+    }
+
+    // Trains one forest per segment found in the given rows and replaces those segments' models.
+    // Segments with fewer than MIN_SEGMENT_ROWS rows or a single class are skipped. A segment whose
+    // forest kept no tree within the time limit keeps its previous model (or stays without one),
+    // since an empty forest would give every input the same class.
+    // Returns the report of each segment trained, by segment.
+    public Map<String, TrainingReport> train(FeatureMatrix data, int[] rows, TrainingParams params)
+            throws IOException, InterruptedException {
+        Map<String, TrainingReport> reports = new ConcurrentHashMap<>();
+        try (TaskScope scope = new TaskScope(Executors.newFixedThreadPool(maxConcurrentTraining), true)) {
+            for (Map.Entry<String, int[]> s : segmentRows(data, rows).entrySet()) {
+                if (!isTrainable(data, s.getValue())) continue;
+                scope.fork(() -> {
+                    RandomForest rf = new RandomForest(params, data.getNumFeatures());
+                    TrainingReport report = rf.train(data, s.getValue());
+                    reports.put(s.getKey(), report);
+                    if (report.getTreesKept() == 0) return;
+                    try {
+                        install(s.getKey(), rf.compact());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            scope.join();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IllegalStateException("Segment training failed", e.getCause());
+        }
+        return new TreeMap<>(reports);
+    }
+
+    // Predicts with the model of the segment the input belongs to
+    public int predict(double[] feats) {
+        return predict(segmentOf(feats[segmentFeature]), feats);
+    }
+
+    public int predict(String segment, double[] feats) {
+        return acquire(segment).predict(feats);
+    }
+
+    // Segment key of a value of the segment column: the category name, or the number itself
+    public String segmentOf(double value) {
+        FeatureSchema.Feature f = schema.get(segmentFeature);
+        if (f.isCategorical()) return f.getCategory(value);
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    public SortedSet<String> getSegments() {
+        return new TreeSet<>(entries.keySet());
+    }
+
+    public boolean isResident(String segment) {
+        Entry e = entries.get(segment);
+        return e != null && e.model != null;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    // Models read back from disk so far
+    public long getLoads() {
+        return loads.get();
+    }
+
+    // Models dropped from memory so far
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // Drops every model not used for the given time; returns how many were dropped
+    public synchronized int evictIdle(long idleMillis) {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        List<Entry> idle = new ArrayList<>();
+        for (Entry e : resident) {
+            if (e.lastUsed - cutoff <= 0) idle.add(e);
+        }
+        for (Entry e : idle) drop(e);
+        return idle.size();
+    }
+
+    // Returns the segment's model, reading it from disk if it is not in memory
+    private CompactForest acquire(String segment) {
+        Entry e = entries.get(segment);
+        if (e == null) throw new IllegalArgumentException("No model for segment " + segment);
+        e.lastUsed = System.nanoTime();
+        CompactForest model = e.model;
+        if (model != null) return model;
+        synchronized (e) { // One thread reads the file while the others wait for it
+            model = e.model;
+            if (model == null) {
+                model = readModel(e.file);
+                loads.incrementAndGet();
+                makeResident(segment, e, model);
+            }
+        }
+        return model;
+    }
+
+    // Writes a newly trained model to disk and makes it the segment's resident model
+    private void install(String segment, CompactForest model) throws IOException {
+        File file = new File(dir, URLEncoder.encode(segment, StandardCharsets.UTF_8) + SUFFIX);
+        File tmp = File.createTempFile("segment", ".tmp", dir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            model.writeTo(out);
+        }
+        // Readers of the previous model's file see either the old or the new file, never half of one
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Entry e = new Entry(file);
+        e.lastUsed = System.nanoTime();
+        synchronized (this) {
+            Entry old = entries.put(segment, e);
+            if (old != null && resident.contains(old)) drop(old);
+            makeResident(segment, e, model);
+        }
+    }
+
+    private synchronized void makeResident(String segment, Entry e, CompactForest model) {
+        if (entries.get(segment) != e) return; // Retrained meanwhile; the caller still gets this model
+        e.model = model;
+        e.bytes = model.getSizeReport().compactBytes;
+        resident.add(e);
+        residentBytes += e.bytes;
+        evictOverBudget(e);
+    }
+
+    // Drops least recently used models until the resident ones fit the budget, except keep
+    private void evictOverBudget(Entry keep) {
+        while (residentBytes > memoryBudget) {
+            Entry lru = null;
+            for (Entry e : resident) {
+                if (e != keep && (lru == null || e.lastUsed - lru.lastUsed < 0)) lru = e;
+            }
+            if (lru == null) return;
+            drop(lru);
+        }
+    }
+
+    private void drop(Entry e) {
+        resident.remove(e);
+        residentBytes -= e.bytes;
+        e.model = null;
+        evictions.incrementAndGet();
+    }
+
+    private static CompactForest readModel(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return CompactForest.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load model " + file, e);
+        }
+    }
+
+    // Rows of each segment, in segment order
+    private Map<String, int[]> segmentRows(FeatureMatrix data, int[] rows) {
+        Map<String, List<Integer>> groups = new TreeMap<>();
+        for (int r : rows) {
+            groups.computeIfAbsent(segmentOf(data.getFeature(r, segmentFeature)), k -> new ArrayList<>()).add(r);
+        }
+        Map<String, int[]> out = new TreeMap<>();
+        for (Map.Entry<String, List<Integer>> g : groups.entrySet()) {
+            out.put(g.getKey(), g.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return out;
+    }
+
+    // Enough rows, and more than one class to tell apart
+    private static boolean isTrainable(FeatureMatrix data, int[] rows) {
+        if (rows.length < MIN_SEGMENT_ROWS) return false;
+        int first = data.getLabel(rows[0]);
+        for (int r : rows) {
+            if (data.getLabel(r) != first) return true;
+        }
+        return false;
+    }
+
+    // A segment's model file and, while it is resident, the model itself
+    private static class Entry {
+        final File file;
+        volatile CompactForest model; // null while the model is only on disk
+        volatile long lastUsed; // System.nanoTime() of the last prediction
+        long bytes; // Size of the resident model; guarded by the pool
+
+        Entry(File file) {
+            this.file = file;
+        }
+    }
+}
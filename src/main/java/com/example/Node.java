@@ -5,17 +5,25 @@ import java.util.Map;
 
 // This class stores a single record (features + label).
 // Features are stored in a map from index to value.
-// Label is 0 or 1.
+// Label is 0 (Fail) or 1 (Pass), or a score band (see ScoreBands);
+// score is the exam score the label was derived from, or NaN when there is none.
 public class Node {
     private Map<Integer, Double> features;
     private int label;
+    private double score;
 
+    // Records without a score have no regression target
     public Node(double[] featArr, int label) {
+        this(featArr, label, Double.NaN);
+    }
+
+    public Node(double[] featArr, int label, double score) {
         features = new HashMap<>();
         for (int i = 0; i < featArr.length; i++) {
             features.put(i, featArr[i]);
         }
         this.label = label;
+        this.score = score;
     }
 
     public double getFeature(int idx) {
@@ -26,6 +34,14 @@ public class Node {
         return label;
     }
 
+    public double getScore() {
+        return score;
+    }
+
+    public boolean hasScore() {
+        return !Double.isNaN(score);
+    }
+
     public int getNumFeatures() {
         return features.size();
     }
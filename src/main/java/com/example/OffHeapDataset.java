@@ -0,0 +1,220 @@
+package com.example;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// Training rows stored outside the Java heap, either in direct buffers or in a memory-mapped file.
+// Rows are fixed-size records (features, label, then regression target, all as little-endian
+// doubles), split into segments because a single ByteBuffer cannot address more than 2 GB.
+public class OffHeapDataset implements FeatureMatrix {
+    private static final int MAGIC = 0x53504D54; // File tag (rows with targets)
+    private static final int HEADER_BYTES = 16; // magic (int), numFeatures (int), numRows (long)
+
+    private final ByteBuffer[] segments;
+    private final int rowsPerSegment;
+    private final int rowBytes;
+    private final int numFeatures;
+    private final int numRows;
+    private final int[] categoryCounts; // Per feature, computed on first use (-1 until then)
+    private volatile int numClasses = -1; // Computed on first use
+    private volatile int hasTargets = -1; // 1 if no row's target is NaN, computed on first use
+
+    private OffHeapDataset(ByteBuffer[] segments, int rowsPerSegment, int numFeatures, int numRows) {
+        this.segments = segments;
+        this.rowsPerSegment = rowsPerSegment;
+        this.rowBytes = rowBytes(numFeatures);
+        this.numFeatures = numFeatures;
+        this.numRows = numRows;
+        this.categoryCounts = new int[numFeatures];
+        Arrays.fill(categoryCounts, -1);
+    }
+
+    // Copies any dataset into direct (off-heap) memory; targets are copied when the source has them
+    public static OffHeapDataset copyOf(FeatureMatrix src) {
+        int nf = src.getNumFeatures();
+        int rowBytes = rowBytes(nf);
+        int perSeg = Integer.MAX_VALUE / rowBytes;
+        int n = src.size();
+        boolean withTargets = src.hasTargets();
+        ByteBuffer[] segs = new ByteBuffer[Math.max(1, (n + perSeg - 1) / perSeg)];
+        for (int s = 0; s < segs.length; s++) {
+            int rowsHere = Math.min(perSeg, n - s * perSeg);
+            segs[s] = ByteBuffer.allocateDirect(Math.max(0, rowsHere) * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        for (int r = 0; r < n; r++) {
+            ByteBuffer seg = segs[r / perSeg];
+            int off = (r % perSeg) * rowBytes;
+            for (int f = 0; f < nf; f++) {
+                seg.putDouble(off + f * 8, src.getFeature(r, f));
+            }
+            seg.putDouble(off + nf * 8, src.getLabel(r));
+            seg.putDouble(off + nf * 8 + 8, withTargets ? src.getTarget(r) : Double.NaN);
+        }
+        return new OffHeapDataset(segs, perSeg, nf, n);
+    }
+
+    // Maps a file written by Writer; only the pages actually read are brought into memory
+    public static OffHeapDataset map(Path file) throws IOException {
+        return map(file, 0);
+    }
+
+    // Same as map(Path), with a custom segment size (0 for the largest possible)
+    static OffHeapDataset map(Path file, int rowsPerSegment) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not an off-heap dataset file: " + file);
+            }
+            int nf = header.getInt();
+            long rows = header.getLong();
+            if (rows > Integer.MAX_VALUE) throw new IOException("Too many rows: " + rows);
+
+            int rowBytes = rowBytes(nf);
+            int perSeg = rowsPerSegment > 0 ? rowsPerSegment : Integer.MAX_VALUE / rowBytes;
+            int n = (int) rows;
+            ByteBuffer[] segs = new ByteBuffer[Math.max(1, (n + perSeg - 1) / perSeg)];
+            for (int s = 0; s < segs.length; s++) {
+                long rowsHere = Math.max(0, Math.min(perSeg, n - (long) s * perSeg));
+                long pos = HEADER_BYTES + (long) s * perSeg * rowBytes;
+                segs[s] = ch.map(FileChannel.MapMode.READ_ONLY, pos, rowsHere * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new OffHeapDataset(segs, perSeg, nf, n); // Mappings stay valid after the channel closes
+        }
+    }
+
+    // Starts a new dataset file; rows are streamed to disk so they never need to fit in the heap
+    public static Writer create(Path file, int numFeatures) throws IOException {
+        return new Writer(file, numFeatures);
+    }
+
+    private static int rowBytes(int numFeatures) {
+        return (numFeatures + 2) * 8;
+    }
+
+    @Override
+    public int size() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    @Override
+    public double getFeature(int row, int feature) {
+        return segments[row / rowsPerSegment].getDouble((row % rowsPerSegment) * rowBytes + feature * 8);
+    }
+
+    @Override
+    public int getLabel(int row) {
+        return (int) segments[row / rowsPerSegment].getDouble((row % rowsPerSegment) * rowBytes + numFeatures * 8);
+    }
+
+    @Override
+    public double getTarget(int row) {
+        double t = segments[row / rowsPerSegment].getDouble((row % rowsPerSegment) * rowBytes + numFeatures * 8 + 8);
+        if (Double.isNaN(t)) throw new UnsupportedOperationException("Row " + row + " has no regression target");
+        return t;
+    }
+
+    @Override
+    public boolean hasTargets() {
+        int h = hasTargets;
+        if (h < 0) {
+            h = 1;
+            for (int r = 0; r < numRows && h == 1; r++) {
+                double t = segments[r / rowsPerSegment].getDouble((r % rowsPerSegment) * rowBytes + numFeatures * 8 + 8);
+                if (Double.isNaN(t)) h = 0;
+            }
+            hasTargets = h;
+        }
+        return h == 1;
+    }
+
+    @Override
+    public int getNumClasses() {
+        int k = numClasses;
+        if (k < 0) {
+            k = FeatureMatrix.countClasses(this);
+            numClasses = k;
+        }
+        return k;
+    }
+
+    @Override
+    public int getCategoryCount(int feature) {
+        int k = categoryCounts[feature];
+        if (k < 0) { // Racing threads compute the same value, so no locking is needed
+            k = FeatureMatrix.countCategories(this, feature);
+            categoryCounts[feature] = k;
+        }
+        return k;
+    }
+
+    @Override
+    public void copyRow(int row, double[] out) {
+        ByteBuffer seg = segments[row / rowsPerSegment];
+        int off = (row % rowsPerSegment) * rowBytes;
+        for (int f = 0; f < numFeatures; f++) {
+            out[f] = seg.getDouble(off + f * 8);
+        }
+    }
+
+    // Appends rows to a dataset file; the row count in the header is filled in on close
+    public static class Writer implements Closeable {
+        private final FileChannel ch;
+        private final ByteBuffer buf;
+        private final int numFeatures;
+        private long rows;
+
+        private Writer(Path file, int numFeatures) throws IOException {
+            this.numFeatures = numFeatures;
+            this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            this.buf = ByteBuffer.allocate(Math.max(1 << 16, rowBytes(numFeatures))).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(numFeatures).putLong(0);
+        }
+
+        // Rows without a score store NaN as the target, which getTarget() rejects, as Node does
+        public void addRow(double[] feats, int label) throws IOException {
+            addRow(feats, label, Double.NaN);
+        }
+
+        public void addRow(double[] feats, int label, double target) throws IOException {
+            if (feats.length != numFeatures) {
+                throw new IllegalArgumentException("Expected " + numFeatures + " features, got " + feats.length);
+            }
+            if (buf.remaining() < rowBytes(numFeatures)) flush();
+            for (double v : feats) buf.putDouble(v);
+            buf.putDouble(label);
+            buf.putDouble(target);
+            rows++;
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                count.putLong(rows).flip();
+                while (count.hasRemaining()) ch.write(count, 8 + count.position());
+            } finally {
+                ch.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Bounded LRU cache for per-input results (predictions, suggestions).
+// Inputs are packed into a single long so lookups never hash a double[].
+// The cache remembers which model produced its entries and clears itself
+// as soon as it is asked about a different model.
+public class PredictionCache<V> {
+    static final long NO_KEY = -1L; // Returned when an input cannot be packed exactly
+
+    private static final int SEGMENTS = 16; // Number of independently locked LRU segments
+
+    private final long[] min; // Smallest value accepted for each feature, from the schema
+    private final long[] max; // Largest value accepted for each feature
+    private final int[] bits; // Bits reserved for each feature, enough for max - min
+    private final boolean packable; // False when the widths add up to more than a key holds
+    private final Segment<V>[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile Object model; // Model the cached entries belong to
+
+    public PredictionCache(int capacity) {
+        this(capacity, FeatureSchema.STUDENT);
+    }
+
+    // Keys are packed from the schema's ranges: category codes, or the integers in a numeric range
+    public PredictionCache(int capacity, FeatureSchema schema) {
+        int n = schema.size();
+        min = new long[n];
+        max = new long[n];
+        bits = new int[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            FeatureSchema.Feature f = schema.get(i);
+            min[i] = f.isCategorical() ? 0 : (long) Math.ceil(f.min);
+            max[i] = f.isCategorical() ? f.getCategoryCount() - 1 : (long) Math.floor(f.max);
+            bits[i] = max[i] > min[i] ? 64 - Long.numberOfLeadingZeros(max[i] - min[i]) : 0;
+            total += bits[i];
+        }
+        packable = total < 64; // Leaves the sign bit clear, so no key equals NO_KEY
+        int perSegment = Math.max(1, capacity / SEGMENTS);
+        segments = newSegments(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+    }
+
+    // Packs a feature vector into a long, or returns NO_KEY if any value is
+    // fractional or outside the schema's range (those inputs simply bypass the cache)
+    long encode(double[] feats) {
+        if (!packable || feats == null || feats.length != bits.length) return NO_KEY;
+        long key = 0;
+        for (int i = 0; i < feats.length; i++) {
+            double v = feats[i];
+            if (!(v >= min[i] && v <= max[i]) || v != Math.rint(v)) return NO_KEY;
+            key = (key << bits[i]) | ((long) v - min[i]);
+        }
+        return key;
+    }
+
+    // Returns the cached value for this model and input, computing it on a miss
+    public V get(Object owner, double[] feats, Function<double[], V> compute) {
+        if (model != owner) {
+            invalidate(owner);
+        }
+        long key = encode(feats);
+        if (key == NO_KEY) {
+            misses.incrementAndGet();
+            return compute.apply(feats);
+        }
+
+        Segment<V> seg = segments[segmentFor(key)];
+        V val;
+        synchronized (seg) {
+            val = seg.get(key);
+        }
+        if (val != null) {
+            hits.incrementAndGet();
+            return val;
+        }
+
+        misses.incrementAndGet();
+        val = compute.apply(feats);
+        if (model == owner) { // Don't store results from a model that was swapped out meanwhile
+            synchronized (seg) {
+                seg.put(key, val);
+            }
+        }
+        return val;
+    }
+
+    // Drops every entry and binds the cache to a new model
+    public synchronized void invalidate(Object newModel) {
+        if (model == newModel) return;
+        for (Segment<V> seg : segments) {
+            synchronized (seg) {
+                seg.clear();
+            }
+        }
+        model = newModel;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public int size() {
+        int total = 0;
+        for (Segment<V> seg : segments) {
+            synchronized (seg) {
+                total += seg.size();
+            }
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked") // Generic arrays cannot be created directly
+    private static <V> Segment<V>[] newSegments(int n) {
+        return (Segment<V>[]) new Segment<?>[n];
+    }
+
+    private static int segmentFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // Spread the packed bits before picking a segment
+        return (int) (h >>> 60) & (SEGMENTS - 1);
+    }
+
+    // Access-ordered LinkedHashMap that evicts its eldest entry once full
+    private static class Segment<V> extends LinkedHashMap<Long, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example;
+
+import java.util.*;
+
+// Approximate quantiles of a stream of values in bounded memory, mergeable across chunks.
+// Values go into a buffer of k; a full buffer is sorted and every other value moves up a level,
+// where it stands for twice as many values (the compactor scheme of KLL sketches, with one
+// capacity for every level). Memory is O(k log(n / k)) and a rank is off by O(log(n / k) / k)
+// of n at worst. A buffer is compacted as soon as it holds k values, so the quantiles are exact
+// for fewer than k values.
+class QuantileSketch {
+    private final int k;
+    private double[][] levels = new double[0][]; // Level h holds values of weight 2^h
+    private int[] sizes = new int[0];
+    private boolean[] oddNext = new boolean[0]; // Alternates which half a compaction keeps
+    private int numLevels;
+    private long count;
+
+    QuantileSketch(int k) {
+        if (k < 2) throw new IllegalArgumentException("Sketch capacity must be at least 2");
+        this.k = k;
+    }
+
+    void add(double v) {
+        count++;
+        insert(0, v);
+    }
+
+    // Adds the other sketch's values to this one; the other sketch is left as it was
+    void merge(QuantileSketch other) {
+        count += other.count;
+        for (int h = 0; h < other.numLevels; h++) {
+            double[] vals = other.levels[h];
+            for (int i = other.sizes[h] - 1; i >= 0; i--) insert(h, vals[i]);
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    // Value at the given fraction of the way through the sorted values, or NaN if there are none
+    double quantile(double q) {
+        int n = 0;
+        for (int h = 0; h < numLevels; h++) n += sizes[h];
+        if (n == 0) return Double.NaN;
+        double[] vals = new double[n];
+        long[] weights = new long[n];
+        Integer[] order = new Integer[n];
+        int i = 0;
+        for (int h = 0; h < numLevels; h++) {
+            for (int j = 0; j < sizes[h]; j++) {
+                vals[i] = levels[h][j];
+                weights[i] = 1L << h;
+                order[i] = i;
+                i++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(vals[a], vals[b]));
+        long total = 0;
+        for (long w : weights) total += w;
+        double target = Math.min(Math.max(q, 0), 1) * total;
+        long seen = 0;
+        for (int idx : order) {
+            seen += weights[idx];
+            if (seen >= target) return vals[idx];
+        }
+        return vals[order[n - 1]];
+    }
+
+    private void insert(int h, double v) {
+        if (h == numLevels) addLevel();
+        double[] vals = levels[h];
+        int size = sizes[h];
+        vals[size++] = v;
+        if (size < k) {
+            sizes[h] = size;
+            return;
+        }
+        // Full: keep every other sorted value, one level up
+        Arrays.sort(vals, 0, size);
+        boolean odd = oddNext[h];
+        oddNext[h] = !odd;
+        sizes[h] = 0;
+        for (int i = odd ? 1 : 0; i < size; i += 2) insert(h + 1, vals[i]);
+    }
+
+    private void addLevel() {
+        if (numLevels == levels.length) {
+            int cap = Math.max(4, numLevels * 2);
+            levels = Arrays.copyOf(levels, cap);
+            sizes = Arrays.copyOf(sizes, cap);
+            oddNext = Arrays.copyOf(oddNext, cap);
+        }
+        levels[numLevels++] = new double[k];
+    }
+}
@@ -1,93 +1,340 @@
 package com.example;
 
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
 
 public class RandomForest {
     List<DecisionTree> trees;
-    private int numTrees;
-    private int maxFeatures;
+    private final TrainingParams params;
+    private final TrainingParams treeParams; // params without the class balancing and weights, which the bootstrap applies
     private int numTotalFeatures;
-    private Random rand;
+    private volatile int numClasses = 2; // Taken from the training data
+    private volatile ThresholdIndex thresholdIndex; // Built after training for what-if sweeps
+    private volatile TreeExplainer[] explainers; // By target class, each built on first use
+    private TrainingExecutor executor = TrainingExecutor.SHARED;
+
+    private static final int SCORING_CHUNK = 2048; // Rows per batch-scoring task
+    private static final long GRACE_NANOS = TimeUnit.SECONDS.toNanos(1); // Wait past the deadline for trees to stop
 
     public RandomForest(int numTrees, int maxFeatures, int totalF) {
-        this.numTrees = numTrees;
-        this.maxFeatures = maxFeatures;
+        this(new TrainingParams(numTrees, maxFeatures), totalF);
+    }
+
+    public RandomForest(TrainingParams params, int totalF) {
+        this.params = params.copy();
+        this.treeParams = params.copy();
+        this.treeParams.balanceClasses = false; // Rebalancing the drawn sample would undo the class weights
+        this.treeParams.classWeights = null;
         this.numTotalFeatures = totalF;
         this.trees = Collections.synchronizedList(new ArrayList<>());
-        this.rand = new Random();
     }
 
-    public void train(List<Node> data) {
-        ExecutorService exec = Executors.newFixedThreadPool(
-            Math.min(Runtime.getRuntime().availableProcessors(), numTrees)
-        );
-        
-        CountDownLatch latch = new CountDownLatch(numTrees);
+    public TrainingReport train(List<Node> data) {
+        Dataset ds = new Dataset(data);
+        return train(ds, ds.allRows());
+    }
+
+    // Trains on the given rows of a shared dataset; the dataset itself is never copied.
+    // Training stops at params.timeLimitMillis: trees still growing are cut short, trees not yet
+    // started are skipped, and the report says how many trees of each kind there were.
+    // If a tree fails, the other trees are cancelled and an IllegalStateException is thrown.
+    public TrainingReport train(FeatureMatrix data, int[] rows) {
+        int numTrees = params.numTrees;
+        numClasses = data.getNumClasses();
+        long start = System.nanoTime();
+        TrainingReport report = new TrainingReport(numTrees);
+        long deadline = deadlineAfter(start, params.timeLimitMillis);
         
-        for (int i = 0; i < numTrees; i++) {
-            exec.execute(() -> {
-                try {
-                    List<Node> sample = bootstrapSample(data);
-                    DecisionTree dt = new DecisionTree(maxFeatures, numTotalFeatures);
-                    dt.train(sample);
-                    trees.add(dt);
-                } finally {
-                    latch.countDown();
+        try (TaskScope scope = executor.open(numTrees)) {
+            forkTrees(scope, data, rows, numTrees, deadline, report);
+            // Trees check the deadline themselves, so this normally returns soon after it
+            long wait = deadline == DecisionTree.NO_DEADLINE ? Long.MAX_VALUE : deadline - System.nanoTime() + GRACE_NANOS;
+            if (!scope.join(wait, TimeUnit.NANOSECONDS)) {
+                scope.cancel();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Closing the scope stopped the running trees
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tree training failed", e.getCause());
+        } finally {
+            report.finish(System.nanoTime() - start);
+            thresholdIndex = new ThresholdIndex(trees, numTotalFeatures);
+            explainers = null;
+        }
+        return report;
+    }
+
+    // Chooses where training and batch-scoring tasks run (TrainingExecutor.SHARED by default)
+    public void setExecutor(TrainingExecutor executor) {
+        this.executor = executor;
+    }
+
+    // Grows more trees on a caller-owned executor and waits for them.
+    // Used by searches that share one thread pool between many forests.
+    void addTrees(FeatureMatrix data, int[] rows, int count, ExecutorService exec) throws InterruptedException {
+        numClasses = data.getNumClasses();
+        try (TaskScope scope = TrainingExecutor.using(exec).open(count)) {
+            forkTrees(scope, data, rows, count, DecisionTree.NO_DEADLINE, new TrainingReport(count));
+            scope.join();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tree training failed", e.getCause());
+        }
+        thresholdIndex = null; // Rebuilt on next use
+        explainers = null;
+    }
+
+    // Forks one bootstrap-and-grow task per tree.
+    // Each tree stops at the earlier of the global deadline and its own per-tree budget.
+    private void forkTrees(TaskScope scope, FeatureMatrix data, int[] rows, int count,
+            long deadline, TrainingReport report) {
+        ClassSampler sampler = new ClassSampler(data, rows);
+        for (int i = 0; i < count; i++) {
+            scope.fork(() -> {
+                long start = System.nanoTime();
+                if (isPast(deadline, start) || Thread.currentThread().isInterrupted()) {
+                    report.cancelled(0);
+                    return;
+                }
+                int[] sample = sampler.draw(sampleSize(rows.length));
+                DecisionTree dt = new DecisionTree(treeParams, numTotalFeatures);
+                long treeDeadline = earlier(deadline, deadlineAfter(start, params.treeTimeLimitMillis));
+                boolean complete = dt.train(data, sample, treeDeadline);
+                long nanos = System.nanoTime() - start;
+                synchronized (report) {
+                    if (report.isFinished()) return; // train() already returned without this tree
+                    if (complete) {
+                        trees.add(dt);
+                        report.completed(nanos);
+                    } else if (dt.getLeafCount() > 1) {
+                        trees.add(dt); // A shallower tree still votes sensibly
+                        report.truncated(nanos);
+                    } else {
+                        report.cancelled(nanos); // A lone leaf would only add a fixed vote
+                    }
                 }
             });
         }
-        
-        exec.shutdown();
-        try {
-            // Wait for completion with timeout
-            if (!latch.await(5, TimeUnit.MINUTES)) {
-                exec.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            exec.shutdownNow();
-            Thread.currentThread().interrupt();
+    }
+
+    // Deadline the given number of milliseconds after now, or NO_DEADLINE for 0
+    private static long deadlineAfter(long now, long millis) {
+        return millis > 0 ? now + TimeUnit.MILLISECONDS.toNanos(millis) : DecisionTree.NO_DEADLINE;
+    }
+
+    private static long earlier(long a, long b) {
+        if (a == DecisionTree.NO_DEADLINE) return b;
+        if (b == DecisionTree.NO_DEADLINE) return a;
+        return a - b < 0 ? a : b;
+    }
+
+    private static boolean isPast(long deadline, long now) {
+        return deadline != DecisionTree.NO_DEADLINE && now - deadline >= 0;
+    }
+
+    public int getNumTrees() {
+        return trees.size();
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public int getNumFeatures() {
+        return numTotalFeatures;
+    }
+
+    public TrainingParams getParams() {
+        return params.copy();
+    }
+
+    // Compressed copy of the current trees for serving; predicts exactly like this forest
+    public CompactForest compact() {
+        return new CompactForest(new ArrayList<>(trees), numTotalFeatures);
+    }
+
+    // Writes the trees in the binary form read back by read()
+    public void writeTo(DataOutput out) throws IOException {
+        DecisionTree[] ts = trees.toArray(new DecisionTree[0]);
+        out.writeInt(numTotalFeatures);
+        out.writeInt(numClasses);
+        out.writeInt(ts.length);
+        for (DecisionTree t : ts) t.writeTo(out);
+    }
+
+    // Reads a forest written by writeTo(); its parameters are the defaults for that many trees
+    public static RandomForest read(DataInput in) throws IOException {
+        int totalF = in.readInt();
+        int classes = in.readInt();
+        int count = in.readInt();
+        if (totalF < 0 || classes < 2 || count < 0) throw new IOException("Corrupt forest header");
+        RandomForest rf = new RandomForest(new TrainingParams(count, 0), totalF);
+        rf.numClasses = classes;
+        for (int i = 0; i < count; i++) rf.trees.add(DecisionTree.read(in, totalF));
+        return rf;
+    }
+
+    // Per-feature split thresholds of the trained trees
+    public ThresholdIndex getThresholdIndex() {
+        ThresholdIndex idx = thresholdIndex;
+        if (idx == null) {
+            idx = new ThresholdIndex(trees, numTotalFeatures);
+            thresholdIndex = idx;
         }
+        return idx;
     }
 
-    private List<Node> bootstrapSample(List<Node> data) {
-        List<Node> samp = new ArrayList<>();
-        int N = Math.min(data.size(), 10000);
-        
-        // Count classes for balance
-        int positiveCount = 0;
-        for (Node n : data) {
-            if (n.getLabel() == 1) positiveCount++;
+    // SHAP explanations of the votes for the given class (Pass for Pass/Fail) by the trained trees
+    public TreeExplainer getExplainer(int targetClass) {
+        if (targetClass < 0 || targetClass >= numClasses) throw new IllegalArgumentException("No class " + targetClass);
+        TreeExplainer[] ex = explainers;
+        if (ex == null || ex.length != numClasses) {
+            ex = new TreeExplainer[numClasses];
+            explainers = ex;
         }
-        int negativeCount = data.size() - positiveCount;
-        
-        // Maintain rough class balance
-        int samplesPerClass = N / 2;
-        int currentPositive = 0, currentNegative = 0;
-        
-        while (samp.size() < N) {
-            int idx = rand.nextInt(data.size());
-            Node node = data.get(idx);
-            
-            if (node.getLabel() == 1 && currentPositive < samplesPerClass) {
-                samp.add(node);
-                currentPositive++;
-            } else if (node.getLabel() == 0 && currentNegative < samplesPerClass) {
-                samp.add(node);
-                currentNegative++;
+        TreeExplainer e = ex[targetClass];
+        if (e == null) {
+            e = new TreeExplainer(trees, numTotalFeatures, targetClass);
+            e.setExecutor(executor);
+            ex[targetClass] = e;
+        }
+        return e;
+    }
+
+    // Bootstrap size for the given number of training rows
+    private int sampleSize(int rows) {
+        return Math.min((int) Math.ceil(rows * params.sampleFraction), 10000);
+    }
+
+    // Draws bootstrap samples in which each class's share follows the class weights: equal shares
+    // for the classes present when balancing, times the extra weight of each class.
+    // Each class gets its whole quota of uniform draws from its own rows, and the few rows left by
+    // rounding the quotas down pick their class at random, so a sample costs O(N) however rare a
+    // class is. The rows are grouped by class once per training run.
+    private class ClassSampler {
+        final int[][] rowsByClass;
+        final double[] shares; // Fraction of a sample drawn from each class, summing to 1
+        final double[] cumulative; // Running sum of the shares
+
+        ClassSampler(FeatureMatrix data, int[] rows) {
+            int k = data.getNumClasses();
+            int[] counts = new int[k];
+            for (int r : rows) counts[data.getLabel(r)]++;
+            rowsByClass = new int[k][];
+            for (int c = 0; c < k; c++) rowsByClass[c] = new int[counts[c]];
+            int[] fill = new int[k];
+            for (int r : rows) {
+                int c = data.getLabel(r);
+                rowsByClass[c][fill[c]++] = r;
+            }
+
+            double[] extra = params.classWeights;
+            if (extra != null) {
+                for (double w : extra) {
+                    if (!(w >= 0) || Double.isInfinite(w)) {
+                        throw new IllegalArgumentException("Class weights must be finite and not negative: "
+                            + Arrays.toString(extra));
+                    }
+                }
+            }
+            shares = new double[k];
+            cumulative = new double[k];
+            double sum = 0;
+            for (int c = 0; c < k; c++) {
+                shares[c] = counts[c] == 0 ? 0 : params.balanceClasses ? 1 : counts[c];
+                if (extra != null && c < extra.length) shares[c] *= extra[c];
+                sum += shares[c];
+            }
+            if (!(sum > 0)) throw new IllegalArgumentException("Class weights leave no row to sample");
+            double run = 0;
+            for (int c = 0; c < k; c++) {
+                shares[c] /= sum;
+                run += shares[c];
+                cumulative[c] = run;
             }
         }
-        
-        return samp;
+
+        int[] draw(int n) {
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            int[] samp = new int[n];
+            int size = 0;
+            for (int c = 0; c < shares.length; c++) {
+                int[] pool = rowsByClass[c];
+                for (int q = (int) (n * shares[c]); q > 0; q--) samp[size++] = pool[rand.nextInt(pool.length)];
+            }
+            int last = cumulative.length - 1;
+            while (size < n) { // Fewer than K rows left over
+                double u = rand.nextDouble();
+                int c = 0;
+                while (c < last && u >= cumulative[c]) c++;
+                while (rowsByClass[c].length == 0) c--; // Rounding left u past the last class present
+                int[] pool = rowsByClass[c];
+                samp[size++] = pool[rand.nextInt(pool.length)];
+            }
+            return samp;
+        }
     }
 
+    // Majority vote; ties go to the higher class (Pass for Pass/Fail)
     public int predict(double[] feats) {
-        int[] votes = new int[2];
+        int[] votes = new int[numClasses];
         for (DecisionTree t : trees) {
             int p = t.predict(feats);
             votes[p]++;
         }
-        return votes[0] > votes[1] ? 0 : 1;
+        return argmax(votes, 0, votes.length);
+    }
+
+    // Index of the largest of v[from, from + k) relative to from, ties going to the higher index
+    private static int argmax(int[] v, int from, int k) {
+        int best = 0;
+        for (int c = 1; c < k; c++) {
+            if (v[from + c] >= v[from + best]) best = c;
+        }
+        return best;
+    }
+
+    // Predicts several inputs at once, walking the forest tree by tree.
+    // A row stops being evaluated as soon as the remaining trees can no longer change its majority.
+    public int[] predictBatch(double[][] batch) {
+        DecisionTree[] ts = trees.toArray(new DecisionTree[0]);
+        int n = batch.length;
+        int k = numClasses;
+        int[] votes = new int[n * k]; // [row * k + class]
+        int[] active = new int[n]; // Rows whose outcome is still open
+        for (int r = 0; r < n; r++) active[r] = r;
+        int numActive = n;
+
+        for (int t = 0; t < ts.length && numActive > 0; t++) {
+            int remaining = ts.length - t - 1;
+            int kept = 0;
+            for (int a = 0; a < numActive; a++) {
+                int r = active[a];
+                votes[r * k + ts[t].predict(batch[r])]++;
+                if (!isDecided(votes, r * k, k, remaining)) {
+                    active[kept++] = r;
+                }
+            }
+            numActive = kept;
+        }
+
+        int[] preds = new int[n];
+        for (int r = 0; r < n; r++) {
+            preds[r] = argmax(votes, r * k, k);
+        }
+        return preds;
+    }
+
+    // True if no other class can catch up with the current leader in the remaining votes
+    private static boolean isDecided(int[] votes, int from, int k, int remaining) {
+        int leader = argmax(votes, from, k);
+        for (int c = 0; c < k; c++) {
+            if (c == leader) continue;
+            int reach = votes[from + c] + remaining;
+            // A class above the leader wins a tie, one below it needs strictly more votes
+            if (reach > votes[from + leader] || (reach == votes[from + leader] && c > leader)) return false;
+        }
+        return true;
     }
 
     public double evaluate(List<Node> test) {
@@ -99,6 +346,49 @@ public class RandomForest {
         return (double) correct / test.size();
     }
 
+    // Predicts the given rows of a dataset. Large requests are split into chunks scored
+    // concurrently on the forest's executor; each chunk reads rows through one reused buffer.
+    public int[] predict(FeatureMatrix data, int[] rows) {
+        int[] preds = new int[rows.length];
+        if (rows.length < 2 * SCORING_CHUNK) {
+            predictRange(data, rows, preds, 0, rows.length);
+            return preds;
+        }
+        int chunks = (rows.length + SCORING_CHUNK - 1) / SCORING_CHUNK;
+        try (TaskScope scope = executor.open(chunks)) {
+            for (int c = 0; c < chunks; c++) {
+                int from = c * SCORING_CHUNK;
+                int to = Math.min(rows.length, from + SCORING_CHUNK);
+                scope.fork(() -> predictRange(data, rows, preds, from, to));
+            }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scoring", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scoring failed", e.getCause());
+        }
+        return preds;
+    }
+
+    private void predictRange(FeatureMatrix data, int[] rows, int[] preds, int from, int to) {
+        double[] buf = new double[data.getNumFeatures()];
+        for (int i = from; i < to; i++) {
+            data.copyRow(rows[i], buf);
+            preds[i] = predict(buf);
+        }
+    }
+
+    // Accuracy on the given rows of a shared dataset
+    public double evaluate(FeatureMatrix data, int[] rows) {
+        int[] preds = predict(data, rows);
+        int correct = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (preds[i] == data.getLabel(rows[i])) correct++;
+        }
+        return (double) correct / rows.length;
+    }
+
     private double[] nodeToArr(Node n) {
         double[] arr = new double[n.getNumFeatures()];
         for (int i = 0; i < n.getNumFeatures(); i++) {
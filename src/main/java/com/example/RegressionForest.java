@@ -0,0 +1,150 @@
+package com.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Random forest that predicts the exam score itself rather than Pass/Fail.
+// Trees are grown on bootstrap samples of the rows' targets (FeatureMatrix.getTarget) and the
+// prediction is the average of their leaf means. Pass/Fail follows by comparing that score with
+// a pass mark, which can be changed at any time without retraining.
+public class RegressionForest {
+    private final List<ScoreTree> trees = Collections.synchronizedList(new ArrayList<>());
+    private final TrainingParams params;
+    private final int numTotalFeatures;
+    private volatile double passScore = DataLoader.PASS_SCORE;
+    private TrainingExecutor executor = TrainingExecutor.SHARED;
+
+    public RegressionForest(int numTrees, int maxFeatures, int totalF) {
+        this(new TrainingParams(numTrees, maxFeatures), totalF);
+    }
+
+    // maxFeatures 0 means a third of the features per split
+    public RegressionForest(TrainingParams params, int totalF) {
+        this.params = params.copy();
+        this.numTotalFeatures = totalF;
+    }
+
+    public void train(List<Node> data) {
+        Dataset ds = new Dataset(data);
+        train(ds, ds.allRows());
+    }
+
+    // Grows params.numTrees trees on the given rows of a shared dataset
+    public void train(FeatureMatrix data, int[] rows) {
+        if (rows.length == 0) throw new IllegalArgumentException("No rows to train on");
+        if (!data.hasTargets()) throw new IllegalArgumentException("No regression targets to train on");
+        trees.clear();
+        try (TaskScope scope = executor.open(params.numTrees)) {
+            for (int i = 0; i < params.numTrees; i++) {
+                scope.fork(() -> {
+                    ScoreTree t = new ScoreTree(params, numTotalFeatures);
+                    t.train(data, bootstrapSample(rows));
+                    trees.add(t);
+                });
+            }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tree training failed", e.getCause());
+        }
+    }
+
+    public void setExecutor(TrainingExecutor executor) {
+        this.executor = executor;
+    }
+
+    // Scores at or above this count as Pass; defaults to DataLoader.PASS_SCORE
+    public void setPassScore(double passScore) {
+        this.passScore = passScore;
+    }
+
+    public double getPassScore() {
+        return passScore;
+    }
+
+    public int getNumTrees() {
+        return trees.size();
+    }
+
+    public int getNumFeatures() {
+        return numTotalFeatures;
+    }
+
+    // Writes the trees and pass mark in the binary form read back by read()
+    public void writeTo(DataOutput out) throws IOException {
+        ScoreTree[] ts = trees.toArray(new ScoreTree[0]);
+        out.writeInt(numTotalFeatures);
+        out.writeDouble(passScore);
+        out.writeInt(ts.length);
+        for (ScoreTree t : ts) t.writeTo(out);
+    }
+
+    public static RegressionForest read(DataInput in) throws IOException {
+        int totalF = in.readInt();
+        double passScore = in.readDouble();
+        int count = in.readInt();
+        if (totalF < 0 || count < 0) throw new IOException("Corrupt regression forest header");
+        RegressionForest rf = new RegressionForest(new TrainingParams(count, 0), totalF);
+        rf.passScore = passScore;
+        for (int i = 0; i < count; i++) rf.trees.add(ScoreTree.read(in, totalF));
+        return rf;
+    }
+
+    // Average of the trees' predicted scores
+    public double predictScore(double[] feats) {
+        ScoreTree[] ts = trees.toArray(new ScoreTree[0]);
+        double sum = 0;
+        for (ScoreTree t : ts) sum += t.predict(feats);
+        return sum / ts.length;
+    }
+
+    // 1 (Pass) if the predicted score reaches the pass mark
+    public int predict(double[] feats) {
+        return predictScore(feats) >= passScore ? 1 : 0;
+    }
+
+    // Predicted scores of the given rows of a dataset
+    public double[] predictScores(FeatureMatrix data, int[] rows) {
+        double[] buf = new double[data.getNumFeatures()];
+        double[] out = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            data.copyRow(rows[i], buf);
+            out[i] = predictScore(buf);
+        }
+        return out;
+    }
+
+    // Pass/Fail accuracy against the rows' labels at the current pass mark
+    public double evaluate(FeatureMatrix data, int[] rows) {
+        double[] scores = predictScores(data, rows);
+        int correct = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if ((scores[i] >= passScore ? 1 : 0) == data.getLabel(rows[i])) correct++;
+        }
+        return (double) correct / rows.length;
+    }
+
+    public double evaluate(List<Node> test) {
+        Dataset ds = new Dataset(test);
+        return evaluate(ds, ds.allRows());
+    }
+
+    // Average distance between predicted and actual scores
+    public double meanAbsoluteError(FeatureMatrix data, int[] rows) {
+        double[] scores = predictScores(data, rows);
+        double err = 0;
+        for (int i = 0; i < rows.length; i++) err += Math.abs(scores[i] - data.getTarget(rows[i]));
+        return err / rows.length;
+    }
+
+    // Plain bootstrap (no class balancing: the target is a score, not a class)
+    private int[] bootstrapSample(int[] rows) {
+        int n = Math.min((int) Math.ceil(rows.length * params.sampleFraction), 10000);
+        int[] samp = new int[n];
+        for (int i = 0; i < n; i++) samp[i] = rows[ThreadLocalRandom.current().nextInt(rows.length)];
+        return samp;
+    }
+}
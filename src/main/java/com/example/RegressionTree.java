@@ -0,0 +1,216 @@
+package com.example;
+
+import java.util.*;
+
+// One tree of a GradientBoostedTrees model: fitted to per-row gradients and hessians of the loss,
+// its leaves output a (shrunken) score correction instead of a class.
+// Nodes are stored in flat arrays; leaves have feature -1.
+class RegressionTree {
+    private final int[] feature; // Split feature, or -1 for a leaf
+    private final int[] bin; // Split bin: codes <= bin go left
+    private final double[] threshold; // Upper edge of that bin, for raw feature values
+    private final int[] left, right;
+    private final double[] value; // Leaf output, learning rate already applied
+
+    private RegressionTree(int[] feature, int[] bin, double[] threshold, int[] left, int[] right, double[] value) {
+        this.feature = feature;
+        this.bin = bin;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.value = value;
+    }
+
+    double predict(double[] feats) {
+        int node = 0;
+        while (feature[node] >= 0) {
+            node = feats[feature[node]] <= threshold[node] ? left[node] : right[node];
+        }
+        return value[node];
+    }
+
+    // Output for the i-th training row, walked on its bin codes
+    double predictBinned(FeatureBins bins, int i) {
+        int node = 0;
+        while (feature[node] >= 0) {
+            node = bins.code(feature[node], i) <= bin[node] ? left[node] : right[node];
+        }
+        return value[node];
+    }
+
+    int getNodeCount() {
+        return feature.length;
+    }
+
+    // Grows a tree on all training rows. Split gain is the second-order log-loss reduction
+    // G_L^2/(H_L+l2) + G_R^2/(H_R+l2) - G^2/(H+l2), and a leaf outputs -G/(H+l2) times the learning rate.
+    static RegressionTree fit(FeatureBins bins, double[] grad, double[] hess, BoostingParams params) {
+        return new Builder(bins, grad, hess, params).build();
+    }
+
+    // Depth-first growth with an explicit stack, partitioning one row-index array in place as
+    // DecisionTree does. Each node keeps gradient histograms of all features; only the smaller
+    // child's histograms are summed from its rows, the larger child's are the parent's minus those.
+    private static class Builder {
+        private static final double MIN_HESSIAN = 1e-3; // Smallest hessian sum allowed in a child
+
+        private final FeatureBins bins;
+        private final double[] grad, hess;
+        private final BoostingParams params;
+        private final int[] rows; // Training row positions; each pending node owns a [start, end) range
+        private final List<int[]> links = new ArrayList<>(); // Per node: feature, bin, left, right
+        private final List<double[]> numbers = new ArrayList<>(); // Per node: threshold, value
+
+        Builder(FeatureBins bins, double[] grad, double[] hess, BoostingParams params) {
+            this.bins = bins;
+            this.grad = grad;
+            this.hess = hess;
+            this.params = params;
+            this.rows = new int[grad.length];
+            for (int i = 0; i < rows.length; i++) rows[i] = i;
+        }
+
+        RegressionTree build() {
+            Deque<Pending> stack = new ArrayDeque<>();
+            stack.push(new Pending(0, rows.length, 0, histograms(0, rows.length), newNode()));
+            while (!stack.isEmpty()) {
+                Pending p = stack.pop();
+                double g = 0, h = 0;
+                double[] any = p.hist[0]; // Every feature's histogram holds the same totals
+                for (int b = 0; b < any.length; b += 3) {
+                    g += any[b];
+                    h += any[b + 1];
+                }
+
+                int[] split = p.depth < params.maxDepth ? bestSplit(p, g, h) : null;
+                if (split == null) {
+                    links.get(p.node)[0] = -1;
+                    numbers.get(p.node)[1] = -g / (h + params.l2) * params.learningRate;
+                    continue;
+                }
+
+                int f = split[0], b = split[1];
+                int mid = partition(p.start, p.end, f, b);
+                int leftNode = newNode(), rightNode = newNode();
+                int[] link = links.get(p.node);
+                link[0] = f;
+                link[1] = b;
+                link[2] = leftNode;
+                link[3] = rightNode;
+                numbers.get(p.node)[0] = bins.edges[f][b];
+
+                boolean leftSmaller = mid - p.start <= p.end - mid;
+                double[][] small = leftSmaller ? histograms(p.start, mid) : histograms(mid, p.end);
+                double[][] large = p.hist; // Reused: the parent no longer needs it
+                for (int ff = 0; ff < large.length; ff++) {
+                    for (int k = 0; k < large[ff].length; k++) large[ff][k] -= small[ff][k];
+                }
+                stack.push(new Pending(mid, p.end, p.depth + 1, leftSmaller ? large : small, rightNode));
+                stack.push(new Pending(p.start, mid, p.depth + 1, leftSmaller ? small : large, leftNode));
+            }
+
+            int n = links.size();
+            int[] feature = new int[n], bin = new int[n], left = new int[n], right = new int[n];
+            double[] threshold = new double[n], value = new double[n];
+            for (int i = 0; i < n; i++) {
+                int[] l = links.get(i);
+                feature[i] = l[0];
+                bin[i] = l[1];
+                left[i] = l[2];
+                right[i] = l[3];
+                threshold[i] = numbers.get(i)[0];
+                value[i] = numbers.get(i)[1];
+            }
+            return new RegressionTree(feature, bin, threshold, left, right, value);
+        }
+
+        private int newNode() {
+            links.add(new int[4]);
+            numbers.add(new double[2]);
+            return links.size() - 1;
+        }
+
+        // Per feature, (gradient sum, hessian sum, row count) of every bin over rows[start, end)
+        private double[][] histograms(int start, int end) {
+            int nf = bins.getNumFeatures();
+            double[][] hist = new double[nf][];
+            for (int f = 0; f < nf; f++) {
+                double[] hf = new double[bins.getBinCount(f) * 3];
+                byte[] codes = bins.codes[f];
+                for (int i = start; i < end; i++) {
+                    int r = rows[i];
+                    int at = (codes[r] & 0xFF) * 3;
+                    hf[at] += grad[r];
+                    hf[at + 1] += hess[r];
+                    hf[at + 2]++;
+                }
+                hist[f] = hf;
+            }
+            return hist;
+        }
+
+        // Best {feature, bin} by sweeping each histogram left to right, or null if no split gains
+        private int[] bestSplit(Pending p, double g, double h) {
+            int n = p.end - p.start;
+            if (n < 2 * params.minSamplesLeaf) return null;
+            double parentScore = g * g / (h + params.l2);
+            double bestGain = 0;
+            int[] best = null;
+            for (int f = 0; f < p.hist.length; f++) {
+                double[] hf = p.hist[f];
+                double gl = 0, hl = 0;
+                int cl = 0;
+                for (int b = 0; b < hf.length / 3 - 1; b++) { // The last bin would leave the right side empty
+                    gl += hf[b * 3];
+                    hl += hf[b * 3 + 1];
+                    cl += (int) hf[b * 3 + 2];
+                    if (hf[b * 3 + 2] == 0) continue; // Same partition as the previous bin
+                    if (cl < params.minSamplesLeaf) continue;
+                    if (n - cl < params.minSamplesLeaf) break;
+                    double hr = h - hl;
+                    if (hl < MIN_HESSIAN || hr < MIN_HESSIAN) continue;
+                    double gr = g - gl;
+                    double gain = gl * gl / (hl + params.l2) + gr * gr / (hr + params.l2) - parentScore;
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        best = new int[]{f, b};
+                    }
+                }
+            }
+            return best;
+        }
+
+        // Moves rows with bin code <= b to the front of [start, end); returns where the right side begins
+        private int partition(int start, int end, int f, int b) {
+            byte[] codes = bins.codes[f];
+            int i = start, j = end - 1;
+            while (i <= j) {
+                if ((codes[rows[i]] & 0xFF) <= b) {
+                    i++;
+                } else {
+                    int tmp = rows[i];
+                    rows[i] = rows[j];
+                    rows[j] = tmp;
+                    j--;
+                }
+            }
+            return i;
+        }
+    }
+
+    // A node waiting to be split or made a leaf
+    private static class Pending {
+        final int start, end;
+        final int depth;
+        final double[][] hist;
+        final int node; // Index of the node in the arrays being built
+
+        Pending(int start, int end, int depth, double[][] hist, int node) {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+            this.hist = hist;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+// Everything the prediction screens need, kept on disk so the app can predict right after launch
+// instead of waiting for an upload and a training run: the forest (its trees feed the
+// counterfactual search) with its compact serving copy, the score model, the feedback statistics
+// and the training histograms that scoring traffic is checked against for drift.
+// The app saves one after every training run and starts from the most recent, or else from the
+// one bundled in the jar (built from student_data.csv by the cds profile of the build).
+public class SavedModel {
+    public static final String BUNDLED_RESOURCE = "/student_model.bin";
+
+    private static final int FILE_MAGIC = 0x53504D34; // "SPM4": adds the fill values
+
+    public final RandomForest forest;
+    public final CompactForest serving; // Stored rather than rebuilt, which would take longer than reading it
+    public final RegressionForest scoreModel;
+    public final FeedbackAnalyzer analyzer;
+    public final DriftMonitor drift; // Training histograms, with no inputs recorded yet
+    public final double[] fillValues; // What empty cells of scored rows take (LoadResult.fillValues of the training data)
+    public final int records; // Rows the models were trained on
+    public final long savedAt; // System.currentTimeMillis() when written
+
+    public SavedModel(RandomForest forest, CompactForest serving, RegressionForest scoreModel, FeedbackAnalyzer analyzer,
+            DriftMonitor drift, double[] fillValues, int records) {
+        this(forest, serving, scoreModel, analyzer, drift, fillValues, records, System.currentTimeMillis());
+    }
+
+    private SavedModel(RandomForest forest, CompactForest serving, RegressionForest scoreModel,
+            FeedbackAnalyzer analyzer, DriftMonitor drift, double[] fillValues, int records, long savedAt) {
+        this.forest = forest;
+        this.serving = serving;
+        this.scoreModel = scoreModel;
+        this.analyzer = analyzer;
+        this.drift = drift;
+        this.fillValues = fillValues.clone();
+        this.records = records;
+        this.savedAt = savedAt;
+    }
+
+    // Where the app keeps its latest model: the student.modelDir system property, or
+    // .student-prediction in the user's home directory
+    public static File defaultFile() {
+        String dir = System.getProperty("student.modelDir",
+            new File(System.getProperty("user.home"), ".student-prediction").getPath());
+        return new File(dir, "model.bin");
+    }
+
+    // The saved model at defaultFile(), else the bundled one, else null.
+    // A file that cannot be read is passed over rather than keeping the app from starting.
+    public static SavedModel loadLatest(FeatureSchema schema) {
+        File file = defaultFile();
+        if (file.isFile()) {
+            try {
+                return load(file, schema);
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable saved model " + file + ": " + e.getMessage());
+            }
+        }
+        return loadBundled(schema);
+    }
+
+    // The model built into the jar, or null if this build has none
+    public static SavedModel loadBundled(FeatureSchema schema) {
+        try (InputStream in = SavedModel.class.getResourceAsStream(BUNDLED_RESOURCE)) {
+            return in == null ? null : read(new DataInputStream(new BufferedInputStream(in)), schema);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable bundled model: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static SavedModel load(File file, FeatureSchema schema) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in, schema);
+        }
+    }
+
+    // Writes the model to a temporary file next to the target and moves it into place,
+    // so a crash mid-write never leaves a half-written model behind
+    public void save(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create model directory " + dir);
+        File tmp = File.createTempFile("model", ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeTo(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete(); // Only still there if the write failed
+        }
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeLong(savedAt);
+        out.writeInt(records);
+        forest.writeTo(out);
+        serving.writeTo(out);
+        scoreModel.writeTo(out);
+        analyzer.writeTo(out);
+        drift.writeTo(out);
+        out.writeInt(fillValues.length);
+        for (double v : fillValues) out.writeDouble(v);
+    }
+
+    public static SavedModel read(DataInput in, FeatureSchema schema) throws IOException {
+        if (in.readInt() != FILE_MAGIC) throw new IOException("Not a saved model");
+        long savedAt = in.readLong();
+        int records = in.readInt();
+        RandomForest forest = RandomForest.read(in);
+        CompactForest serving = CompactForest.read(in);
+        RegressionForest scoreModel = RegressionForest.read(in);
+        FeedbackAnalyzer analyzer = FeedbackAnalyzer.read(in, schema);
+        DriftMonitor drift = DriftMonitor.read(in);
+        checkFeatures("forest", forest.getNumFeatures(), schema);
+        checkFeatures("serving forest", serving.getNumFeatures(), schema);
+        checkFeatures("score model", scoreModel.getNumFeatures(), schema);
+        checkFeatures("drift monitor", drift.getNumFeatures(), schema);
+        int nf = in.readInt();
+        checkFeatures("fill values", nf, schema);
+        double[] fill = new double[nf];
+        for (int f = 0; f < nf; f++) fill[f] = in.readDouble();
+        return new SavedModel(forest, serving, scoreModel, analyzer, drift, fill, records, savedAt);
+    }
+
+    // A model saved for other columns would index past (or short of) the inputs it is given
+    private static void checkFeatures(String part, int nf, FeatureSchema schema) throws IOException {
+        if (nf != schema.size()) throw new IOException("Saved " + part + " covers " + nf + " features, schema has " + schema.size());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example;
+
+import java.util.*;
+
+// Turns an exam score into a class label: band k holds the scores from cuts[k-1] (inclusive)
+// up to cuts[k], so K ascending cut points give K + 1 classes, the lowest band being class 0.
+public class ScoreBands {
+    public static final ScoreBands PASS_FAIL = new ScoreBands(new double[]{DataLoader.PASS_SCORE}, "Fail", "Pass");
+    public static final ScoreBands LETTER_GRADES = new ScoreBands(new double[]{60, 70, 80, 90}, "F", "D", "C", "B", "A");
+
+    private final double[] cuts;
+    private final String[] names;
+
+    // names are the bands from lowest to highest, one more than there are cuts
+    public ScoreBands(double[] cuts, String... names) {
+        if (names.length != cuts.length + 1) {
+            throw new IllegalArgumentException("Need " + (cuts.length + 1) + " band names, got " + names.length);
+        }
+        for (int i = 1; i < cuts.length; i++) {
+            if (!(cuts[i] > cuts[i - 1])) throw new IllegalArgumentException("Cut points must ascend: " + Arrays.toString(cuts));
+        }
+        this.cuts = cuts.clone();
+        this.names = names.clone();
+    }
+
+    public int getNumClasses() {
+        return names.length;
+    }
+
+    // Band of a score: the number of cut points at or below it
+    public int classOf(double score) {
+        int k = 0;
+        while (k < cuts.length && score >= cuts[k]) k++;
+        return k;
+    }
+
+    public String getName(int band) {
+        return names[band];
+    }
+
+    // Lowest score of a band (negative infinity for the first)
+    public double getLowerBound(int band) {
+        return band == 0 ? Double.NEGATIVE_INFINITY : cuts[band - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(names[0]);
+        for (int i = 0; i < cuts.length; i++) sb.append(" < ").append(cuts[i]).append(" <= ").append(names[i + 1]);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.example;
+
+import java.io.*;
+import java.util.*;
+
+// One regression tree of a RegressionForest: predicts a row's numeric target (the exam score)
+// as the mean target of the training rows in its leaf.
+// Splits maximize the variance reduction, scored from running sums while sweeping the rows sorted
+// by each candidate feature, so every distinct threshold costs O(1) after the sort.
+// Nodes are stored in flat arrays; leaves have feature -1.
+class ScoreTree {
+    private int[] feature = new int[16]; // Split feature, or -1 for a leaf
+    private double[] threshold = new double[16]; // Split threshold, or the leaf mean
+    private int[] left = new int[16], right = new int[16];
+    private int nodes;
+
+    private final int maxFeatures;
+    private final int maxDepth;
+    private final int minSamplesLeaf;
+    private final int minSamplesSplit;
+    private final Random rand = new Random();
+
+    ScoreTree(TrainingParams params, int totalFeatures) {
+        // Regression forests conventionally look at a third of the features per split
+        this.maxFeatures = params.maxFeatures > 0 ? params.maxFeatures : Math.max(1, totalFeatures / 3);
+        this.maxDepth = params.maxDepth;
+        this.minSamplesLeaf = Math.max(1, params.minSamplesLeaf);
+        this.minSamplesSplit = Math.max(2, params.minSamplesSplit);
+    }
+
+    double predict(double[] feats) {
+        int node = 0;
+        while (feature[node] >= 0) {
+            node = feats[feature[node]] <= threshold[node] ? left[node] : right[node];
+        }
+        return threshold[node];
+    }
+
+    int getNodeCount() {
+        return nodes;
+    }
+
+    // Writes the node arrays in the binary form read back by read()
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(nodes);
+        for (int i = 0; i < nodes; i++) {
+            out.writeInt(feature[i]);
+            out.writeDouble(threshold[i]);
+            out.writeInt(left[i]);
+            out.writeInt(right[i]);
+        }
+    }
+
+    static ScoreTree read(DataInput in, int totalFeatures) throws IOException {
+        ScoreTree t = new ScoreTree(new TrainingParams(1, 0), totalFeatures);
+        int n = in.readInt();
+        if (n < 1) throw new IOException("Corrupt score tree: " + n + " nodes");
+        t.feature = new int[n];
+        t.threshold = new double[n];
+        t.left = new int[n];
+        t.right = new int[n];
+        for (int i = 0; i < n; i++) {
+            t.feature[i] = in.readInt();
+            t.threshold[i] = in.readDouble();
+            t.left[i] = in.readInt();
+            t.right[i] = in.readInt();
+            // Children always follow their parent, so a walk from the root cannot loop or leave the arrays
+            if (t.feature[i] >= totalFeatures || (t.feature[i] >= 0 && (t.left[i] <= i || t.left[i] >= n
+                    || t.right[i] <= i || t.right[i] >= n))) {
+                throw new IOException("Corrupt score tree at node " + i);
+            }
+        }
+        t.nodes = n;
+        return t;
+    }
+
+    // Grows the tree on the given rows (duplicates allowed); the array is partitioned in place
+    void train(FeatureMatrix data, int[] rows) {
+        nodes = 0;
+        int[] order = new int[rows.length];
+        double[] keys = new double[rows.length];
+        Deque<int[]> stack = new ArrayDeque<>(); // {node, start, end, depth}
+        stack.push(new int[]{newNode(), 0, rows.length, 0});
+        while (!stack.isEmpty()) {
+            int[] p = stack.pop();
+            int node = p[0], start = p[1], end = p[2], depth = p[3];
+            double sum = 0;
+            for (int i = start; i < end; i++) sum += data.getTarget(rows[i]);
+
+            int n = end - start;
+            Split best = null;
+            if (depth < maxDepth && n >= minSamplesSplit && n >= 2 * minSamplesLeaf) {
+                for (int f : selectFeatures(data.getNumFeatures())) {
+                    best = scan(data, rows, start, end, f, sum, order, keys, best);
+                }
+            }
+            if (best == null) {
+                feature[node] = -1;
+                threshold[node] = n == 0 ? 0 : sum / n;
+                continue;
+            }
+
+            int f = best.feature;
+            double thr = best.threshold;
+            int i = start, j = end - 1; // Rows with feature <= threshold go to the front
+            while (i <= j) {
+                if (data.getFeature(rows[i], f) <= thr) {
+                    i++;
+                } else {
+                    int tmp = rows[i];
+                    rows[i] = rows[j];
+                    rows[j] = tmp;
+                    j--;
+                }
+            }
+            int l = newNode(), r = newNode();
+            feature[node] = f;
+            threshold[node] = thr;
+            left[node] = l;
+            right[node] = r;
+            stack.push(new int[]{r, i, end, depth + 1});
+            stack.push(new int[]{l, start, i, depth + 1});
+        }
+    }
+
+    // Sorts the node's rows by feature f and sweeps them with a running sum of targets minus the
+    // node mean. With that sum s on the left, a split lowers the squared error by s^2 * n / (nL * nR);
+    // centering keeps pure nodes at exactly no gain despite rounding.
+    private Split scan(FeatureMatrix data, int[] rows, int start, int end, int f, double sum,
+            int[] order, double[] keys, Split best) {
+        int n = end - start;
+        for (int i = 0; i < n; i++) {
+            order[i] = rows[start + i];
+            keys[i] = data.getFeature(order[i], f);
+        }
+        DecisionTree.sortByKey(keys, order, 0, n - 1);
+
+        double mean = sum / n;
+        double sumL = 0;
+        for (int i = 0; i < n - 1; i++) {
+            sumL += data.getTarget(order[i]) - mean;
+            if (keys[i] == keys[i + 1]) continue; // Thresholds are the distinct values
+            int nl = i + 1, nr = n - nl;
+            if (nl < minSamplesLeaf || nr < minSamplesLeaf) continue;
+            double gain = sumL * sumL * n / ((double) nl * nr);
+            if (gain > 1e-12 && (best == null || gain > best.gain)) best = new Split(f, keys[i], gain);
+        }
+        return best;
+    }
+
+    private int[] selectFeatures(int total) {
+        int[] arr = new int[total];
+        for (int i = 0; i < total; i++) arr[i] = i;
+        for (int i = total - 1; i > 0; i--) {
+            int idx = rand.nextInt(i + 1);
+            int tmp = arr[idx];
+            arr[idx] = arr[i];
+            arr[i] = tmp;
+        }
+        return Arrays.copyOf(arr, Math.min(total, maxFeatures));
+    }
+
+    private int newNode() {
+        if (nodes == feature.length) {
+            int cap = nodes * 2;
+            feature = Arrays.copyOf(feature, cap);
+            threshold = Arrays.copyOf(threshold, cap);
+            left = Arrays.copyOf(left, cap);
+            right = Arrays.copyOf(right, cap);
+        }
+        return nodes++;
+    }
+
+    private static class Split {
+        final int feature;
+        final double threshold;
+        final double gain; // Decrease in squared error
+
+        Split(int feature, double threshold, double gain) {
+            this.feature = feature;
+            this.threshold = threshold;
+            this.gain = gain;
+        }
+    }
+}
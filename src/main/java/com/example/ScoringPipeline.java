@@ -0,0 +1,372 @@
+package com.example;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Scores student rows as they arrive, with the current model and without retraining.
+// Three stages hand micro-batches to each other through bounded queues: parsing (the rules of
+// DataLoader.RowParser) fills batches of up to batchSize rows on the caller's thread, a scoring
+// thread runs them through the model, and a writing thread appends one "source,line,class" line
+// per row to the output. A stage that falls behind fills the queue in front of it, which blocks
+// the stage before, so memory stays bounded however fast rows come in.
+// Input is a stream such as stdin (score) or a directory receiving CSV snapshots (watch).
+// With a DriftMonitor set, the scoring stage also records every row it scores.
+public class ScoringPipeline implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_QUEUE_BATCHES = 8; // Batches each queue holds before blocking
+
+    private static final Batch END = new Batch("", 0); // Sent down the queues when input is over
+
+    private final FeatureSchema schema;
+    private final double[] fill;
+    private final int batchSize;
+    private final BlockingQueue<Batch> toScore;
+    private final BlockingQueue<Batch> toWrite;
+    private final Writer out;
+    private final Thread scorer;
+    private final Thread writer;
+    private volatile Model model;
+    private volatile DriftMonitor drift; // null unless set
+    private volatile Throwable failure; // First error of the scoring or writing stage
+    private volatile WatchService watcher; // Set while watch() runs
+    private volatile boolean closed;
+
+    private final Stage parse = new Stage("parse");
+    private final Stage score = new Stage("score");
+    private final Stage write = new Stage("write");
+    private final AtomicLong rejected = new AtomicLong(); // Lines the parser refused
+    private final AtomicLong sources = new AtomicLong(); // Streams and files read
+
+    // schema and fill describe the training columns (LoadResult.schema and fillValues)
+    public ScoringPipeline(CompactForest model, ScoreBands bands, FeatureSchema schema, double[] fill, Writer out) {
+        this(model, bands, schema, fill, out, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_BATCHES);
+    }
+
+    public ScoringPipeline(CompactForest model, ScoreBands bands, FeatureSchema schema, double[] fill, Writer out,
+            int batchSize, int queueBatches) {
+        if (batchSize < 1 || queueBatches < 1) throw new IllegalArgumentException("Batch size and queue length must be positive");
+        this.schema = schema;
+        this.fill = fill.clone();
+        this.batchSize = batchSize;
+        this.toScore = new ArrayBlockingQueue<>(queueBatches);
+        this.toWrite = new ArrayBlockingQueue<>(queueBatches);
+        this.out = out;
+        setModel(model, bands);
+        this.scorer = startStage("pipeline-score", this::scoreLoop);
+        this.writer = startStage("pipeline-write", this::writeLoop);
+    }
+
+    // Scores later batches with another model, e.g. after retraining
+    public void setModel(CompactForest model, ScoreBands bands) {
+        if (model.getNumClasses() > bands.getNumClasses()) {
+            throw new IllegalArgumentException("Model predicts " + model.getNumClasses() + " classes, bands name "
+                + bands.getNumClasses());
+        }
+        this.model = new Model(model, bands);
+    }
+
+    // Records the rows scored from now on in the given monitor (null to stop)
+    public void setDriftMonitor(DriftMonitor monitor) {
+        this.drift = monitor;
+    }
+
+    // Reads CSV rows (header first) until the stream ends and queues them for scoring.
+    // A partial batch is sent on whenever the reader has nothing more ready, so rows typed or piped
+    // in slowly are scored promptly instead of waiting for a full batch.
+    public void score(Reader in, String source) throws IOException, InterruptedException {
+        BufferedReader r = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        String header = r.readLine();
+        if (header == null) return;
+        DataLoader.RowParser parser = new DataLoader.RowParser(schema, fill, header);
+        sources.incrementAndGet();
+        Batch batch = new Batch(source, batchSize);
+        int lineNo = 1;
+        long start = System.nanoTime();
+        String line;
+        while ((line = r.readLine()) != null) {
+            lineNo++;
+            if (line.trim().isEmpty()) continue;
+            double[] feats = parser.parse(line);
+            if (feats == null) {
+                rejected.incrementAndGet();
+            } else {
+                batch.add(lineNo, feats);
+            }
+            if (batch.size == batchSize || (batch.size > 0 && !r.ready())) {
+                parse.record(batch.size, System.nanoTime() - start);
+                submit(batch);
+                batch = new Batch(source, batchSize);
+                start = System.nanoTime();
+            }
+        }
+        if (batch.size > 0) {
+            parse.record(batch.size, System.nanoTime() - start);
+            submit(batch);
+        }
+    }
+
+    // Scores the CSV files already in the directory, then each one that appears in it, until
+    // close() is called or the thread is interrupted. Files are picked up when they are created,
+    // so they should be written elsewhere and moved in once complete.
+    public void watch(Path dir) throws IOException, InterruptedException {
+        Set<Path> seen = new HashSet<>();
+        try (WatchService ws = dir.getFileSystem().newWatchService()) {
+            watcher = ws;
+            if (closed) return;
+            dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE);
+            scoreNewFiles(dir, seen); // Files that arrived before the watch started
+            while (!closed) {
+                WatchKey key = ws.take();
+                boolean rescan = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan = true; // Events were lost; look at the directory itself
+                    } else {
+                        Path file = dir.resolve((Path) event.context());
+                        if (isSnapshot(file) && seen.add(file)) scoreFile(file);
+                    }
+                }
+                if (rescan) scoreNewFiles(dir, seen);
+                if (!key.reset()) break; // Directory is gone
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() stopped the watch
+        } finally {
+            watcher = null;
+        }
+    }
+
+    private void scoreNewFiles(Path dir, Set<Path> seen) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, ScoringPipeline::isSnapshot)) {
+            for (Path p : ds) files.add(p);
+        }
+        Collections.sort(files);
+        for (Path p : files) {
+            if (seen.add(p)) scoreFile(p);
+        }
+    }
+
+    private static boolean isSnapshot(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    // A file that cannot be read or has an unusable header is skipped, so one bad drop does not stop the feed
+    private void scoreFile(Path file) throws InterruptedException {
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            score(r, file.getFileName().toString());
+        } catch (IOException | IllegalArgumentException e) {
+            rejected.incrementAndGet();
+        }
+    }
+
+    // Hands a parsed batch to the scoring stage, waiting while its queue is full
+    private void submit(Batch batch) throws InterruptedException {
+        if (closed) throw new IllegalStateException("Scoring pipeline is closed");
+        do {
+            if (failure != null) throw new IllegalStateException("Scoring pipeline failed", failure);
+        } while (!toScore.offer(batch, 100, TimeUnit.MILLISECONDS));
+    }
+
+    private void scoreLoop() throws InterruptedException {
+        while (true) {
+            Batch b = toScore.take();
+            if (b == END) break;
+            long start = System.nanoTime();
+            Model m = model; // One model for the whole batch
+            DriftMonitor d = drift;
+            b.labels = new String[b.size];
+            for (int i = 0; i < b.size; i++) {
+                b.labels[i] = m.bands.getName(m.forest.predict(b.rows[i]));
+                if (d != null) d.record(b.rows[i]);
+            }
+            b.rows = null; // Features are not needed past this stage
+            score.record(b.size, System.nanoTime() - start);
+            toWrite.put(b);
+        }
+        toWrite.put(END);
+    }
+
+    private void writeLoop() throws IOException, InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            Batch b = toWrite.take();
+            if (b == END) break;
+            long start = System.nanoTime();
+            sb.setLength(0);
+            String source = csvField(b.source);
+            for (int i = 0; i < b.size; i++) {
+                sb.append(source).append(',').append(b.lines[i]).append(',').append(b.labels[i]).append('\n');
+            }
+            out.write(sb.toString());
+            out.flush(); // Each batch is visible to readers of the output as soon as it is scored
+            write.record(b.size, System.nanoTime() - start);
+        }
+    }
+
+    private static String csvField(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private Thread startStage(String name, StageBody body) {
+        Thread t = new Thread(() -> {
+            try {
+                body.run();
+            } catch (InterruptedException e) {
+                // Closed
+            } catch (Throwable e) {
+                failure = e;
+                toScore.clear(); // Unblock the parser; it sees the failure next
+            }
+        }, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    // Stops watching, lets the rows already parsed drain through scoring and writing, and waits
+    // for them. Throws if a stage failed on the way. If the calling thread is interrupted while
+    // waiting, the stages are stopped without draining and InterruptedIOException is thrown, with
+    // the thread's interrupt status set again.
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        WatchService ws = watcher;
+        if (ws != null) ws.close();
+        try {
+            while (failure == null && !toScore.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // Wait for room behind the last batches
+            }
+            if (failure == null) {
+                scorer.join();
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            scorer.interrupt();
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while draining the scoring pipeline");
+        }
+        if (failure != null) {
+            scorer.interrupt();
+            writer.interrupt();
+        }
+        Throwable f = failure;
+        if (f instanceof IOException) throw (IOException) f;
+        if (f != null) throw new IllegalStateException("Scoring pipeline failed", f);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Throughput so far of the parse, score and write stages, in that order
+    public List<StageStats> getStageStats() {
+        return Arrays.asList(parse.snapshot(), score.snapshot(), write.snapshot());
+    }
+
+    // Lines rejected by the parser, plus files that could not be read
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    // Streams and files read so far
+    public long getSources() {
+        return sources.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sources.get()).append(" sources, ").append(rejected.get()).append(" rejected");
+        for (StageStats s : getStageStats()) sb.append("; ").append(s);
+        return sb.toString();
+    }
+
+    // Rows, batches and busy time of one stage
+    public static class StageStats {
+        public final String stage;
+        public final long rows;
+        public final long batches;
+        public final long busyNanos; // Time spent working, not waiting on a queue
+
+        StageStats(String stage, long rows, long batches, long busyNanos) {
+            this.stage = stage;
+            this.rows = rows;
+            this.batches = batches;
+            this.busyNanos = busyNanos;
+        }
+
+        // Rows per second of busy time: what the stage could sustain alone
+        public double getRowsPerSecond() {
+            return busyNanos == 0 ? 0 : rows * 1e9 / busyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d rows in %d batches, %.0f rows/s", stage, rows, batches, getRowsPerSecond());
+        }
+    }
+
+    private static class Stage {
+        final String name;
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(int n, long nanos) {
+            rows.addAndGet(n);
+            batches.incrementAndGet();
+            busyNanos.addAndGet(nanos);
+        }
+
+        StageStats snapshot() {
+            return new StageStats(name, rows.get(), batches.get(), busyNanos.get());
+        }
+    }
+
+    // Rows of one source travelling through the stages together
+    private static class Batch {
+        final String source;
+        final int[] lines; // Line number of each row in its source, header being line 1
+        double[][] rows; // Features; dropped once scored
+        String[] labels; // Set by the scoring stage
+        int size;
+
+        Batch(String source, int capacity) {
+            this.source = source;
+            this.lines = new int[capacity];
+            this.rows = new double[capacity][];
+        }
+
+        void add(int line, double[] feats) {
+            lines[size] = line;
+            rows[size] = feats;
+            size++;
+        }
+    }
+
+    private static class Model {
+        final CompactForest forest;
+        final ScoreBands bands;
+
+        Model(CompactForest forest, ScoreBands bands) {
+            this.forest = forest;
+            this.bands = bands;
+        }
+    }
+
+    private interface StageBody {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// A group of tasks that is waited for as a unit, in the spirit of structured concurrency:
+// join() returns once every forked task has finished, and the first task to fail cancels
+// its siblings (queued ones are skipped, running ones are interrupted).
+// Scopes are opened by a TrainingExecutor and must be closed, which cancels anything still running.
+public final class TaskScope implements AutoCloseable {
+    private final ExecutorService exec;
+    private final boolean ownsExecutor; // Shut the executor down on close
+    private final Set<Thread> running = new HashSet<>(); // Threads inside a task; guarded by itself
+    private volatile boolean cancelled;
+    private Throwable failure; // First failure; guarded by this
+    private int pending; // Forked tasks not finished yet; guarded by this
+
+    TaskScope(ExecutorService exec, boolean ownsExecutor) {
+        this.exec = exec;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public void fork(Runnable task) {
+        synchronized (this) {
+            pending++;
+        }
+        try {
+            exec.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            finished(e);
+            throw e;
+        }
+    }
+
+    // Waits up to the given time for all tasks; returns false if some are still running.
+    // Throws ExecutionException with the first failure once all tasks are done or cancelled.
+    public boolean join(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (pending > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            if (failure != null) throw new ExecutionException(failure);
+            return true;
+        }
+    }
+
+    // Waits without a time limit
+    public void join() throws InterruptedException, ExecutionException {
+        join(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // Skips tasks not started yet and interrupts the running ones
+    public void cancel() {
+        cancelled = true;
+        synchronized (running) {
+            for (Thread t : running) t.interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void close() {
+        boolean unfinished;
+        synchronized (this) {
+            unfinished = pending > 0;
+        }
+        if (unfinished) cancel();
+        if (ownsExecutor) exec.shutdownNow();
+    }
+
+    private void run(Runnable task) {
+        Thread t = Thread.currentThread();
+        Throwable error = null;
+        try {
+            synchronized (running) {
+                if (cancelled) return;
+                running.add(t);
+            }
+            task.run();
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            synchronized (running) {
+                // Once removed the thread can't be interrupted by cancel(); clear a cancellation
+                // interrupt so it does not leak into the next task of a shared pool
+                if (running.remove(t) && cancelled) Thread.interrupted();
+            }
+            finished(error);
+        }
+    }
+
+    private void finished(Throwable error) {
+        boolean first = false;
+        synchronized (this) {
+            if (error != null && failure == null) {
+                failure = error;
+                first = true;
+            }
+            pending--;
+            notifyAll();
+        }
+        if (first) cancel(); // Outside the lock; siblings may be finishing concurrently
+    }
+}
@@ -0,0 +1,138 @@
+package com.example;
+
+import java.util.*;
+
+// Index of every split threshold in a trained forest, grouped by feature.
+// A tree's prediction can only change when a feature crosses one of that tree's own
+// thresholds, so sweeping one feature only needs to re-evaluate the trees listed at
+// each threshold that is crossed instead of the whole forest at every value.
+public class ThresholdIndex {
+    private final DecisionTree[] trees;
+    private final double[][] thresholds; // [feature] -> sorted distinct thresholds
+    private final int[][][] treesAt; // [feature][threshold] -> trees splitting there
+
+    public ThresholdIndex(List<DecisionTree> forest, int numFeatures) {
+        trees = forest.toArray(new DecisionTree[0]);
+        thresholds = new double[numFeatures][];
+        treesAt = new int[numFeatures][][];
+
+        List<List<double[]>> splits = new ArrayList<>(); // [feature] -> (threshold, tree) pairs
+        for (int f = 0; f < numFeatures; f++) splits.add(new ArrayList<>());
+        for (int t = 0; t < trees.length; t++) {
+            final int treeId = t;
+            trees[t].forEachSplit((f, thr) -> {
+                if (f < numFeatures) splits.get(f).add(new double[]{thr, treeId});
+            });
+        }
+
+        for (int f = 0; f < numFeatures; f++) {
+            List<double[]> fs = splits.get(f);
+            fs.sort((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+            List<Double> thr = new ArrayList<>();
+            List<int[]> groups = new ArrayList<>();
+            int i = 0;
+            while (i < fs.size()) {
+                int j = i;
+                Set<Integer> ids = new LinkedHashSet<>(); // A tree may split on the same value twice
+                while (j < fs.size() && fs.get(j)[0] == fs.get(i)[0]) {
+                    ids.add((int) fs.get(j)[1]);
+                    j++;
+                }
+                thr.add(fs.get(i)[0]);
+                groups.add(ids.stream().mapToInt(Integer::intValue).toArray());
+                i = j;
+            }
+            thresholds[f] = thr.stream().mapToDouble(Double::doubleValue).toArray();
+            treesAt[f] = groups.toArray(new int[0][]);
+        }
+    }
+
+    public int getNumTrees() {
+        return trees.length;
+    }
+
+    // Sorted distinct thresholds used for a feature anywhere in the forest
+    public double[] getThresholds(int feature) {
+        return thresholds[feature].clone();
+    }
+
+    // Pass votes for the input as one feature sweeps over [lo, hi], all other features fixed.
+    // Trees are evaluated once at lo and afterwards only when one of their thresholds is crossed.
+    public SensitivityCurve sensitivity(double[] input, int feature, double lo, double hi) {
+        double[] x = input.clone();
+        x[feature] = lo;
+        int[] preds = new int[trees.length];
+        int passVotes = 0;
+        for (int t = 0; t < trees.length; t++) {
+            preds[t] = trees[t].predict(x);
+            passVotes += preds[t];
+        }
+
+        double[] thr = thresholds[feature];
+        List<Double> bounds = new ArrayList<>();
+        List<Integer> votes = new ArrayList<>();
+
+        int k = firstAtOrAbove(thr, lo);
+        while (k < thr.length && thr[k] < hi) {
+            bounds.add(thr[k]); // Interval ends at this threshold (values <= threshold go left)
+            votes.add(passVotes);
+            // Any value in (thr[k], next] gives the same decisions; evaluate at the upper end
+            double next = k + 1 < thr.length && thr[k + 1] < hi ? thr[k + 1] : hi;
+            x[feature] = next;
+            for (int t : treesAt[feature][k]) {
+                int p = trees[t].predict(x);
+                passVotes += p - preds[t];
+                preds[t] = p;
+            }
+            k++;
+        }
+        bounds.add(hi);
+        votes.add(passVotes);
+
+        double[] upper = new double[bounds.size()];
+        int[] pv = new int[votes.size()];
+        for (int i = 0; i < upper.length; i++) {
+            upper[i] = bounds.get(i);
+            pv[i] = votes.get(i);
+        }
+        return new SensitivityCurve(lo, upper, pv, trees.length);
+    }
+
+    // Index of the first threshold >= v
+    private static int firstAtOrAbove(double[] arr, double v) {
+        int lo = 0, hi = arr.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (arr[mid] < v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Piecewise-constant pass-vote count for one feature: interval i covers (upper[i-1], upper[i]],
+    // the first interval starts at the sweep's lower bound
+    public static class SensitivityCurve {
+        public final double lo;
+        public final double[] upper;
+        public final int[] passVotes;
+        public final int numTrees;
+
+        SensitivityCurve(double lo, double[] upper, int[] passVotes, int numTrees) {
+            this.lo = lo;
+            this.upper = upper;
+            this.passVotes = passVotes;
+            this.numTrees = numTrees;
+        }
+
+        // Pass votes when the feature takes value v (lo <= v <= upper[last])
+        public int passVotesAt(double v) {
+            return passVotes[Math.min(firstAtOrAbove(upper, v), passVotes.length - 1)];
+        }
+
+        // Same tie rule as RandomForest.predict: Pass unless Fail has strictly more votes
+        public boolean passesAt(double v) {
+            int pv = passVotesAt(v);
+            return numTrees - pv <= pv;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+
+// Where RandomForest runs its tree-building and batch-scoring tasks.
+// Each call opens a TaskScope on the strategy's executor, so a failing task cancels its siblings
+// whichever strategy is used; the strategies only differ in where the threads come from.
+public abstract class TrainingExecutor {
+    // A fixed pool created for every call and shut down afterwards
+    public static final TrainingExecutor PER_CALL = new TrainingExecutor() {
+        @Override
+        TaskScope open(int tasks) {
+            int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), tasks));
+            return new TaskScope(Executors.newFixedThreadPool(threads), true);
+        }
+    };
+
+    // One long-lived work-stealing pool shared by every forest, so retraining reuses its threads
+    public static final TrainingExecutor SHARED = new TrainingExecutor() {
+        @Override
+        TaskScope open(int tasks) {
+            return new TaskScope(SharedPool.POOL, false);
+        }
+    };
+
+    // A virtual thread per task where the JVM has them (Java 21+), otherwise PER_CALL
+    public static final TrainingExecutor VIRTUAL = new TrainingExecutor() {
+        @Override
+        TaskScope open(int tasks) {
+            ExecutorService exec = newVirtualThreadExecutor();
+            return exec != null ? new TaskScope(exec, true) : PER_CALL.open(tasks);
+        }
+    };
+
+    // Runs tasks on an executor owned by the caller, which is never shut down here
+    public static TrainingExecutor using(ExecutorService exec) {
+        return new TrainingExecutor() {
+            @Override
+            TaskScope open(int tasks) {
+                return new TaskScope(exec, false);
+            }
+        };
+    }
+
+    // Opens a scope for about the given number of tasks
+    abstract TaskScope open(int tasks);
+
+    // Looked up reflectively so the code still compiles and runs on JVMs without virtual threads
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Created on first use; its worker threads are daemons and idle ones time out
+    private static class SharedPool {
+        static final ExecutorService POOL = Executors.newWorkStealingPool();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example;
+
+import java.util.*;
+
+// Settings for growing a RandomForest and its trees.
+// Fields are public and start at the values Main has always used (100 unlimited trees).
+public class TrainingParams {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    public int numTrees = 100;
+    public int maxFeatures; // Features considered per split; 0 means sqrt(number of features)
+    public int maxDepth = UNLIMITED;
+    public int minSamplesLeaf = 1;
+    public int minSamplesSplit = 2; // Nodes with fewer rows are not split
+    public double minImpurityDecrease = 0.0; // Smallest size-weighted Gini decrease worth a split
+    public int maxLeafNodes = UNLIMITED; // When limited, trees are grown best-first
+    // Every class present weighs the same in total, however rare: forests draw their bootstrap
+    // samples that way, and trees weight the Gini impurity and leaf votes by class
+    public boolean balanceClasses = true;
+    // Extra weight per class on top of balancing, e.g. {1, 2} trades some accuracy for recall of
+    // Pass; null (the default) means 1 for every class
+    public double[] classWeights;
+    public double sampleFraction = 1.0; // Bootstrap size as a fraction of the training rows (capped at 10000)
+    public long timeLimitMillis = 5 * 60 * 1000; // Budget for a whole train() call; 0 means none
+    public long treeTimeLimitMillis; // Budget for growing one tree; 0 means none
+
+    public TrainingParams() {
+    }
+
+    public TrainingParams(int numTrees, int maxFeatures) {
+        this.numTrees = numTrees;
+        this.maxFeatures = maxFeatures;
+    }
+
+    public TrainingParams copy() {
+        TrainingParams p = new TrainingParams(numTrees, maxFeatures);
+        p.maxDepth = maxDepth;
+        p.minSamplesLeaf = minSamplesLeaf;
+        p.minSamplesSplit = minSamplesSplit;
+        p.minImpurityDecrease = minImpurityDecrease;
+        p.maxLeafNodes = maxLeafNodes;
+        p.balanceClasses = balanceClasses;
+        p.classWeights = classWeights == null ? null : classWeights.clone();
+        p.sampleFraction = sampleFraction;
+        p.timeLimitMillis = timeLimitMillis;
+        p.treeTimeLimitMillis = treeTimeLimitMillis;
+        return p;
+    }
+
+    // Features to consider per split for a dataset with the given number of features
+    int featuresPerSplit(int totalFeatures) {
+        return maxFeatures > 0 ? maxFeatures : Math.max(1, (int) Math.sqrt(totalFeatures));
+    }
+
+    @Override
+    public String toString() {
+        return "trees=" + numTrees + ", maxFeatures=" + maxFeatures
+            + ", maxDepth=" + (maxDepth == UNLIMITED ? "none" : String.valueOf(maxDepth))
+            + ", minSamplesLeaf=" + minSamplesLeaf + ", minSamplesSplit=" + minSamplesSplit
+            + ", minImpurityDecrease=" + minImpurityDecrease
+            + ", maxLeafNodes=" + (maxLeafNodes == UNLIMITED ? "none" : String.valueOf(maxLeafNodes))
+            + ", balanceClasses=" + balanceClasses
+            + (classWeights != null ? ", classWeights=" + Arrays.toString(classWeights) : "")
+            + ", sampleFraction=" + sampleFraction
+            + (timeLimitMillis > 0 ? ", timeLimit=" + timeLimitMillis + "ms" : "")
+            + (treeTimeLimitMillis > 0 ? ", treeTimeLimit=" + treeTimeLimitMillis + "ms" : "");
+    }
+}
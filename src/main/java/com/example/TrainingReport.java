@@ -0,0 +1,88 @@
+package com.example;
+
+import java.util.*;
+
+// Outcome of one RandomForest training run.
+// Every requested tree ends up in exactly one of three groups:
+// completed (fully grown), truncated (stopped by a time limit but kept, since unsplit nodes
+// became leaves) or cancelled (not started in time, or stopped before its first split, and left out).
+public class TrainingReport {
+    private final int treesRequested;
+    private int treesCompleted;
+    private int treesTruncated;
+    private int treesCancelled;
+    private final List<Long> treeNanos = new ArrayList<>(); // Growing time of each tree that was started
+    private long totalNanos;
+    private boolean finished; // Set by finish(); trees reporting later are not added to the forest
+
+    TrainingReport(int treesRequested) {
+        this.treesRequested = treesRequested;
+    }
+
+    synchronized void completed(long nanos) {
+        treesCompleted++;
+        treeNanos.add(nanos);
+    }
+
+    synchronized void truncated(long nanos) {
+        treesTruncated++;
+        treeNanos.add(nanos);
+    }
+
+    synchronized void cancelled(long nanos) {
+        treesCancelled++;
+        if (nanos > 0) treeNanos.add(nanos);
+    }
+
+    // Called once training is over; trees that never reported are counted as cancelled
+    synchronized void finish(long totalNanos) {
+        this.totalNanos = totalNanos;
+        this.finished = true;
+        treesCancelled = treesRequested - treesCompleted - treesTruncated;
+    }
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public int getTreesRequested() {
+        return treesRequested;
+    }
+
+    public synchronized int getTreesCompleted() {
+        return treesCompleted;
+    }
+
+    public synchronized int getTreesTruncated() {
+        return treesTruncated;
+    }
+
+    public synchronized int getTreesCancelled() {
+        return treesCancelled;
+    }
+
+    // Trees that made it into the forest
+    public synchronized int getTreesKept() {
+        return treesCompleted + treesTruncated;
+    }
+
+    public synchronized boolean isComplete() {
+        return treesCompleted == treesRequested;
+    }
+
+    public synchronized long[] getTreeNanos() {
+        long[] out = new long[treeNanos.size()];
+        for (int i = 0; i < out.length; i++) out[i] = treeNanos.get(i);
+        return out;
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return treesCompleted + " of " + treesRequested + " trees completed, " + treesTruncated + " truncated, "
+            + treesCancelled + " cancelled in " + totalNanos / 1_000_000 + " ms";
+    }
+}
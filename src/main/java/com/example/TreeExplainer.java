@@ -0,0 +1,356 @@
+package com.example;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Exact SHAP values of a forest's votes for one class: how much each feature of an input moved
+// the share of trees voting for the class away from its average over the training data.
+// Computed on the trees themselves with the polynomial-time TreeSHAP path algorithm
+// (Lundberg et al., "Consistent Individualized Feature Attribution for Tree Ensembles"): one walk
+// per tree keeps, for every feature on the current path, the weight of each subset size, with
+// branches the input does not take weighted by the training rows that went down them (the node
+// covers). The values of an input always add up to its vote share minus the base value.
+public class TreeExplainer {
+    private static final int ROWS_PER_TASK = 64; // Inputs explained per batch task
+    private static final int MIN_TREES_PER_TASK = 8; // Fewer trees are not worth a task of their own
+
+    private final Tree[] trees;
+    private final int numFeatures;
+    private final int targetClass;
+    private final double baseValue; // Vote share averaged over the training rows of each tree
+    private final int maxDepth; // Deepest tree, which sizes the walk's scratch space
+    private TrainingExecutor executor = TrainingExecutor.SHARED;
+
+    public TreeExplainer(List<DecisionTree> forest, int numFeatures, int targetClass) {
+        DecisionTree[] ts = forest.toArray(new DecisionTree[0]);
+        if (ts.length == 0) throw new IllegalArgumentException("Cannot explain a forest without trees");
+        this.numFeatures = numFeatures;
+        this.targetClass = targetClass;
+        trees = new Tree[ts.length];
+        double base = 0;
+        int depth = 0;
+        for (int t = 0; t < ts.length; t++) {
+            trees[t] = new Tree(ts[t], targetClass);
+            base += trees[t].expected;
+            depth = Math.max(depth, trees[t].depth);
+        }
+        baseValue = base / ts.length;
+        maxDepth = depth;
+    }
+
+    // Chooses where the trees or rows are spread (TrainingExecutor.SHARED by default)
+    public void setExecutor(TrainingExecutor executor) {
+        this.executor = executor;
+    }
+
+    public int getTargetClass() {
+        return targetClass;
+    }
+
+    public double getBaseValue() {
+        return baseValue;
+    }
+
+    // Explains one input; the trees are split between tasks that each walk their own share
+    public Explanation explain(double[] feats) {
+        int tasks = Math.min(Runtime.getRuntime().availableProcessors(), trees.length / MIN_TREES_PER_TASK);
+        if (tasks < 2) return new Explanation(baseValue, walk(feats, 0, trees.length, new Scratch(maxDepth)));
+        double[][] parts = new double[tasks][];
+        try (TaskScope scope = executor.open(tasks)) {
+            for (int k = 0; k < tasks; k++) {
+                int task = k;
+                int from = (int) ((long) trees.length * k / tasks);
+                int to = (int) ((long) trees.length * (k + 1) / tasks);
+                scope.fork(() -> parts[task] = walk(feats, from, to, new Scratch(maxDepth)));
+            }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while explaining", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Explanation failed", e.getCause());
+        }
+        double[] phi = new double[numFeatures];
+        for (double[] part : parts) {
+            for (int f = 0; f < numFeatures; f++) phi[f] += part[f];
+        }
+        return new Explanation(baseValue, phi);
+    }
+
+    // Explains the given rows of a dataset, e.g. a whole cohort. Rows are split into chunks
+    // explained concurrently, each reading rows through one buffer and reusing one scratch space.
+    public Explanation[] explain(FeatureMatrix data, int[] rows) {
+        Explanation[] out = new Explanation[rows.length];
+        int chunks = (rows.length + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        if (chunks < 2) {
+            explainRange(data, rows, out, 0, rows.length);
+            return out;
+        }
+        try (TaskScope scope = executor.open(chunks)) {
+            for (int c = 0; c < chunks; c++) {
+                int from = c * ROWS_PER_TASK;
+                int to = Math.min(rows.length, from + ROWS_PER_TASK);
+                scope.fork(() -> explainRange(data, rows, out, from, to));
+            }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while explaining", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Explanation failed", e.getCause());
+        }
+        return out;
+    }
+
+    private void explainRange(FeatureMatrix data, int[] rows, Explanation[] out, int from, int to) {
+        double[] buf = new double[data.getNumFeatures()];
+        Scratch s = new Scratch(maxDepth);
+        for (int i = from; i < to; i++) {
+            data.copyRow(rows[i], buf);
+            out[i] = new Explanation(baseValue, walk(buf, 0, trees.length, s));
+        }
+    }
+
+    // SHAP values of trees [from, to) for the input, each tree weighing 1 / (number of trees)
+    private double[] walk(double[] x, int from, int to, Scratch s) {
+        double[] phi = new double[numFeatures];
+        double scale = 1.0 / trees.length;
+        for (int t = from; t < to; t++) walk(trees[t], x, phi, scale, s);
+        return phi;
+    }
+
+    // Adds one tree's SHAP values for x to phi. Iterative version of the recursive algorithm:
+    // each node gets its own segment of the path arrays, right after its parent's, so the
+    // parent's path is still intact when the second child is visited.
+    private static void walk(Tree tree, double[] x, double[] phi, double scale, Scratch s) {
+        int sp = 0;
+        s.push(sp++, 0, 0, 0, 1, 1, -1);
+        while (sp > 0) {
+            sp--;
+            int node = s.stackNode[sp];
+            int depth = s.stackDepth[sp]; // Features on the path, not counting the dummy first entry
+            int off = s.stackParent[sp] + depth + 1;
+            System.arraycopy(s.feature, s.stackParent[sp], s.feature, off, depth);
+            System.arraycopy(s.zero, s.stackParent[sp], s.zero, off, depth);
+            System.arraycopy(s.one, s.stackParent[sp], s.one, off, depth);
+            System.arraycopy(s.weight, s.stackParent[sp], s.weight, off, depth);
+            s.extend(off, depth, s.stackZero[sp], s.stackOne[sp], s.stackFeature[sp]);
+
+            int f = tree.feature[node];
+            if (f < 0) {
+                double v = tree.value[node] * scale;
+                if (v == 0) continue;
+                for (int i = 1; i <= depth; i++) {
+                    double w = s.unwoundSum(off, depth, i);
+                    phi[s.feature[off + i]] += w * (s.one[off + i] - s.zero[off + i]) * v;
+                }
+                continue;
+            }
+
+            boolean goesLeft = x[f] <= tree.threshold[node];
+            int hot = goesLeft ? tree.left[node] : tree.right[node];
+            int cold = goesLeft ? tree.right[node] : tree.left[node];
+            double cover = tree.cover[node];
+            double hotZero = cover > 0 ? tree.cover[hot] / cover : 0.5;
+            double coldZero = cover > 0 ? tree.cover[cold] / cover : 0.5;
+
+            // A feature split on again higher up is taken off the path and its fractions carried over
+            double inZero = 1, inOne = 1;
+            int k = 1;
+            while (k <= depth && s.feature[off + k] != f) k++;
+            if (k <= depth) {
+                inZero = s.zero[off + k];
+                inOne = s.one[off + k];
+                s.unwind(off, depth, k);
+                depth--;
+            }
+            if (coldZero * inZero > 0) s.push(sp++, cold, off, depth + 1, coldZero * inZero, 0, f); // Else adds nothing
+            s.push(sp++, hot, off, depth + 1, hotZero * inZero, inOne, f);
+        }
+    }
+
+    // One tree in arrays, nodes in pre-order with the root at 0
+    private static class Tree {
+        final int[] feature; // -1 for a leaf
+        final double[] threshold;
+        final int[] left, right;
+        final double[] cover;
+        final double[] value; // 1 for a leaf voting for the target class, else 0
+        final double expected; // Cover-weighted mean of the leaf values
+        final int depth;
+
+        Tree(DecisionTree t, int targetClass) {
+            List<DecisionTree.TreeNode> nodes = new ArrayList<>();
+            Deque<DecisionTree.TreeNode> stack = new ArrayDeque<>();
+            stack.push(t.root);
+            while (!stack.isEmpty()) {
+                DecisionTree.TreeNode node = stack.pop();
+                nodes.add(node);
+                if (node instanceof DecisionTree.DecisionTreeNode) {
+                    stack.push(((DecisionTree.DecisionTreeNode) node).right);
+                    stack.push(((DecisionTree.DecisionTreeNode) node).left);
+                }
+            }
+            int n = nodes.size();
+            Map<DecisionTree.TreeNode, Integer> ids = new IdentityHashMap<>();
+            for (int i = 0; i < n; i++) ids.put(nodes.get(i), i);
+            feature = new int[n];
+            threshold = new double[n];
+            left = new int[n];
+            right = new int[n];
+            cover = new double[n];
+            value = new double[n];
+            int[] level = new int[n];
+            double sum = 0;
+            int deepest = 0;
+            for (int i = 0; i < n; i++) {
+                DecisionTree.TreeNode node = nodes.get(i);
+                cover[i] = node.cover;
+                deepest = Math.max(deepest, level[i]);
+                if (node instanceof DecisionTree.DecisionTreeNode) {
+                    DecisionTree.DecisionTreeNode dtn = (DecisionTree.DecisionTreeNode) node;
+                    feature[i] = dtn.featureIndex;
+                    threshold[i] = dtn.threshold;
+                    left[i] = ids.get(dtn.left);
+                    right[i] = ids.get(dtn.right);
+                    level[left[i]] = level[i] + 1;
+                    level[right[i]] = level[i] + 1;
+                } else {
+                    feature[i] = -1;
+                    value[i] = ((DecisionTree.LeafTreeNode) node).label == targetClass ? 1 : 0;
+                    sum += node.cover * value[i];
+                }
+            }
+            expected = cover[0] > 0 ? sum / cover[0] : value[0];
+            depth = deepest;
+        }
+    }
+
+    // Path arrays and the explicit stack of one walk, reused from tree to tree
+    private static class Scratch {
+        final int[] feature;
+        final double[] zero; // Fraction of the training rows that follow the path at this split
+        final double[] one; // 1 if the input follows the path at this split, else 0
+        final double[] weight; // Weight of the subsets of each size
+        final int[] stackNode, stackParent, stackDepth, stackFeature;
+        final double[] stackZero, stackOne;
+
+        Scratch(int maxDepth) {
+            int size = (maxDepth + 2) * (maxDepth + 3) / 2 + 1; // Segments of lengths 1, 2, ... maxDepth + 1
+            feature = new int[size];
+            zero = new double[size];
+            one = new double[size];
+            weight = new double[size];
+            int frames = maxDepth + 2;
+            stackNode = new int[frames];
+            stackParent = new int[frames];
+            stackDepth = new int[frames];
+            stackFeature = new int[frames];
+            stackZero = new double[frames];
+            stackOne = new double[frames];
+        }
+
+        void push(int at, int node, int parent, int depth, double zeroFraction, double oneFraction, int f) {
+            stackNode[at] = node;
+            stackParent[at] = parent;
+            stackDepth[at] = depth;
+            stackZero[at] = zeroFraction;
+            stackOne[at] = oneFraction;
+            stackFeature[at] = f;
+        }
+
+        // Appends a split on feature f to the path at off, which holds depth entries
+        void extend(int off, int depth, double zeroFraction, double oneFraction, int f) {
+            feature[off + depth] = f;
+            zero[off + depth] = zeroFraction;
+            one[off + depth] = oneFraction;
+            weight[off + depth] = depth == 0 ? 1 : 0;
+            for (int i = depth - 1; i >= 0; i--) {
+                weight[off + i + 1] += oneFraction * weight[off + i] * (i + 1) / (depth + 1);
+                weight[off + i] = zeroFraction * weight[off + i] * (depth - i) / (depth + 1);
+            }
+        }
+
+        // Undoes extend() for entry k, leaving depth entries
+        void unwind(int off, int depth, int k) {
+            double o = one[off + k], z = zero[off + k];
+            double next = weight[off + depth];
+            for (int i = depth - 1; i >= 0; i--) {
+                if (o != 0) {
+                    double tmp = weight[off + i];
+                    weight[off + i] = next * (depth + 1) / ((i + 1) * o);
+                    next = tmp - weight[off + i] * z * (depth - i) / (depth + 1);
+                } else {
+                    weight[off + i] = weight[off + i] * (depth + 1) / (z * (depth - i));
+                }
+            }
+            for (int i = k; i < depth; i++) {
+                feature[off + i] = feature[off + i + 1];
+                zero[off + i] = zero[off + i + 1];
+                one[off + i] = one[off + i + 1];
+            }
+        }
+
+        // Total weight the path would have without entry k, without changing it
+        double unwoundSum(int off, int depth, int k) {
+            double o = one[off + k], z = zero[off + k];
+            double next = weight[off + depth];
+            double total = 0;
+            for (int i = depth - 1; i >= 0; i--) {
+                if (o != 0) {
+                    double tmp = next * (depth + 1) / ((i + 1) * o);
+                    total += tmp;
+                    next = weight[off + i] - tmp * z * (depth - i) / (depth + 1);
+                } else if (z != 0) {
+                    total += weight[off + i] / z * (depth + 1) / (depth - i);
+                }
+            }
+            return total;
+        }
+    }
+
+    // Per-feature contributions to one input's vote share for the target class
+    public static class Explanation {
+        public final double baseValue; // Vote share averaged over the training data
+        private final double[] values;
+
+        Explanation(double baseValue, double[] values) {
+            this.baseValue = baseValue;
+            this.values = values;
+        }
+
+        public double getValue(int feature) {
+            return values[feature];
+        }
+
+        public double[] getValues() {
+            return values.clone();
+        }
+
+        // Share of trees voting for the target class: the base value plus every contribution
+        public double getPrediction() {
+            double p = baseValue;
+            for (double v : values) p += v;
+            return p;
+        }
+
+        // Up to n features that raised (or lowered) the vote share the most, strongest first
+        public int[] top(int n, boolean raised) {
+            Integer[] order = new Integer[values.length];
+            for (int f = 0; f < values.length; f++) order[f] = f;
+            double sign = raised ? 1 : -1;
+            Arrays.sort(order, (a, b) -> Double.compare(sign * values[b], sign * values[a]));
+            int count = 0;
+            while (count < Math.min(n, order.length) && sign * values[order[count]] > 0) count++;
+            int[] out = new int[count];
+            for (int i = 0; i < count; i++) out[i] = order[i];
+            return out;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("base=%.3f, prediction=%.3f, values=%s", baseValue, getPrediction(),
+                Arrays.toString(values));
+        }
+    }
+}
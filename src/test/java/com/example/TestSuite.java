@@ -2,8 +2,10 @@ package com.example;
 
 import static org.junit.jupiter.api.Assertions.*;
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.*;
 
 public class TestSuite {
@@ -16,6 +18,12 @@ public class TestSuite {
         return tempFile;
     }
 
+    private double[] nodeFeatures(Node n) {
+        double[] f = new double[n.getNumFeatures()];
+        for (int i = 0; i < f.length; i++) f[i] = n.getFeature(i);
+        return f;
+    }
+
     // Node Tests
     @Test
     public void testFeatureRetrieval() {
@@ -85,6 +93,151 @@ public class TestSuite {
         tempFile.delete();
     }
 
+    @Test
+    public void testStudentDataLoadsUnchanged() throws IOException {
+        DataLoader.LoadResult result = DataLoader.loadData("src/main/java/com/example/student_data.csv");
+        assertEquals(6606, result.data.size());
+        assertEquals(1, result.linesSkipped);
+        assertEquals(229, result.imputedCount);
+        long checksum = 17; // Recorded with the String-based loader
+        for (Node n : result.data) {
+            for (int i = 0; i < n.getNumFeatures(); i++) {
+                checksum = checksum * 31 + Double.doubleToLongBits(n.getFeature(i));
+            }
+            checksum = checksum * 31 + n.getLabel();
+        }
+        assertEquals(2867272442144457065L, checksum);
+    }
+
+    @Test
+    public void testDataProfileReportsColumnQuality() throws IOException {
+        String csvContent = "Hours Studied,Motivation Level,Final Score\n" +
+                          "10,High,75\n" +
+                          "20,Low,85\n" +
+                          ",High,60\n" +       // Missing hours
+                          "200,Medium,70\n" +  // More hours than a week has
+                          "30,Sky,65\n" +      // Unknown category
+                          "40,High\n" +        // Too few fields
+                          "40,High,abc\n";     // Score is not a number
+        File tempFile = createTempCSVFile(csvContent);
+        DataLoader.LoadResult result = DataLoader.loadData(tempFile.getAbsolutePath());
+        tempFile.delete();
+        DataProfile profile = result.profile;
+        assertEquals(6, profile.getLines());
+        assertEquals(1, profile.getMalformedLines());
+
+        DataProfile.Column hours = profile.get("hours_studied");
+        assertEquals(6, hours.getCount());
+        assertEquals(1, hours.getMissing());
+        assertEquals(1, hours.getInvalid());
+        assertEquals(10, hours.getMin());
+        assertEquals(40, hours.getMax());
+        assertEquals(25, hours.getMean(), 1e-12);
+        assertEquals(125, hours.getVariance(), 1e-9);
+        assertEquals(20, hours.getQuantile(0.5));
+        assertEquals(25, result.fillValues[0], 1e-12);
+
+        DataProfile.Column motivation = profile.get(1);
+        assertArrayEquals(new long[]{1, 1, 3}, motivation.getCategoryCounts()); // Low, Medium, High
+        assertEquals(1, motivation.getInvalid());
+        assertEquals(2.0, motivation.getFillValue());
+        assertEquals(1, profile.get(2).getInvalid());
+        assertEquals(Arrays.asList("Hours Studied: 17% of values invalid", "Hours Studied: 17% of values missing",
+            "Motivation Level: 17% of values invalid", "Final Score: 17% of values invalid"), profile.getProblems(0.1));
+        assertTrue(profile.getProblems(0.2).isEmpty());
+
+        // A file of several chunks profiled in parallel matches one pass over all its values
+        DataLoader.LoadResult student = DataLoader.loadData("src/main/java/com/example/student_data.csv");
+        DataProfile.Column attendance = student.profile.get("Attendance");
+        List<Double> values = new ArrayList<>();
+        try (BufferedReader r = new BufferedReader(new FileReader("src/main/java/com/example/student_data.csv"))) {
+            int col = Arrays.asList(r.readLine().split(",")).indexOf("Attendance");
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] cells = line.split(",", -1);
+                if (cells.length == student.profile.size() && !cells[col].isEmpty()) values.add(Double.parseDouble(cells[col]));
+            }
+        }
+        double mean = values.stream().mapToDouble(Double::doubleValue).average().getAsDouble();
+        double var = values.stream().mapToDouble(v -> (v - mean) * (v - mean)).sum() / values.size();
+        assertEquals(values.size(), attendance.getValid());
+        assertEquals(mean, attendance.getMean(), 1e-9);
+        assertEquals(var, attendance.getVariance(), 1e-6);
+        Collections.sort(values);
+        for (double q : new double[]{0.1, 0.5, 0.9}) {
+            double v = attendance.getQuantile(q);
+            double rank = (double) values.stream().filter(x -> x <= v).count() / values.size();
+            assertEquals(q, rank, 0.03, "Quantile " + q);
+        }
+
+        // Fewer than k values are kept exactly; k values are already compacted
+        QuantileSketch exact = new QuantileSketch(8);
+        for (int i = 7; i >= 1; i--) exact.add(i);
+        for (int i = 1; i <= 7; i++) assertEquals(i, exact.quantile(i / 7.0));
+        exact.add(8);
+        assertEquals(8, exact.getCount());
+        assertEquals(1, exact.quantile(2 / 8.0)); // Only 1, 3, 5 and 7 are left, each standing for two values
+
+        // Many levels, filled in two halves and merged
+        QuantileSketch first = new QuantileSketch(32), second = new QuantileSketch(32);
+        for (int i = 0; i < 50000; i++) (i % 2 == 0 ? first : second).add(i);
+        first.merge(second);
+        assertEquals(50000, first.getCount());
+        for (double q : new double[]{0.1, 0.5, 0.9}) assertEquals(q * 50000, first.quantile(q), 50000 * 0.05);
+    }
+
+    @Test
+    public void testNumberParsingMatchesParseDouble() {
+        String[] samples = {"0", "-0", "7", "00012", "2.5", ".5", "5.", "+3", "99.99999999999999999",
+            "3.14159265358979", "12345678901234567890", "1e2", "0.1", "167.9", "100.1"};
+        for (String s : samples) {
+            assertEquals(Double.parseDouble(s), DataLoader.parseNumber(s.toCharArray(), 0, s.length()), s);
+        }
+        for (String s : new String[]{"", "-", ".", "abc", "1.2.3"}) {
+            assertTrue(Double.isNaN(DataLoader.parseNumber(s.toCharArray(), 0, s.length())), s);
+        }
+    }
+
+    @Test
+    public void testFeatureSchemaFromHeader() throws IOException {
+        FeatureSchema schema = FeatureSchema.fromHeader(
+            new String[]{"Parental_Education_Level", "sleep hours", "Motivation Level", "Shoe Size"});
+        assertEquals("Parental Education Level", schema.get(0).name);
+        assertEquals(2, schema.get(0).encode("Postgraduate"));
+        assertEquals(2, schema.get(2).encode("High"));
+        assertEquals(0, schema.get(2).encode("Low"));
+        assertEquals(-1, schema.get(2).encode("Hig"));
+        assertEquals(-1, schema.get(2).encode("Yes"));
+        assertFalse(schema.get(3).isCategorical());
+        assertEquals(16, FeatureSchema.STUDENT.indexOf("Parental Education"));
+        assertArrayEquals(new int[]{0, 1, 5, 7, 4, 9, 14}, FeatureSchema.STUDENT.getControllable());
+
+        // Uploads must have the student columns by name and in order, not just as many of them
+        String[] names = FeatureSchema.STUDENT.getNames();
+        assertTrue(FeatureSchema.STUDENT.sameColumns(FeatureSchema.fromHeader(names)));
+        String[] swapped = names.clone();
+        swapped[0] = names[1];
+        swapped[1] = names[0];
+        assertFalse(FeatureSchema.STUDENT.sameColumns(FeatureSchema.fromHeader(swapped)));
+        String[] renamed = names.clone();
+        renamed[3] = "Shoe Size";
+        assertFalse(FeatureSchema.STUDENT.sameColumns(FeatureSchema.fromHeader(renamed)));
+        assertFalse(FeatureSchema.STUDENT.sameColumns(null));
+
+        // Ranges follow the column name, not its position
+        String csvContent = "Motivation Level,Sleep Hours,Final Score\n" +
+                          "High,8,75\n" +
+                          "Low,25,85\n" +   // More sleep than hours in a day
+                          "Medium,,60\n";   // Missing value takes the column mean
+        File tempFile = createTempCSVFile(csvContent);
+        DataLoader.LoadResult result = DataLoader.loadData(tempFile.getAbsolutePath());
+        assertEquals(2, result.data.size());
+        assertEquals(1, result.linesSkipped);
+        assertEquals(2.0, result.data.get(0).getFeature(0));
+        assertEquals(8.0, result.data.get(1).getFeature(1));
+        tempFile.delete();
+    }
+
     // Decision Tree Tests
     @Test
     public void testTreeTraining() {
@@ -98,7 +251,272 @@ public class TestSuite {
         assertNotNull(tree.getFeatureImportances());
     }
 
+    @Test
+    public void testTreeGrowthLimits() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            double[] f = {rand.nextInt(50), rand.nextInt(50)};
+            data.add(new Node(f, rand.nextInt(4) == 0 ? 1 - (f[0] > 25 ? 1 : 0) : (f[0] > 25 ? 1 : 0)));
+        }
+
+        TrainingParams depthLimited = new TrainingParams(1, 2);
+        depthLimited.maxDepth = 3;
+        DecisionTree shallow = new DecisionTree(depthLimited, 2);
+        shallow.train(data);
+        assertTrue(shallow.getDepth() <= 3);
+
+        TrainingParams leafLimited = new TrainingParams(1, 2);
+        leafLimited.maxLeafNodes = 8;
+        DecisionTree bestFirst = new DecisionTree(leafLimited, 2);
+        bestFirst.train(data);
+        assertTrue(bestFirst.getLeafCount() <= 8);
+
+        TrainingParams gainLimited = new TrainingParams(1, 2);
+        gainLimited.minImpurityDecrease = 1.0; // No split can reach this
+        DecisionTree stump = new DecisionTree(gainLimited, 2);
+        stump.train(data);
+        assertEquals(1, stump.getLeafCount());
+
+        DecisionTree full = new DecisionTree(2, 2);
+        full.train(data);
+        assertTrue(full.getLeafCount() > 8);
+    }
+
+    @Test
+    public void testCategoricalSplitFinding() {
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int code = i % 4; // Category codes 0..3; codes 2 and 3 pass
+            data.add(new Node(new double[]{code, i + 0.5, 40 + i}, code >= 2 ? 1 : 0));
+        }
+        Dataset ds = new Dataset(data);
+        assertEquals(4, ds.getCategoryCount(0));
+        assertEquals(0, ds.getCategoryCount(1)); // Fractional values
+        assertEquals(0, ds.getCategoryCount(2)); // Too many codes
+        assertEquals(4, OffHeapDataset.copyOf(ds).getCategoryCount(0));
+
+        TrainingParams p = new TrainingParams(1, 3);
+        DecisionTree tree = new DecisionTree(p, 3);
+        tree.train(ds, ds.allRows());
+        List<String> splits = new ArrayList<>();
+        tree.forEachSplit((f, t) -> splits.add(f + ":" + t));
+        assertEquals(Arrays.asList("0:1.0"), splits);
+        for (int code = 0; code < 4; code++) {
+            assertEquals(code >= 2 ? 1 : 0, tree.predict(new double[]{code, 0, 0}));
+        }
+    }
+
+    @Test
+    public void testSortByKey() {
+        Random rand = new Random(13);
+        List<double[]> cases = new ArrayList<>();
+        cases.add(new double[0]);
+        cases.add(new double[]{3});
+        cases.add(new double[]{2, 1});
+        for (int n : new int[]{5, 16, 17, 18, 100, 2000}) {
+            double[] sorted = new double[n], reversed = new double[n], dups = new double[n], same = new double[n];
+            double[] runs = new double[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = i;
+                reversed[i] = n - i;
+                dups[i] = rand.nextInt(4);
+                same[i] = 7;
+                runs[i] = (i % 8) + (i / 8) * 0.5; // Short ascending runs that overlap
+            }
+            Collections.addAll(cases, sorted, reversed, dups, same, runs);
+        }
+        for (double[] original : cases) {
+            double[] keys = original.clone();
+            int[] vals = new int[keys.length];
+            for (int i = 0; i < vals.length; i++) vals[i] = i;
+            DecisionTree.sortByKey(keys, vals, 0, keys.length - 1);
+            boolean[] seen = new boolean[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (i > 0) assertTrue(keys[i - 1] <= keys[i], Arrays.toString(original));
+                assertEquals(original[vals[i]], keys[i]); // Values moved with their keys
+                assertFalse(seen[vals[i]]);
+                seen[vals[i]] = true;
+            }
+        }
+
+        // Only [lo, hi] is touched
+        double[] keys = {9, 4, 3, 2, 1, 0};
+        int[] vals = {0, 1, 2, 3, 4, 5};
+        DecisionTree.sortByKey(keys, vals, 1, 4);
+        assertArrayEquals(new double[]{9, 1, 2, 3, 4, 0}, keys);
+        assertArrayEquals(new int[]{0, 4, 3, 2, 1, 5}, vals);
+    }
+
+    @Test
+    public void testPartitionBoundaries() {
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 6; i++) data.add(new Node(new double[]{i}, 0));
+        Dataset ds = new Dataset(data);
+        int[] rows = {5, 2, 3, 3, 0, 4, 1};
+
+        // Rows equal to the threshold go left; only [start, end) moves
+        int mid = DecisionTree.partition(ds, rows, 1, 6, 0, 3);
+        assertEquals(5, mid);
+        assertEquals(5, rows[0]);
+        assertEquals(1, rows[6]);
+        for (int i = 1; i < 6; i++) assertEquals(i < mid, ds.getFeature(rows[i], 0) <= 3);
+        int[] moved = Arrays.copyOfRange(rows, 1, 6);
+        Arrays.sort(moved);
+        assertArrayEquals(new int[]{0, 2, 3, 3, 4}, moved);
+
+        assertEquals(7, DecisionTree.partition(ds, rows, 0, 7, 0, 5)); // Everything left
+        assertEquals(0, DecisionTree.partition(ds, rows, 0, 7, 0, -1)); // Everything right
+        assertEquals(2, DecisionTree.partition(ds, rows, 2, 2, 0, 3)); // Empty range
+    }
+
+    @Test
+    public void testTreeMatchesListGrower() {
+        Random rand = new Random(21);
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            double[] f = {rand.nextInt(3), Math.round(rand.nextDouble() * 40) / 2.0, rand.nextGaussian(), rand.nextInt(20)};
+            boolean pass = f[1] + 5 * f[0] + 3 * f[2] > 15;
+            data.add(new Node(f, rand.nextInt(6) == 0 ^ pass ? 1 : 0)); // Labels with some noise
+        }
+        int[] sample = new int[data.size()]; // A bootstrap sample, duplicates included
+        List<Node> sampled = new ArrayList<>();
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = rand.nextInt(data.size());
+            sampled.add(data.get(sample[i]));
+        }
+        Dataset ds = new Dataset(data);
+
+        for (int maxDepth : new int[]{3, TrainingParams.UNLIMITED}) {
+            for (long seed = 1; seed <= 5; seed++) {
+                TrainingParams p = new TrainingParams(1, 2);
+                p.maxDepth = maxDepth;
+                p.balanceClasses = false; // The list grower counted rows, not class weights
+                DecisionTree tree = new DecisionTree(p, 4);
+                tree.setSeed(seed);
+                tree.train(ds, sample.clone());
+                String expected = listGrownTree(sampled, 0, maxDepth, 2, new Random(seed));
+                assertEquals(expected, describeTree(tree.root), "seed " + seed + ", depth " + maxDepth);
+            }
+        }
+    }
+
+    // The tree the list-based grower built before rows were partitioned in place: every
+    // distinct value of each sampled feature is tried by copying the rows into left and right lists.
+    // Splits whose gains differ only by rounding are ties, kept in the order found, as DecisionTree does.
+    private static String listGrownTree(List<Node> data, int depth, int maxDepth, int maxFeatures, Random rand) {
+        int pass = 0;
+        for (Node n : data) pass += n.getLabel();
+        if (pass == 0 || pass == data.size() || depth >= maxDepth || data.size() < 2) {
+            return "L" + (data.size() - pass > pass ? 0 : 1);
+        }
+        int nf = data.get(0).getNumFeatures();
+        int[] feats = new int[nf];
+        for (int i = 0; i < nf; i++) feats[i] = i;
+        for (int i = nf - 1; i > 0; i--) {
+            int idx = rand.nextInt(i + 1);
+            int tmp = feats[idx];
+            feats[idx] = feats[i];
+            feats[i] = tmp;
+        }
+        double baseImp = listGini(data);
+        double bestGain = 0, bestT = 0;
+        int bestF = -1;
+        List<Node> bestLeft = null, bestRight = null;
+        for (int f : Arrays.copyOf(feats, maxFeatures)) {
+            double[] thresholds = data.stream().mapToDouble(d -> d.getFeature(f)).distinct().sorted().toArray();
+            for (double t : thresholds) {
+                List<Node> left = new ArrayList<>(), right = new ArrayList<>();
+                for (Node d : data) (d.getFeature(f) <= t ? left : right).add(d);
+                if (left.isEmpty() || right.isEmpty()) continue;
+                double gain = baseImp - (left.size() * listGini(left) + right.size() * listGini(right)) / data.size();
+                if (gain > bestGain + 1e-12) { // Equally good splits go to the first one found
+                    bestGain = gain;
+                    bestF = f;
+                    bestT = t;
+                    bestLeft = left;
+                    bestRight = right;
+                }
+            }
+        }
+        if (bestF < 0) return "L" + (data.size() - pass > pass ? 0 : 1);
+        String left = listGrownTree(bestLeft, depth + 1, maxDepth, maxFeatures, rand);
+        String right = listGrownTree(bestRight, depth + 1, maxDepth, maxFeatures, rand);
+        return "(" + bestF + "<=" + bestT + " " + left + " " + right + ")";
+    }
+
+    private static double listGini(List<Node> data) {
+        int[] counts = new int[2];
+        for (Node n : data) counts[n.getLabel()]++;
+        double imp = 1.0;
+        for (int c : counts) {
+            double p = (double) c / data.size();
+            imp -= p * p;
+        }
+        return imp;
+    }
+
+    private static String describeTree(DecisionTree.TreeNode node) {
+        if (node instanceof DecisionTree.LeafTreeNode) return "L" + ((DecisionTree.LeafTreeNode) node).label;
+        DecisionTree.DecisionTreeNode dtn = (DecisionTree.DecisionTreeNode) node;
+        return "(" + dtn.featureIndex + "<=" + dtn.threshold + " " + describeTree(dtn.left) + " "
+            + describeTree(dtn.right) + ")";
+    }
+
+    @Test
+    public void testTreeStopsAtDeadline() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(8);
+        for (int i = 0; i < 500; i++) {
+            double[] f = {rand.nextInt(100), rand.nextInt(100)};
+            data.add(new Node(f, f[0] + f[1] > 100 ? 1 : 0));
+        }
+        Dataset ds = new Dataset(data);
+
+        DecisionTree late = new DecisionTree(2, 2);
+        assertFalse(late.train(ds, ds.allRows(), System.nanoTime())); // Deadline already passed
+        assertTrue(late.isTruncated());
+        assertEquals(1, late.getLeafCount()); // Still a usable tree
+        int label = late.predict(new double[]{50, 50});
+        assertTrue(label == 0 || label == 1);
+
+        DecisionTree onTime = new DecisionTree(2, 2);
+        assertTrue(onTime.train(ds, ds.allRows(), DecisionTree.NO_DEADLINE));
+        assertTrue(onTime.getLeafCount() > 1);
+    }
+
     // Random Forest Tests
+    @Test
+    public void testTrainingReportUnderTimeLimit() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(4);
+        for (int i = 0; i < 3000; i++) {
+            double[] f = {rand.nextInt(100), rand.nextInt(100), rand.nextInt(100)};
+            data.add(new Node(f, f[0] + f[1] > 100 ? 1 : 0));
+        }
+
+        RandomForest unlimited = new RandomForest(8, 2, 3);
+        TrainingReport full = unlimited.train(data);
+        assertTrue(full.isComplete());
+        assertEquals(8, unlimited.getNumTrees());
+        assertEquals(8, full.getTreeNanos().length);
+
+        TrainingParams p = new TrainingParams(400, 2);
+        p.timeLimitMillis = 1;
+        RandomForest limited = new RandomForest(p, 3);
+        TrainingReport partial = limited.train(data);
+        assertEquals(400, partial.getTreesCompleted() + partial.getTreesTruncated() + partial.getTreesCancelled());
+        assertEquals(partial.getTreesKept(), limited.getNumTrees()); // Forest holds exactly the reported trees
+        assertTrue(partial.getTreesCancelled() > 0);
+        limited.predict(new double[]{50, 50, 50});
+
+        // A forest left without trees adds no explanation instead of failing the feedback
+        RandomForest empty = new RandomForest(10, 4, 19);
+        double[] input = {10, 90, 2, 2, 1, 8, 85, 2, 1, 5, 2, 2, 1, 2, 4, 0, 2, 0, 0};
+        List<String> feedback = new FeedbackAnalyzer(new ArrayList<>()).getSuggestions(input, "Fail", empty);
+        assertEquals("Your Result: Fail", feedback.get(0));
+    }
+
     @Test
     public void testForestAccuracy() {
         RandomForest forest = new RandomForest(100, 4, 19);
@@ -112,6 +530,57 @@ public class TestSuite {
         assertTrue(accuracy > 0.9, "Should achieve high accuracy on clear patterns");
     }
 
+    @Test
+    public void testTrainingExecutors() {
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            data.add(new Node(new double[]{i, 60 - i}, i >= 30 ? 1 : 0));
+        }
+        ExecutorService callerPool = Executors.newFixedThreadPool(2);
+        try {
+            TrainingExecutor[] strategies = {TrainingExecutor.SHARED, TrainingExecutor.PER_CALL,
+                TrainingExecutor.VIRTUAL, TrainingExecutor.using(callerPool)};
+            for (TrainingExecutor strategy : strategies) {
+                RandomForest forest = new RandomForest(10, 2, 2);
+                forest.setExecutor(strategy);
+                assertTrue(forest.train(data).isComplete());
+                assertTrue(forest.evaluate(data) > 0.9);
+            }
+            assertFalse(callerPool.isShutdown()); // Caller-owned pools are left running
+        } finally {
+            callerPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTaskScopeFailureCancelsSiblings() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        TaskScope scope = TrainingExecutor.using(pool).open(2);
+        scope.fork(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        scope.fork(() -> {
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            throw new IllegalStateException("boom");
+        });
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> scope.join(10, TimeUnit.SECONDS));
+        assertEquals("boom", failure.getCause().getMessage());
+        assertTrue(interrupted.get());
+        scope.close();
+        pool.shutdownNow();
+    }
+
     @Test
     public void testConcurrentPredictions() throws InterruptedException {
         RandomForest forest = new RandomForest(5, 2, 2);
@@ -139,6 +608,545 @@ public class TestSuite {
         assertEquals(threadCount, predictions.size());
     }
 
+    @Test
+    public void testPredictBatchMatchesPredict() {
+        RandomForest forest = new RandomForest(15, 2, 2);
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            data.add(new Node(new double[]{i, 100 - i}, i >= 20 ? 1 : 0));
+        }
+        forest.train(data);
+
+        double[][] batch = new double[40][];
+        for (int i = 0; i < 40; i++) batch[i] = new double[]{i, 100 - i};
+        int[] preds = forest.predictBatch(batch);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(forest.predict(batch[i]), preds[i]);
+        }
+    }
+
+    @Test
+    public void testThresholdIndexSensitivityMatchesForest() {
+        RandomForest forest = new RandomForest(20, 2, 3);
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(3);
+        for (int i = 0; i < 120; i++) {
+            double[] f = {rand.nextInt(40), rand.nextInt(100), rand.nextInt(3)};
+            data.add(new Node(f, f[0] + f[1] / 10 > 25 ? 1 : 0));
+        }
+        forest.train(data);
+
+        double[] input = {12, 50, 1};
+        ThresholdIndex.SensitivityCurve curve = forest.getThresholdIndex().sensitivity(input, 0, 0, 40);
+        for (double v = 0; v <= 40; v += 0.5) {
+            double[] x = input.clone();
+            x[0] = v;
+            assertEquals(forest.predict(x) == 1, curve.passesAt(v), "Mismatch at " + v);
+        }
+    }
+
+    @Test
+    public void testCompactForestMatchesForest() {
+        RandomForest forest = new RandomForest(25, 2, 4);
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            double[] f = {rand.nextInt(50), rand.nextDouble() * 100, rand.nextInt(3), rand.nextInt(2)};
+            int label = f[0] + f[1] / 5 > 35 ? 1 : 0;
+            if (rand.nextInt(10) == 0) label = 1 - label; // Noise so the trees grow mixed subtrees
+            data.add(new Node(f, label));
+        }
+        forest.train(data);
+
+        CompactForest compact = forest.compact();
+        assertEquals(25, compact.getNumTrees());
+        for (int i = 0; i < 2000; i++) {
+            double[] x = {rand.nextInt(60) - 5, rand.nextDouble() * 120 - 10, rand.nextInt(3), rand.nextInt(2)};
+            assertEquals(forest.predict(x), compact.predict(x));
+        }
+
+        CompactForest.SizeReport size = compact.getSizeReport();
+        assertTrue(size.compactNodes <= size.originalNodes);
+        assertTrue(size.compactBytes < size.originalBytes / 3, size.toString());
+    }
+
+    @Test
+    public void testCompactForestRejectsCorruptData() throws IOException {
+        // One split on feature 0 at 5: slot 0 decides, slot 1 is the left leaf, slot 2 the right leaf
+        CompactForest ok = CompactForest.read(compactBytes(0, 0, 0, 2));
+        assertEquals(0, ok.predict(new double[]{4}));
+        assertEquals(1, ok.predict(new double[]{6}));
+
+        int[][] corrupt = {
+            {3, 0, 0, 2},  // Root outside the slots
+            {0, 1, 0, 2},  // Feature the forest does not have
+            {0, -2, 0, 2}, // Negative feature that is not a leaf
+            {0, 0, 1, 2},  // Threshold outside the dictionary
+            {0, 0, 0, 0},  // Right child offset 0 would never leave the node
+            {0, 0, 0, 1},  // Right child on top of the left one
+            {0, 0, 0, 3},  // Right child past the last slot
+        };
+        for (int[] c : corrupt) {
+            IOException e = assertThrows(IOException.class, () -> CompactForest.read(compactBytes(c[0], c[1], c[2], c[3])),
+                Arrays.toString(c));
+            assertTrue(e.getMessage().startsWith("Corrupt compact forest"), e.getMessage());
+        }
+    }
+
+    // A one-feature forest with one tree of a decision slot and two leaves, as writeTo() lays it out
+    private static DataInput compactBytes(int root, int feature, int value, int rightOffset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x52464331);
+        out.writeInt(1);
+        out.writeInt(1);
+        out.writeDouble(5);
+        out.writeInt(1);
+        out.writeInt(root);
+        out.writeInt(3);
+        out.writeShort(feature);
+        out.writeChar(value);
+        out.writeChar(rightOffset);
+        for (int leaf = 0; leaf < 2; leaf++) {
+            out.writeShort(-1);
+            out.writeChar(leaf);
+            out.writeChar(0);
+        }
+        out.writeInt(3);
+        out.writeLong(100);
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testClassWeightsTradeAccuracyForRecall() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(23);
+        for (int i = 0; i < 3000; i++) {
+            double[] f = {rand.nextDouble() * 100, rand.nextInt(4)};
+            int label = rand.nextDouble() * 300 < f[0] ? 1 : 0; // Pass is rare and never certain
+            data.add(new Node(f, label));
+        }
+        Dataset ds = new Dataset(data);
+        int[] rows = ds.allRows();
+
+        TrainingParams plain = new TrainingParams(60, 2);
+        plain.minSamplesLeaf = 30;
+        plain.balanceClasses = false;
+        TrainingParams favourPass = plain.copy();
+        favourPass.classWeights = new double[]{1, 3};
+        assertTrue(favourPass.toString().contains("classWeights=[1.0, 3.0]"));
+        TrainingParams balanced = plain.copy();
+        balanced.balanceClasses = true;
+        TrainingParams balancedFavourPass = balanced.copy(); // The defaults plus extra weight on Pass
+        balancedFavourPass.classWeights = new double[]{1, 3};
+
+        TrainingParams[] settings = {plain, favourPass, balanced, balancedFavourPass};
+        double[] recall = new double[settings.length];
+        double[] accuracy = new double[settings.length];
+        for (int s = 0; s < settings.length; s++) {
+            RandomForest forest = new RandomForest(settings[s], 2);
+            forest.train(ds, rows);
+            int[] preds = forest.predict(ds, rows);
+            int passes = 0, found = 0, correct = 0;
+            for (int r : rows) {
+                if (ds.getLabel(r) == 1) {
+                    passes++;
+                    if (preds[r] == 1) found++;
+                }
+                if (preds[r] == ds.getLabel(r)) correct++;
+            }
+            recall[s] = (double) found / passes;
+            accuracy[s] = (double) correct / rows.length;
+        }
+        assertTrue(recall[0] < recall[1] && recall[1] < recall[2] && recall[2] < recall[3], Arrays.toString(recall));
+        assertTrue(accuracy[0] > accuracy[2], Arrays.toString(accuracy));
+
+        TrainingParams negative = plain.copy();
+        negative.classWeights = new double[]{1, -1};
+        assertThrows(IllegalArgumentException.class, () -> new RandomForest(negative, 2).train(ds, rows));
+        TrainingParams infinite = plain.copy();
+        infinite.classWeights = new double[]{Double.POSITIVE_INFINITY, 1};
+        assertThrows(IllegalArgumentException.class, () -> new RandomForest(infinite, 2).train(ds, rows));
+
+        // Each class gets its exact share of a small bootstrap, so two rows always make a split
+        List<Node> pair = Arrays.asList(new Node(new double[]{10, 0}, 1), new Node(new double[]{0, 0}, 0));
+        RandomForest pairForest = new RandomForest(new TrainingParams(50, 2), 2);
+        pairForest.train(pair);
+        for (DecisionTree t : pairForest.trees) assertEquals(2, t.getLeafCount());
+
+        // Sample weights count in a single tree's split scoring and leaf votes
+        double[] weights = new double[data.size()];
+        for (int r : rows) weights[r] = ds.getLabel(r) == 1 ? 0 : 1;
+        Dataset passIgnored = new Dataset(data, weights);
+        DecisionTree tree = new DecisionTree(plain, 2);
+        tree.train(passIgnored, passIgnored.allRows());
+        assertEquals(1, tree.getLeafCount());
+        assertEquals(0, tree.predict(new double[]{99, 0}));
+
+        // A class with a handful of rows no longer makes the bootstrap retry draws
+        List<Node> rare = new ArrayList<>(data);
+        for (int i = 0; i < 3; i++) rare.add(new Node(new double[]{200 + i, 0}, 2));
+        RandomForest rareForest = new RandomForest(plain, 2);
+        rareForest.train(rare);
+        assertEquals(3, rareForest.getNumClasses());
+    }
+
+    // Regression Tests
+    @Test
+    public void testRegressionForestPredictsScores() throws IOException {
+        String csvContent = "Hours Studied,Attendance,Final Score\n" +
+                          "10,90,75\n" +
+                          "5,60,65\n";
+        File tempFile = createTempCSVFile(csvContent);
+        DataLoader.LoadResult result = DataLoader.loadData(tempFile.getAbsolutePath());
+        assertEquals(75.0, result.data.get(0).getScore());
+        assertEquals(1, result.data.get(0).getLabel());
+        tempFile.delete();
+
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(8);
+        for (int i = 0; i < 600; i++) {
+            double[] f = {rand.nextInt(40), 60 + rand.nextInt(41), rand.nextInt(3)};
+            double score = 40 + f[0] * 0.6 + (f[1] - 60) * 0.4 + f[2] + rand.nextGaussian();
+            data.add(new Node(f, score >= 70 ? 1 : 0, score));
+        }
+        Dataset ds = new Dataset(data);
+        int[] train = Arrays.copyOfRange(ds.allRows(), 0, 500);
+        int[] test = Arrays.copyOfRange(ds.allRows(), 500, 600);
+
+        RegressionForest forest = new RegressionForest(30, 0, 3);
+        forest.train(ds, train);
+        assertTrue(forest.meanAbsoluteError(ds, test) < 3, "MAE " + forest.meanAbsoluteError(ds, test));
+        assertTrue(forest.evaluate(ds, test) > 0.85);
+
+        // Moving the pass mark changes the verdict, not the score
+        double[] student = {20, 85, 1};
+        double score = forest.predictScore(student);
+        assertTrue(score > 60 && score < 75, "Score " + score);
+        forest.setPassScore(score - 1);
+        assertEquals(1, forest.predict(student));
+        forest.setPassScore(score + 1);
+        assertEquals(0, forest.predict(student));
+        assertEquals(score, forest.predictScore(student));
+    }
+
+    @Test
+    public void testGradeBandClassification() throws IOException {
+        ScoreBands bands = ScoreBands.LETTER_GRADES;
+        assertEquals(5, bands.getNumClasses());
+        assertEquals("F", bands.getName(bands.classOf(59.9)));
+        assertEquals("D", bands.getName(bands.classOf(60)));
+        assertEquals("A", bands.getName(bands.classOf(101)));
+        assertEquals(1, ScoreBands.PASS_FAIL.classOf(70));
+
+        String csvContent = "Hours Studied,Attendance,Final Score\n" +
+                          "10,90,85\n" +
+                          "5,60,65\n";
+        File tempFile = createTempCSVFile(csvContent);
+        DataLoader.LoadResult result = DataLoader.loadData(tempFile.getAbsolutePath(), bands);
+        assertEquals(3, result.data.get(0).getLabel()); // B
+        assertEquals(1, result.data.get(1).getLabel()); // D
+        tempFile.delete();
+
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(13);
+        for (int i = 0; i < 800; i++) {
+            double[] f = {rand.nextInt(45), rand.nextInt(3), rand.nextDouble()};
+            double score = 50 + f[0] + f[1] * 2;
+            data.add(new Node(f, bands.classOf(score), score));
+        }
+        RandomForest forest = new RandomForest(20, 2, 3);
+        forest.train(data.subList(0, 600));
+        assertEquals(5, forest.getNumClasses());
+        assertTrue(forest.evaluate(data.subList(600, 800)) > 0.85);
+
+        double[][] batch = new double[200][];
+        for (int i = 0; i < 200; i++) batch[i] = nodeFeatures(data.get(600 + i));
+        int[] preds = forest.predictBatch(batch);
+        CompactForest compact = forest.compact();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(forest.predict(batch[i]), preds[i]);
+            assertEquals(preds[i], compact.predict(batch[i]));
+        }
+
+        // A band with no rows must not stall the class-balanced bootstrap
+        List<Node> gap = new ArrayList<>();
+        for (int i = 0; i < 50; i++) gap.add(new Node(new double[]{i}, i < 25 ? 0 : 2));
+        RandomForest gapForest = new RandomForest(5, 1, 1);
+        gapForest.train(gap);
+        assertEquals(2, gapForest.predict(new double[]{40}));
+    }
+
+    // Gradient Boosting Tests
+    @Test
+    public void testGradientBoostingStopsEarlyAtBestRound() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(21);
+        for (int i = 0; i < 1500; i++) {
+            double[] f = {rand.nextInt(100), rand.nextDouble() * 50, rand.nextInt(3)};
+            int label = f[0] + f[1] + f[2] * 10 > 85 ? 1 : 0;
+            if (rand.nextInt(10) == 0) label = 1 - label; // Noise the model should not chase
+            data.add(new Node(f, label));
+        }
+        List<Node> train = data.subList(0, 1200), test = data.subList(1200, 1500);
+
+        BoostingParams params = new BoostingParams(500, 0.3);
+        params.earlyStoppingRounds = 10;
+        GradientBoostedTrees gb = new GradientBoostedTrees(params);
+        gb.train(train);
+        assertTrue(gb.evaluate(test) > 0.8, "Accuracy " + gb.evaluate(test));
+
+        double[] loss = gb.getValidationLoss();
+        assertTrue(gb.getNumTrees() < 500, "Early stopping should end training");
+        assertEquals(gb.getNumTrees() + 10, loss.length);
+        for (double l : loss) assertTrue(loss[gb.getNumTrees() - 1] <= l);
+
+        double[][] batch = new double[test.size()][];
+        for (int i = 0; i < batch.length; i++) batch[i] = nodeFeatures(test.get(i));
+        int[] preds = gb.predictBatch(batch);
+        for (int i = 0; i < batch.length; i++) {
+            assertEquals(gb.predictProbability(batch[i]) >= 0.5 ? 1 : 0, preds[i]);
+        }
+    }
+
+    @Test
+    public void testModelPoolEvictsAndReloadsSegments() throws IOException, InterruptedException {
+        FeatureSchema schema = new FeatureSchema(Arrays.asList(
+            FeatureSchema.numeric("Hours", 0, 100, "", "Hours:", 0),
+            FeatureSchema.categorical("School", new String[]{"North", "South", "East"}, "School:",
+                FeatureSchema.NOT_CONTROLLABLE)));
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            int school = i % 3;
+            double hours = rand.nextInt(100);
+            // Each school passes above its own cut-off; East has too few failures to train on
+            int label = school == 2 || hours > 30 + school * 30 ? 1 : 0;
+            data.add(new Node(new double[]{hours, school}, label));
+        }
+        Dataset ds = new Dataset(data);
+        File dir = Files.createTempDirectory("pool").toFile();
+
+        ModelPool pool = new ModelPool(schema, "school", dir);
+        pool.setMemoryBudget(1); // Only the model in use stays in memory
+        Map<String, TrainingReport> reports = pool.train(ds, ds.allRows(), new TrainingParams(10, 2));
+        assertEquals(new TreeSet<>(Arrays.asList("North", "South")), reports.keySet());
+        assertEquals(reports.keySet(), pool.getSegments());
+
+        assertEquals(1, pool.predict(new double[]{80, 0}));
+        assertEquals(0, pool.predict(new double[]{20, 1}));
+        assertTrue(pool.isResident("South"));
+        assertFalse(pool.isResident("North"));
+        assertThrows(IllegalArgumentException.class, () -> pool.predict(new double[]{50, 2}));
+
+        // A new pool on the same directory finds the models and loads them on first use
+        ModelPool reopened = new ModelPool(schema, "School", dir);
+        assertFalse(reopened.isResident("North"));
+        assertEquals(pool.predict("North", new double[]{10, 0}), reopened.predict("North", new double[]{10, 0}));
+        assertEquals(1, reopened.getLoads());
+        assertEquals(1, reopened.evictIdle(0));
+        assertEquals(0, reopened.getResidentBytes());
+
+        // Retraining that keeps no tree in time leaves the segments' models as they were.
+        // A limit of 0 means none, so the rows are made slow to read instead: the 1 ms budget
+        // runs out while the trees' samples are still being drawn.
+        FeatureMatrix slow = new FeatureMatrix() {
+            public int size() { return ds.size(); }
+            public int getNumFeatures() { return ds.getNumFeatures(); }
+            public double getFeature(int row, int feature) { return ds.getFeature(row, feature); }
+            public int getLabel(int row) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ds.getLabel(row);
+            }
+        };
+        TrainingParams rushed = new TrainingParams(10, 2);
+        rushed.timeLimitMillis = 1;
+        double[] northInput = {10, 0};
+        int before = reopened.predict("North", northInput);
+        Map<String, TrainingReport> empty = reopened.train(slow, slow.allRows(), rushed);
+        for (TrainingReport r : empty.values()) assertEquals(0, r.getTreesKept());
+        assertEquals(before, reopened.predict("North", northInput));
+        assertEquals(0, new ModelPool(schema, "School", dir).predict("North", northInput));
+
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    // Off-Heap Dataset Tests
+    @Test
+    public void testOffHeapDatasetMatchesHeapDataset() throws IOException {
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            data.add(new Node(new double[]{i, 100 - i, i % 3}, i >= 25 ? 1 : 0, 40 + i));
+        }
+        Dataset heap = new Dataset(data);
+
+        File file = File.createTempFile("offheap", ".bin");
+        file.deleteOnExit(); // Stays mapped until the buffers are collected, so it cannot go before then
+        try (OffHeapDataset.Writer w = OffHeapDataset.create(file.toPath(), 3)) {
+            for (Node n : data) {
+                w.addRow(new double[]{n.getFeature(0), n.getFeature(1), n.getFeature(2)}, n.getLabel(), n.getScore());
+            }
+        }
+        OffHeapDataset mapped = OffHeapDataset.map(file.toPath(), 7); // Small segments to cross boundaries
+        OffHeapDataset direct = OffHeapDataset.copyOf(heap);
+
+        assertEquals(50, mapped.size());
+        for (int r = 0; r < 50; r++) {
+            for (int f = 0; f < 3; f++) {
+                assertEquals(heap.getFeature(r, f), mapped.getFeature(r, f));
+                assertEquals(heap.getFeature(r, f), direct.getFeature(r, f));
+            }
+            assertEquals(heap.getLabel(r), mapped.getLabel(r));
+            assertEquals(heap.getTarget(r), mapped.getTarget(r));
+            assertEquals(heap.getTarget(r), direct.getTarget(r));
+        }
+
+        // Scores are fitted from the stored targets, not the 0/1 labels
+        RegressionForest scores = new RegressionForest(20, 0, 3);
+        scores.train(mapped, mapped.allRows());
+        assertEquals(70.0, scores.predictScore(new double[]{30, 70, 0}), 5.0);
+
+        FeatureMatrix noTargets = new FeatureMatrix() {
+            public int size() { return 1; }
+            public int getNumFeatures() { return 1; }
+            public double getFeature(int row, int feature) { return 0; }
+            public int getLabel(int row) { return 1; }
+        };
+        assertThrows(UnsupportedOperationException.class, () -> noTargets.getTarget(0));
+        assertTrue(heap.hasTargets() && mapped.hasTargets() && direct.hasTargets());
+
+        // Records without a score have no target, rather than their label standing in for one
+        List<Node> unscored = new ArrayList<>();
+        for (Node n : data) unscored.add(new Node(new double[]{n.getFeature(0), n.getFeature(1), n.getFeature(2)}, n.getLabel()));
+        Dataset unscoredHeap = new Dataset(unscored);
+        OffHeapDataset unscoredCopy = OffHeapDataset.copyOf(unscoredHeap);
+        File unscoredFile = File.createTempFile("offheap", ".bin");
+        unscoredFile.deleteOnExit();
+        try (OffHeapDataset.Writer w = OffHeapDataset.create(unscoredFile.toPath(), 3)) {
+            for (Node n : unscored) w.addRow(new double[]{n.getFeature(0), n.getFeature(1), n.getFeature(2)}, n.getLabel());
+        }
+        OffHeapDataset unscoredMapped = OffHeapDataset.map(unscoredFile.toPath());
+        for (FeatureMatrix m : new FeatureMatrix[]{unscoredHeap, unscoredCopy, unscoredMapped}) {
+            assertFalse(m.hasTargets());
+            assertThrows(UnsupportedOperationException.class, () -> m.getTarget(0));
+            assertEquals(heap.getLabel(30), m.getLabel(30));
+            assertThrows(IllegalArgumentException.class, () -> new RegressionForest(5, 0, 3).train(m, m.allRows()));
+        }
+
+        RandomForest forest = new RandomForest(10, 2, 3);
+        forest.train(mapped, mapped.allRows());
+        assertTrue(forest.evaluate(direct, direct.allRows()) > 0.9);
+    }
+
+    // Cross-Validation Tests
+    @Test
+    public void testStratifiedCrossValidation() throws InterruptedException {
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            data.add(new Node(new double[]{20 + i % 5, 90}, 1));
+            data.add(new Node(new double[]{5 + i % 5, 30}, 0));
+        }
+        Dataset ds = new Dataset(data);
+        CrossValidator cv = new CrossValidator(5, true, 2, 42);
+
+        int[] foldOf = cv.assignFolds(ds);
+        for (int k = 0; k < 5; k++) {
+            int pass = 0, total = 0;
+            for (int r = 0; r < foldOf.length; r++) {
+                if (foldOf[r] == k) {
+                    total++;
+                    pass += ds.getLabel(r);
+                }
+            }
+            assertEquals(24, total);
+            assertEquals(12, pass);
+        }
+
+        CrossValidator.Result res = cv.run(ds, () -> new RandomForest(10, 1, 2));
+        assertEquals(5, res.foldAccuracy.length);
+        assertTrue(res.meanAccuracy > 0.9);
+        assertTrue(res.stdDevAccuracy >= 0);
+        for (long t : res.foldNanos) assertTrue(t > 0);
+
+        // Trees of every fold are built on the run's own two threads, not on a pool per forest
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        FeatureMatrix watched = new FeatureMatrix() {
+            public int size() { return ds.size(); }
+            public int getNumFeatures() { return ds.getNumFeatures(); }
+            public int getLabel(int row) { return ds.getLabel(row); }
+            public double getFeature(int row, int feature) {
+                threads.add(Thread.currentThread().getName());
+                return ds.getFeature(row, feature);
+            }
+        };
+        cv.run(watched, () -> new RandomForest(10, 1, 2));
+        threads.remove(Thread.currentThread().getName());
+        assertTrue(threads.size() <= 4, threads.toString()); // Two fold coordinators plus two tree threads
+        assertTrue(threads.stream().noneMatch(t -> t.startsWith("ForkJoinPool")), threads.toString());
+    }
+
+    // Hyperparameter Search Tests
+    @Test
+    public void testHyperparameterSearchRanksCandidates() throws InterruptedException {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            double[] f = {rand.nextInt(40), rand.nextInt(100), rand.nextInt(3)};
+            data.add(new Node(f, f[0] > 20 ? 1 : 0));
+        }
+        Dataset ds = new Dataset(data);
+        int[] train = Arrays.copyOfRange(ds.allRows(), 0, 150);
+        int[] valid = Arrays.copyOfRange(ds.allRows(), 150, 200);
+        HyperparameterSearch search = new HyperparameterSearch(ds, train, valid, 2);
+
+        HyperparameterSearch.SearchSpace space = new HyperparameterSearch.SearchSpace();
+        space.numTrees = new int[]{20};
+        space.maxFeatures = new int[]{1, 3};
+        space.maxDepth = new int[]{1, TrainingParams.UNLIMITED};
+        List<HyperparameterSearch.Trial> grid = search.gridSearch(space);
+        assertEquals(4, grid.size());
+        for (int i = 1; i < grid.size(); i++) {
+            assertTrue(grid.get(i - 1).accuracy >= grid.get(i).accuracy);
+        }
+        assertTrue(grid.get(0).accuracy > 0.9);
+
+        List<TrainingParams> cands = new ArrayList<>();
+        for (int i = 0; i < 4; i++) cands.add(new TrainingParams(16, 1 + i % 3));
+        List<HyperparameterSearch.Trial> halving = search.successiveHalving(cands, 4, 2);
+        assertTrue(halving.stream().anyMatch(t -> !t.pruned && t.getTreesTrained() == 16));
+        assertTrue(halving.stream().anyMatch(t -> t.pruned));
+
+        // Scoring a large validation split runs on the search's own threads, not the shared pool
+        List<Node> big = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            double[] f = {rand.nextInt(40), rand.nextInt(3)};
+            big.add(new Node(f, f[0] > 20 ? 1 : 0));
+        }
+        Dataset bigDs = new Dataset(big);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        FeatureMatrix watched = new FeatureMatrix() {
+            public int size() { return bigDs.size(); }
+            public int getNumFeatures() { return bigDs.getNumFeatures(); }
+            public int getLabel(int row) { return bigDs.getLabel(row); }
+            public double getFeature(int row, int feature) {
+                threads.add(Thread.currentThread().getName());
+                return bigDs.getFeature(row, feature);
+            }
+        };
+        HyperparameterSearch bigSearch = new HyperparameterSearch(watched, Arrays.copyOfRange(bigDs.allRows(), 0, 200),
+            Arrays.copyOfRange(bigDs.allRows(), 200, 5000), 1);
+        List<HyperparameterSearch.Trial> scored = bigSearch.successiveHalving(List.of(new TrainingParams(4, 1)), 4, 2);
+        assertTrue(scored.get(0).accuracy > 0.9);
+        assertTrue(threads.size() <= 2, threads.toString()); // One coordinator plus one tree thread
+        assertTrue(threads.stream().noneMatch(t -> t.startsWith("ForkJoinPool")), threads.toString());
+        assertEquals(scored.get(0).accuracy, scored.get(0).getForest().evaluate(bigDs, bigDs.allRows()), 0.05);
+    }
+
     // Feedback Analyzer Tests
     @Test
     public void testFeedbackForHighValues() {
@@ -169,6 +1177,126 @@ public class TestSuite {
         assertEquals(suggestions1, suggestions2);
     }
 
+    @Test
+    public void testFeedbackSuggestsPassGroupTargets() {
+        List<Node> data = Arrays.asList(
+            new Node(new double[]{20, 90, 2, 2, 1, 8, 85, 2, 1, 5, 2, 2, 1, 2, 4, 0, 2, 0, 0}, 1),
+            new Node(new double[]{5, 60, 0, 0, 0, 6, 50, 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 2, 1}, 0)
+        );
+        FeedbackAnalyzer analyzer = new FeedbackAnalyzer(data);
+
+        double[] input = {5, 90, 2, 2, 1, 8, 85, 0, 1, 5, 2, 2, 1, 2, 4, 0, 2, 0, 0};
+        List<String> suggestions = analyzer.getSuggestions(input, "Fail");
+
+        assertEquals("Your Result: Fail", suggestions.get(0));
+        assertTrue(suggestions.contains("- Consider improving Hours Studied closer to 20 hours."));
+        assertTrue(suggestions.contains("- Consider improving Motivation Level from 'Low' to 'High'."));
+    }
+
+    @Test
+    public void testCounterfactualFlipsPrediction() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            double[] f = new double[19];
+            for (int j = 0; j < 19; j++) f[j] = rand.nextInt(3);
+            f[0] = rand.nextInt(40); // Hours studied alone decides the outcome
+            f[1] = 80;
+            data.add(new Node(f, f[0] >= 15 ? 1 : 0));
+        }
+        RandomForest forest = new RandomForest(30, 19, 19);
+        forest.train(data);
+        FeedbackAnalyzer analyzer = new FeedbackAnalyzer(data);
+
+        double[] input = nodeFeatures(data.get(0));
+        input[0] = 8;
+        CounterfactualSearch.Counterfactual cf = new CounterfactualSearch(forest, null).search(input);
+        assertNotNull(cf);
+        assertEquals(0, cf.features[0]);
+        double[] changed = input.clone();
+        changed[0] = cf.to[0];
+        assertEquals(1, forest.predict(changed));
+
+        List<String> feedback = analyzer.getSuggestions(input, "Fail", forest);
+        assertTrue(feedback.stream().anyMatch(s -> s.startsWith("- Changing Hours Studied from 8 hours")));
+        assertTrue(feedback.stream().anyMatch(s -> s.startsWith("- Hours Studied of 8 hours lowered the Pass vote")));
+
+        // Features, ranges and step limits follow the schema
+        List<Node> small = new ArrayList<>();
+        for (int i = 0; i < 40; i++) small.add(new Node(new double[]{i, i % 7}, i >= 15 ? 1 : 0));
+        RandomForest twoFeatures = new RandomForest(20, 2, 2);
+        twoFeatures.train(small);
+        double[] low = {8, 3};
+        for (int maxChange : new int[]{5, 10}) {
+            FeatureSchema schema = new FeatureSchema(Arrays.asList(
+                FeatureSchema.numeric("Hours", 0, 39, "", "Hours:", 0).withMaxChange(maxChange),
+                FeatureSchema.numeric("Other", 0, 6, "", "Other:", FeatureSchema.NOT_CONTROLLABLE)));
+            CounterfactualSearch.Counterfactual step = new CounterfactualSearch(twoFeatures, schema, null).search(low);
+            if (maxChange == 5) {
+                assertNull(step); // 13 hours is as far as advice may go
+            } else {
+                assertArrayEquals(new int[]{0}, step.features);
+                assertTrue(step.to[0] > 13 && step.to[0] <= 18);
+            }
+        }
+    }
+
+    @Test
+    public void testTreeExplainerMatchesExactShapley() {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            double[] f = {rand.nextInt(10), rand.nextInt(10), rand.nextInt(3), rand.nextDouble()};
+            int label = f[0] + f[1] > 9 || (f[2] == 2 && f[3] > 0.3) ? 1 : 0;
+            data.add(new Node(f, rand.nextInt(10) == 0 ? 1 - label : label));
+        }
+        RandomForest forest = new RandomForest(12, 2, 4);
+        forest.train(data);
+        TreeExplainer explainer = forest.getExplainer(1);
+        Dataset ds = new Dataset(data);
+        TreeExplainer.Explanation[] cohort = explainer.explain(ds, ds.allRows());
+
+        for (int r = 0; r < 20; r++) {
+            double[] x = nodeFeatures(data.get(r));
+            TreeExplainer.Explanation e = explainer.explain(x);
+            int votes = 0;
+            for (DecisionTree t : forest.trees) votes += t.predict(x);
+            assertEquals((double) votes / forest.getNumTrees(), e.getPrediction(), 1e-9);
+
+            // Shapley values from their definition: every subset of the other features, with
+            // features outside the subset averaged over the training rows down each branch
+            for (int i = 0; i < 4; i++) {
+                double phi = 0;
+                for (int mask = 0; mask < 16; mask++) {
+                    if ((mask & (1 << i)) != 0) continue;
+                    int size = Integer.bitCount(mask);
+                    double weight = factorial(size) * factorial(3 - size) / factorial(4);
+                    for (DecisionTree t : forest.trees) {
+                        phi += weight * (expectedVote(t.root, x, mask | (1 << i)) - expectedVote(t.root, x, mask))
+                            / forest.getNumTrees();
+                    }
+                }
+                assertEquals(phi, e.getValue(i), 1e-9);
+                assertEquals(e.getValue(i), cohort[r].getValue(i), 1e-12);
+            }
+        }
+    }
+
+    private static double factorial(int n) {
+        return n <= 1 ? 1 : n * factorial(n - 1);
+    }
+
+    // Pass vote of a tree with only the features in the mask known
+    private static double expectedVote(DecisionTree.TreeNode node, double[] x, int mask) {
+        if (node instanceof DecisionTree.LeafTreeNode) return ((DecisionTree.LeafTreeNode) node).label == 1 ? 1 : 0;
+        DecisionTree.DecisionTreeNode dtn = (DecisionTree.DecisionTreeNode) node;
+        if ((mask & (1 << dtn.featureIndex)) != 0) {
+            return expectedVote(x[dtn.featureIndex] <= dtn.threshold ? dtn.left : dtn.right, x, mask);
+        }
+        return (dtn.left.cover * expectedVote(dtn.left, x, mask) + dtn.right.cover * expectedVote(dtn.right, x, mask))
+            / dtn.cover;
+    }
+
     @Test
     public void testInvalidInputFeedback() {
         FeedbackAnalyzer analyzer = new FeedbackAnalyzer(new ArrayList<>());
@@ -177,6 +1305,241 @@ public class TestSuite {
         assertTrue(feedback.get(0).contains("Error"));
     }
 
+    // PredictionCache Tests
+    @Test
+    public void testPredictionCacheHitsAndInvalidation() {
+        PredictionCache<Integer> cache = new PredictionCache<>(64);
+        Object modelA = new Object();
+        Object modelB = new Object();
+        double[] input = {10, 90, 2, 2, 1, 8, 85, 2, 1, 5, 2, 2, 1, 2, 4, 0, 2, 0, 0};
+
+        assertEquals(1, (int) cache.get(modelA, input, in -> 1));
+        assertEquals(1, (int) cache.get(modelA, input, in -> 0)); // Served from cache
+        assertEquals(1, cache.getHits());
+
+        assertEquals(0, (int) cache.get(modelB, input, in -> 0)); // New model clears entries
+        assertEquals(2, cache.getMisses());
+        assertEquals(1.0 / 3, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testPredictionCacheKeyEncoding() {
+        PredictionCache<Integer> cache = new PredictionCache<>(64);
+        double[] a = {10, 90, 2, 2, 1, 8, 85, 2, 1, 5, 2, 2, 1, 2, 4, 0, 2, 0, 0};
+        double[] b = a.clone();
+        b[18] = 1;
+        assertNotEquals(cache.encode(a), cache.encode(b));
+
+        double[] fractional = a.clone();
+        fractional[5] = 7.5;
+        assertEquals(PredictionCache.NO_KEY, cache.encode(fractional));
+        double[] highest = {168, 100, 2, 2, 1, 24, 100, 2, 1, 100, 2, 2, 1, 2, 168, 1, 2, 2, 1};
+        assertTrue(cache.encode(highest) >= 0);
+        double[] noSuchCategory = a.clone();
+        noSuchCategory[18] = 2; // Gender has two codes
+        assertEquals(PredictionCache.NO_KEY, cache.encode(noSuchCategory));
+
+        // Widths follow the schema: a shifted range packs from its minimum, values outside it bypass the cache
+        FeatureSchema schema = new FeatureSchema(Arrays.asList(
+            FeatureSchema.numeric("Temperature", -20, 40, "", "Temperature:", 0),
+            FeatureSchema.categorical("Size", new String[]{"S", "M", "L", "XL", "XXL"}, "Size:", 1)));
+        PredictionCache<Integer> custom = new PredictionCache<>(64, schema);
+        assertEquals(0, custom.encode(new double[]{-20, 0}));
+        assertEquals((60L << 3) | 4, custom.encode(new double[]{40, 4}));
+        assertEquals(PredictionCache.NO_KEY, custom.encode(new double[]{41, 0}));
+        assertEquals(PredictionCache.NO_KEY, custom.encode(new double[]{0, 5}));
+        assertEquals(PredictionCache.NO_KEY, custom.encode(a));
+    }
+
+    // Saved Model Tests
+    @Test
+    public void testSavedModelRoundTrip() throws IOException {
+        List<Node> data = new ArrayList<>();
+        Random rand = new Random(29);
+        for (int i = 0; i < 400; i++) {
+            double[] f = new double[19];
+            for (int j = 0; j < f.length; j++) f[j] = rand.nextInt(3);
+            f[0] = rand.nextInt(40);
+            f[1] = 60 + rand.nextInt(41);
+            double score = 40 + f[0] + (f[1] - 60) / 2;
+            data.add(new Node(f, score >= DataLoader.PASS_SCORE ? 1 : 0, score));
+        }
+        RandomForest forest = new RandomForest(15, 4, 19);
+        forest.train(data);
+        RegressionForest scores = new RegressionForest(10, 0, 19);
+        scores.train(data);
+        FeedbackAnalyzer analyzer = new FeedbackAnalyzer(data, FeatureSchema.STUDENT);
+
+        File file = new File(Files.createTempDirectory("models").toFile(), "model.bin");
+        Dataset ds = new Dataset(data);
+        double[] fill = new double[19];
+        fill[0] = 20;
+        fill[3] = Double.NaN;
+        new SavedModel(forest, forest.compact(), scores, analyzer, new DriftMonitor(FeatureSchema.STUDENT, ds, ds.allRows()),
+            fill, data.size()).save(file);
+        SavedModel loaded = SavedModel.load(file, FeatureSchema.STUDENT);
+        assertEquals(400, loaded.records);
+        assertArrayEquals(fill, loaded.fillValues);
+        assertEquals(15, loaded.forest.getNumTrees());
+
+        for (int i = 0; i < 200; i++) {
+            double[] x = new double[19];
+            for (int j = 0; j < x.length; j++) x[j] = rand.nextInt(3);
+            x[0] = rand.nextInt(40);
+            x[1] = 60 + rand.nextInt(41);
+            assertEquals(forest.predict(x), loaded.forest.predict(x));
+            assertEquals(forest.predict(x), loaded.serving.predict(x));
+            assertEquals(scores.predictScore(x), loaded.scoreModel.predictScore(x));
+            String res = forest.predict(x) == 1 ? "Pass" : "Fail";
+            assertEquals(analyzer.getSuggestions(x, res, forest), loaded.analyzer.getSuggestions(x, res, loaded.forest));
+        }
+        assertArrayEquals(forest.trees.get(0).getFeatureImportances(), loaded.forest.trees.get(0).getFeatureImportances());
+
+        // Models trained on other columns are rejected rather than indexing past the inputs
+        List<Node> narrow = new ArrayList<>();
+        for (Node n : data) narrow.add(new Node(new double[]{n.getFeature(0), n.getFeature(1)}, n.getLabel(), n.getScore()));
+        RandomForest narrowForest = new RandomForest(5, 1, 2);
+        narrowForest.train(narrow);
+        RegressionForest narrowScores = new RegressionForest(5, 0, 2);
+        narrowScores.train(narrow);
+        DriftMonitor studentDrift = new DriftMonitor(FeatureSchema.STUDENT, ds, ds.allRows());
+        SavedModel[] mismatched = {
+            new SavedModel(narrowForest, forest.compact(), scores, analyzer, studentDrift, fill, data.size()),
+            new SavedModel(forest, narrowForest.compact(), scores, analyzer, studentDrift, fill, data.size()),
+            new SavedModel(forest, forest.compact(), narrowScores, analyzer, studentDrift, fill, data.size()),
+            new SavedModel(forest, forest.compact(), scores, analyzer, new DriftMonitor(new FeatureSchema(Arrays.asList(
+                FeatureSchema.STUDENT.get(0), FeatureSchema.STUDENT.get(1))), new Dataset(narrow), ds.allRows()),
+                fill, data.size()),
+        };
+        for (SavedModel m : mismatched) {
+            m.save(file);
+            IOException e = assertThrows(IOException.class, () -> SavedModel.load(file, FeatureSchema.STUDENT));
+            assertTrue(e.getMessage().contains("covers 2 features"), e.getMessage());
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(42);
+        }
+        assertThrows(IOException.class, () -> SavedModel.load(file, FeatureSchema.STUDENT));
+        file.delete();
+        file.getParentFile().delete();
+    }
+
+    // Scoring Pipeline Tests
+    @Test
+    public void testScoringPipelineStreamsAndWatches() throws Exception {
+        StringBuilder csv = new StringBuilder("Hours Studied,Attendance,Final Score\n");
+        for (int h = 0; h < 40; h++) csv.append(h).append(",80,").append(h < 20 ? 50 : 90).append('\n');
+        File trainFile = createTempCSVFile(csv.toString());
+        DataLoader.LoadResult loaded = DataLoader.loadData(trainFile.getAbsolutePath());
+        trainFile.delete();
+        assertArrayEquals(new double[]{19.5, 80}, loaded.fillValues);
+        RandomForest forest = new RandomForest(10, 2, 2);
+        forest.train(loaded.data);
+        CompactForest model = forest.compact();
+
+        // Columns in another order plus an ID; an invalid row is rejected, an empty cell is filled
+        String feed = "Student ID,Attendance,Hours Studied\n" +
+                      "s1,80,35\n" +
+                      "s2,80,2\n" +
+                      "s3,abc,5\n" +
+                      "s4,,30\n" +
+                      "\n";
+        StringWriter out = new StringWriter();
+        ScoringPipeline pipeline = new ScoringPipeline(model, loaded.bands, loaded.schema, loaded.fillValues, out, 1, 1);
+        try (pipeline) { // Closing drains the queued batches
+            pipeline.score(new StringReader(feed), "feed");
+        }
+        assertEquals("feed,2,Pass\nfeed,3,Fail\nfeed,5,Pass\n", out.toString());
+        assertEquals(1, pipeline.getRejected());
+        for (ScoringPipeline.StageStats s : pipeline.getStageStats()) assertEquals(3, s.rows, s.toString());
+
+        File dir = Files.createTempDirectory("snapshots").toFile();
+        Files.write(new File(dir, "a.csv").toPath(), "Hours Studied,Attendance\n1,90\n".getBytes());
+        StringWriter watched = new StringWriter();
+        ScoringPipeline watcher = new ScoringPipeline(model, loaded.bands, loaded.schema, loaded.fillValues, watched);
+        Thread t = new Thread(() -> {
+            try {
+                watcher.watch(dir.toPath());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        t.start();
+        File pending = File.createTempFile("snapshot", ".tmp");
+        Files.write(pending.toPath(), "Hours Studied,Attendance\n39,90\n".getBytes());
+        Files.move(pending.toPath(), new File(dir, "b.csv").toPath());
+        long deadline = System.currentTimeMillis() + 20000;
+        while (watcher.getStageStats().get(2).rows < 2 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        watcher.close();
+        t.join(5000);
+        assertFalse(t.isAlive());
+        assertTrue(watched.toString().contains("a.csv,2,Fail\n"), watched.toString());
+        assertTrue(watched.toString().contains("b.csv,2,Pass\n"), watched.toString());
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    // Drift Monitor Tests
+    @Test
+    public void testDriftMonitorFlagsShiftedInputs() throws Exception {
+        FeatureSchema schema = FeatureSchema.fromHeader(new String[]{"Hours Studied", "Motivation Level", "Sleep Hours"});
+        Random rand = new Random(31);
+        List<Node> data = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            data.add(new Node(new double[]{5 + rand.nextInt(30), rand.nextInt(3), 5 + rand.nextInt(5)}, 0));
+        }
+        Dataset ds = new Dataset(data);
+        DriftMonitor monitor = new DriftMonitor(schema, ds, ds.allRows());
+        assertTrue(monitor.report().isEmpty());
+        assertTrue(Double.isNaN(monitor.psi(0)));
+
+        // Inputs like the training data, recorded from several threads at once
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long seed = t;
+            done.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                for (int i = 0; i < 500; i++) {
+                    monitor.record(new double[]{5 + r.nextInt(30), r.nextInt(3), 5 + r.nextInt(5)});
+                }
+            }));
+        }
+        for (Future<?> f : done) f.get();
+        pool.shutdown();
+        assertEquals(2000, monitor.getRecorded());
+        for (DriftMonitor.FeatureDrift d : monitor.report()) {
+            assertTrue(d.psi < DriftMonitor.PSI_WATCH, d.toString());
+            assertTrue(d.ks < 0.05, d.toString());
+        }
+
+        // Students studying ten hours more than in the training data
+        monitor.reset();
+        assertEquals(0, monitor.getRecorded());
+        List<double[]> shifted = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            shifted.add(new double[]{15 + rand.nextInt(30), rand.nextInt(3), 5 + rand.nextInt(5)});
+        }
+        for (double[] x : shifted) monitor.record(x);
+        List<DriftMonitor.FeatureDrift> report = monitor.report();
+        assertEquals("Hours Studied", report.get(0).name);
+        assertTrue(report.get(0).psi > DriftMonitor.PSI_ALERT, report.get(0).toString());
+        assertEquals(0.33, report.get(0).ks, 0.05);
+        assertTrue(report.get(1).psi < DriftMonitor.PSI_WATCH, report.get(1).toString());
+
+        // The saved histograms score the same inputs the same way
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        monitor.writeTo(new DataOutputStream(bytes));
+        DriftMonitor loaded = DriftMonitor.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(0, loaded.getRecorded());
+        for (double[] x : shifted) loaded.record(x);
+        for (int f = 0; f < 3; f++) {
+            assertEquals(monitor.psi(f), loaded.psi(f));
+            assertEquals(monitor.ks(f), loaded.ks(f));
+        }
+    }
+
     // System Integration Test
     @Test
     public void testCompleteSystemWorkflow() throws IOException {